@@ -0,0 +1,122 @@
+/*
+ * Copyright 2012 Tauasa Timoteo
+ * 
+ * Permission is hereby granted, free of charge, to any person 
+ * obtaining a copy of this software and associated documentation 
+ * files (the “Software”), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, 
+ * publish, distribute, sublicense, and/or sell copies of the Software,
+ * and to permit persons to whom the Software is furnished to do so, 
+ * subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be 
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, 
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES 
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NON-
+ * INFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS 
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN 
+ * AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF 
+ * OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS 
+ * IN THE SOFTWARE.
+ */
+package org.tauasa.commons.data;
+
+import java.io.Serializable;
+
+/**
+ * An aggregate function computed per group by {@link DataModelOperators#groupBy}. 
+ * Like SQL, null values are ignored and SUM, AVG, MIN and MAX of a group without 
+ * values are null. SUM of an integral column is a Long, otherwise a Double.
+ *
+ * @author Tauasa Timoteo
+ * 
+ */
+public final class Aggregate implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	public enum Function {
+		COUNT,
+		SUM,
+		AVG,
+		MIN,
+		MAX
+	}
+
+	private final Function function;
+	private final String column;
+	private final String alias;
+
+	private Aggregate(Function function, String column, String alias) {
+		this.function=function;
+		this.column=column;
+		this.alias=alias;
+	}
+
+	private Aggregate(Function function, String column) {
+		this(function, column, function + "(" + column + ")");
+	}
+
+	/**
+	 * Number of rows in the group
+	 * */
+	public static Aggregate count(){
+		return new Aggregate(Function.COUNT, null, "COUNT(*)");
+	}
+
+	/**
+	 * Number of non-null values of the column in the group
+	 * */
+	public static Aggregate count(String column){
+		return new Aggregate(Function.COUNT, column);
+	}
+
+	public static Aggregate sum(String column){
+		return new Aggregate(Function.SUM, column);
+	}
+
+	public static Aggregate avg(String column){
+		return new Aggregate(Function.AVG, column);
+	}
+
+	public static Aggregate min(String column){
+		return new Aggregate(Function.MIN, column);
+	}
+
+	public static Aggregate max(String column){
+		return new Aggregate(Function.MAX, column);
+	}
+
+	/**
+	 * Returns a copy of this aggregate whose result column has the specified name
+	 * */
+	public Aggregate as(String alias){
+		return new Aggregate(function, column, alias);
+	}
+
+	public Function getFunction() {
+		return function;
+	}
+
+	/**
+	 * Returns the aggregated column, or null for COUNT(*)
+	 * */
+	public String getColumn() {
+		return column;
+	}
+
+	/**
+	 * Returns the name of the result column
+	 * */
+	public String getAlias() {
+		return alias;
+	}
+
+	@Override
+	public String toString() {
+		return alias;
+	}
+
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2012 Tauasa Timoteo
+ * 
+ * Permission is hereby granted, free of charge, to any person 
+ * obtaining a copy of this software and associated documentation 
+ * files (the “Software”), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, 
+ * publish, distribute, sublicense, and/or sell copies of the Software,
+ * and to permit persons to whom the Software is furnished to do so, 
+ * subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be 
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, 
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES 
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NON-
+ * INFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS 
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN 
+ * AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF 
+ * OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS 
+ * IN THE SOFTWARE.
+ */
+package org.tauasa.commons.data;
+
+import java.io.Serializable;
+import java.util.HashMap;
+
+/**
+ * Immutable, hashed column name to zero-based column index lookup. When a name 
+ * occurs more than once the first occurrence wins, just like a linear scan.
+ *
+ * @author Tauasa Timoteo
+ * 
+ */
+public final class ColumnIndex implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private final String[] names;
+	private final HashMap<String, Integer> indexes;
+
+	public ColumnIndex(String[] names) {
+		if(names==null){
+			throw new NullPointerException("names array is null");
+		}
+		this.names = names.clone();
+		indexes = new HashMap<>(names.length*2);
+		for(int i=0;i<names.length;i++){
+			indexes.putIfAbsent(names[i], i);
+		}
+	}
+
+	/**
+	 * Returns the zero-based index of the specified column or -1 if it does not exist
+	 * */
+	public int indexOf(String name){
+		Integer index = indexes.get(name);
+		return index==null ? -1 : index;
+	}
+
+	/**
+	 * Returns the zero-based index of the specified column 
+	 * 
+	 * @throws DataModelException if the column does not exist
+	 * */
+	public int getIndex(String name)throws DataModelException{
+		Integer index = indexes.get(name);
+		if(index==null){
+			throw new DataModelException("Column not found: "+name);
+		}
+		return index;
+	}
+
+	/**
+	 * Returns the name of the column at the specified index
+	 * */
+	public String getName(int index){
+		return names[index];
+	}
+
+	/**
+	 * Returns a copy of the column names
+	 * */
+	public String[] getNames(){
+		return names.clone();
+	}
+
+	public int size(){
+		return names.length;
+	}
+
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright 2012 Tauasa Timoteo
+ * 
+ * Permission is hereby granted, free of charge, to any person 
+ * obtaining a copy of this software and associated documentation 
+ * files (the “Software”), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, 
+ * publish, distribute, sublicense, and/or sell copies of the Software,
+ * and to permit persons to whom the Software is furnished to do so, 
+ * subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be 
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, 
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES 
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NON-
+ * INFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS 
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN 
+ * AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF 
+ * OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS 
+ * IN THE SOFTWARE.
+ */
+package org.tauasa.commons.data;
+
+import java.io.Serializable;
+import java.util.Date;
+
+/**
+ * A column name resolved once (see {@link IDataModel#column(String)}) into a handle that 
+ * reads the column by index. Use it in row loops instead of the name-based getters:
+ * <pre>
+ * ColumnRef id = model.column("ID");
+ * while(model.next()){
+ *     int value = id.getInt(model);
+ * }
+ * </pre>
+ * A ColumnRef is only meaningful for models with the same column layout as the model 
+ * that resolved it.
+ *
+ * @author Tauasa Timoteo
+ * 
+ */
+public final class ColumnRef implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private final String name;
+	private final int index;
+
+	public ColumnRef(String name, int index) {
+		this.name=name;
+		this.index=index;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Returns the zero-based column index
+	 * */
+	public int getIndex() {
+		return index;
+	}
+
+	public String getString(IDataModel model)throws DataModelException{
+		return model.getString(index);
+	}
+
+	public int getInt(IDataModel model)throws DataModelException{
+		return model.getInt(index);
+	}
+
+	public long getLong(IDataModel model)throws DataModelException{
+		return model.getLong(index);
+	}
+
+	public float getFloat(IDataModel model)throws DataModelException{
+		return model.getFloat(index);
+	}
+
+	public double getDouble(IDataModel model)throws DataModelException{
+		return model.getDouble(index);
+	}
+
+	public Date getDate(IDataModel model)throws DataModelException{
+		return model.getDate(index);
+	}
+
+	public Object getObject(IDataModel model)throws DataModelException{
+		return model.getObject(index);
+	}
+
+	@Override
+	public String toString(){
+		return name+"["+index+"]";
+	}
+
+}
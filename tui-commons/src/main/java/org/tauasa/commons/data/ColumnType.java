@@ -0,0 +1,127 @@
+/*
+ * Copyright 2012 Tauasa Timoteo
+ * 
+ * Permission is hereby granted, free of charge, to any person 
+ * obtaining a copy of this software and associated documentation 
+ * files (the “Software”), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, 
+ * publish, distribute, sublicense, and/or sell copies of the Software,
+ * and to permit persons to whom the Software is furnished to do so, 
+ * subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be 
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, 
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES 
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NON-
+ * INFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS 
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN 
+ * AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF 
+ * OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS 
+ * IN THE SOFTWARE.
+ */
+package org.tauasa.commons.data;
+
+import java.sql.Types;
+import java.util.Date;
+
+/**
+ * Storage types used by typed {@link IDataModel} implementations such as {@link ColumnarDataModel}
+ *
+ * @author Tauasa Timoteo
+ * 
+ */
+public enum ColumnType {
+
+	INT,
+	LONG,
+	DOUBLE,
+	STRING,
+
+	/**
+	 * Dates, times and timestamps, readable as epoch milliseconds with {@link IDataModel#getLong(int)}
+	 * */
+	DATE,
+	OBJECT;
+
+	/**
+	 * Returns true if values of this type can be read with {@link IDataModel#getLong(int)} 
+	 * and {@link IDataModel#getDouble(int)} without conversion
+	 * */
+	public boolean isNumeric(){
+		return this==INT || this==LONG || this==DOUBLE;
+	}
+
+	/**
+	 * Returns the ColumnType used to store values of the specified {@link Types} constant. 
+	 * DECIMAL and NUMERIC columns are only stored as LONG when they have no scale and 
+	 * fit into 18 digits, otherwise they are stored as OBJECT to preserve precision.
+	 * */
+	public static ColumnType forSqlType(int sqlType, int precision, int scale){
+		switch (sqlType) {
+			case Types.TINYINT:
+			case Types.SMALLINT:
+			case Types.INTEGER:
+				return INT;
+			case Types.BIGINT:
+				return LONG;
+			case Types.DECIMAL:
+			case Types.NUMERIC:
+				return scale==0 && precision > 0 && precision <= 18 ? LONG : OBJECT;
+			case Types.REAL:
+			case Types.FLOAT:
+			case Types.DOUBLE:
+				return DOUBLE;
+			case Types.CHAR:
+			case Types.VARCHAR:
+			case Types.LONGVARCHAR:
+			case Types.NCHAR:
+			case Types.NVARCHAR:
+			case Types.LONGNVARCHAR:
+				return STRING;
+			case Types.DATE:
+			case Types.TIME:
+			case Types.TIMESTAMP:
+				return DATE;
+			default:
+				return OBJECT;
+		}
+	}
+
+	/**
+	 * Returns the ColumnType used to store the specified value or null if the value is null
+	 * */
+	public static ColumnType forValue(Object value){
+		if(value==null){
+			return null;
+		}else if(value instanceof Integer || value instanceof Short || value instanceof Byte){
+			return INT;
+		}else if(value instanceof Long){
+			return LONG;
+		}else if(value instanceof Double || value instanceof Float){
+			return DOUBLE;
+		}else if(value instanceof String){
+			return STRING;
+		}else if(value instanceof Date){
+			return DATE;
+		}
+		return OBJECT;
+	}
+
+	/**
+	 * Returns the narrowest ColumnType able to hold values of both specified types. 
+	 * Either argument may be null (meaning no value has been seen yet).
+	 * */
+	public static ColumnType widen(ColumnType a, ColumnType b){
+		if(a==null || a==b){
+			return b;
+		}else if(b==null){
+			return a;
+		}else if(a.isNumeric() && b.isNumeric()){
+			return a==DOUBLE || b==DOUBLE ? DOUBLE : LONG;
+		}
+		return OBJECT;
+	}
+
+}
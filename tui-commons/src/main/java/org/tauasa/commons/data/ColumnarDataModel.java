@@ -0,0 +1,908 @@
+/*
+ * Copyright 2012 Tauasa Timoteo
+ * 
+ * Permission is hereby granted, free of charge, to any person 
+ * obtaining a copy of this software and associated documentation 
+ * files (the “Software”), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, 
+ * publish, distribute, sublicense, and/or sell copies of the Software,
+ * and to permit persons to whom the Software is furnished to do so, 
+ * subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be 
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, 
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES 
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NON-
+ * INFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS 
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN 
+ * AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF 
+ * OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS 
+ * IN THE SOFTWARE.
+ */
+package org.tauasa.commons.data;
+
+import java.io.Serializable;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.tauasa.commons.jdbc.JDBCUtils;
+import org.tauasa.commons.jdbi.JDBIUtils;
+import org.tauasa.commons.util.Utils;
+
+/**
+ * Read-only {@link IDataModel} implementation that stores each column in a type-specialized 
+ * array instead of boxing every cell into an <code>Object[][]</code> the way 
+ * {@link TableDataModel} does. Integral columns are stored as <code>int[]</code> or 
+ * <code>long[]</code>, floating point columns as <code>double[]</code>, dates as epoch 
+ * milliseconds in a <code>long[]</code> and strings are dictionary-encoded. SQL NULLs are 
+ * tracked in a per-column bitmap which is only allocated once a column contains a null.
+ * <P>
+ * Like {@link ResultSet}, the primitive getters return zero when the value is null; use 
+ * {@link #isNull(int)} or {@link #getObject(int)} to tell the two apart.
+ *
+ * @author Tauasa Timoteo
+ * 
+ */
+public final class ColumnarDataModel implements IRandomAccessDataModel {
+
+	private static final long serialVersionUID = 1L;
+
+	static final int INITIAL_CAPACITY = 1024;
+
+	protected String[] columns;
+	protected Column[] data;
+	protected int rowCount;
+	protected int currentRow = -1;
+	protected ColumnIndex columnIndex;
+
+	/**
+	 * Creates a DataModel from the specified {@link ResultSet}. Column storage types are 
+	 * chosen from the {@link ResultSetMetaData} (see {@link ColumnType#forSqlType(int, int, int)}) 
+	 * and the ResultSet is read once, so it may be {@link ResultSet#TYPE_FORWARD_ONLY}.
+	 * */
+	public ColumnarDataModel(ResultSet rs)throws SQLException, DataModelException{
+		ResultSetMetaData metaData = rs.getMetaData();
+
+		//fetch the columns
+		columns = JDBCUtils.getColumnNames(metaData);
+
+		data = new Column[columns.length];
+		for(int i=0;i<columns.length;i++){
+			int sqlType = metaData.getColumnType(i+1);
+			ColumnType type = ColumnType.forSqlType(sqlType, metaData.getPrecision(i+1), metaData.getScale(i+1));
+			data[i] = createColumn(type, sqlType, INITIAL_CAPACITY);
+		}
+
+		//populate the model
+		while(rs.next()){
+			for(int i=0;i<data.length;i++){
+				data[i].read(rs, i+1, rowCount);
+			}
+			rowCount++;
+		}
+
+		trim();
+	}
+
+	/**
+	 * Creates a DataModel from the specified {@link List} of {@link Map}s (the JDBI ResultSet). 
+	 * Column storage types are inferred from the values in the list.
+	 * */
+	public ColumnarDataModel(List<Map<String, Object>> rs)throws DataModelException{
+		if(Utils.isEmpty(rs)){
+			throw new DataModelException("List is null");
+		}
+
+		//extract column names
+		columns = JDBIUtils.getColumnNames(rs);
+
+		//infer the storage type of each column
+		ColumnType[] types = new ColumnType[columns.length];
+		for(Map<String, Object> row : rs){
+			for(int j=0;j<columns.length;j++){
+				types[j] = ColumnType.widen(types[j], ColumnType.forValue(row.get(columns[j])));
+			}
+		}
+
+		data = new Column[columns.length];
+		for(int j=0;j<columns.length;j++){
+			data[j] = createColumn(types[j]==null ? ColumnType.OBJECT : types[j], Integer.MIN_VALUE, rs.size());
+		}
+
+		//populate the model
+		for(Map<String, Object> row : rs){
+			for(int j=0;j<columns.length;j++){
+				data[j].set(rowCount, row.get(columns[j]));
+			}
+			rowCount++;
+		}
+
+		trim();
+	}
+
+	static Column createColumn(ColumnType type, int sqlType, int capacity){
+		switch (type) {
+			case INT:
+				return new IntColumn(capacity);
+			case LONG:
+				return new LongColumn(capacity);
+			case DOUBLE:
+				return new DoubleColumn(capacity);
+			case STRING:
+				return new StringColumn(capacity);
+			case DATE:
+				return new DateColumn(capacity, sqlType);
+			default:
+				return new ObjectColumn(capacity);
+		}
+	}
+
+	private void trim(){
+		for (Column column : data) {
+			column.trim(rowCount);
+		}
+	}
+
+	@Override
+	public ColumnType getColumnType(int column){
+		return data[column].type();
+	}
+
+	@Override
+	public boolean isNull(int column){
+		return data[column].isNull(currentRow);
+	}
+
+	/**
+	 * Returns true if the specified column in the current row is null
+	 * */
+	public boolean isNull(String name)throws DataModelException{
+		return isNull(getColumnIndex(name));
+	}
+
+	@Override
+	public int getColumnIndex(String columnName)throws DataModelException{
+		if(columnIndex==null){
+			columnIndex = new ColumnIndex(columns);
+		}
+		return columnIndex.getIndex(columnName);
+	}
+
+	@Override
+	public int getColumnCount(){
+		return columns.length;
+	}
+
+	@Override
+	public String[] getColumnNames() throws DataModelException {
+		return columns;
+	}
+
+	@Override
+	public boolean moveTo(int rowNum) throws DataModelException {
+		if(rowNum >= rowCount){
+			return false;
+		}
+		currentRow = rowNum;
+		return true;
+	}
+
+	@Override
+	public boolean reset() throws DataModelException {
+		currentRow = 0;
+		return true;
+	}
+
+	@Override
+	public boolean next() throws DataModelException {
+		if(currentRow+1 > rowCount-1){
+			return false;
+		}
+		currentRow++;
+		return true;
+	}
+
+	@Override
+	public boolean previous() throws DataModelException {
+		if(currentRow<=0){
+			return false;
+		}
+		currentRow--;
+		return true;
+	}
+
+	@Override
+	public boolean last() throws DataModelException {
+		currentRow = rowCount-1;
+		return true;
+	}
+
+	@Override
+	public boolean first() throws DataModelException {
+		return reset();
+	}
+
+	@Override
+	public int size() throws DataModelException {
+		return rowCount;
+	}
+
+	@Override
+	public String getString(String name) throws DataModelException {
+		return getString(getColumnIndex(name));
+	}
+
+	@Override
+	public String getString(int column) throws DataModelException {
+		return data[column].getString(currentRow);
+	}
+
+	@Override
+	public int getInt(String name) throws DataModelException {
+		return getInt(getColumnIndex(name));
+	}
+
+	@Override
+	public int getInt(int column) throws DataModelException {
+		Column c = data[column];
+		//check the common case first to avoid a megamorphic call
+		if(c instanceof IntColumn){
+			return ((IntColumn)c).values[currentRow];
+		}
+		return c.getInt(currentRow);
+	}
+
+	@Override
+	public long getLong(String name) throws DataModelException {
+		return getLong(getColumnIndex(name));
+	}
+
+	@Override
+	public long getLong(int column) throws DataModelException {
+		Column c = data[column];
+		if(c instanceof LongColumn){
+			return ((LongColumn)c).values[currentRow];
+		}
+		return c.getLong(currentRow);
+	}
+
+	@Override
+	public float getFloat(String name) throws DataModelException {
+		return getFloat(getColumnIndex(name));
+	}
+
+	@Override
+	public float getFloat(int column) throws DataModelException {
+		return (float)data[column].getDouble(currentRow);
+	}
+
+	@Override
+	public double getDouble(String name) throws DataModelException {
+		return getDouble(getColumnIndex(name));
+	}
+
+	@Override
+	public double getDouble(int column) throws DataModelException {
+		Column c = data[column];
+		if(c instanceof DoubleColumn){
+			return ((DoubleColumn)c).values[currentRow];
+		}
+		return c.getDouble(currentRow);
+	}
+
+	@Override
+	public Date getDate(String name) throws DataModelException {
+		return getDate(getColumnIndex(name));
+	}
+
+	@Override
+	public Date getDate(int column) throws DataModelException {
+		return data[column].getDate(currentRow);
+	}
+
+	@Override
+	public Object getObject(String name) throws DataModelException {
+		return getObject(getColumnIndex(name));
+	}
+
+	@Override
+	public Object getObject(int column) throws DataModelException {
+		return data[column].getObject(currentRow);
+	}
+
+	@Override
+	public int getRowCount(){
+		return rowCount;
+	}
+
+	@Override
+	public boolean isNull(int row, int column){
+		return data[column].isNull(row);
+	}
+
+	@Override
+	public Object getObject(int row, int column){
+		return data[column].getObject(row);
+	}
+
+	@Override
+	public String getString(int row, int column){
+		return data[column].getString(row);
+	}
+
+	@Override
+	public int getInt(int row, int column){
+		Column c = data[column];
+		if(c instanceof IntColumn){
+			return ((IntColumn)c).values[row];
+		}
+		return c.getInt(row);
+	}
+
+	@Override
+	public long getLong(int row, int column){
+		Column c = data[column];
+		if(c instanceof LongColumn){
+			return ((LongColumn)c).values[row];
+		}
+		return c.getLong(row);
+	}
+
+	@Override
+	public double getDouble(int row, int column){
+		Column c = data[column];
+		if(c instanceof DoubleColumn){
+			return ((DoubleColumn)c).values[row];
+		}
+		return c.getDouble(row);
+	}
+
+	@Override
+	public Date getDate(int row, int column){
+		return data[column].getDate(row);
+	}
+
+	/////////////////////////////////////
+	// Column storage
+	/////////////////////////////////////
+
+	/**
+	 * Growable, type-specialized storage for a single column plus its null bitmap
+	 * */
+	abstract static class Column implements Serializable {
+
+		private static final long serialVersionUID = 1L;
+
+		protected long[] nulls;
+
+		abstract ColumnType type();
+
+		/**
+		 * Reads the value at the specified (one-based) index of the current ResultSet row into the specified row
+		 * */
+		abstract void read(ResultSet rs, int index, int row)throws SQLException;
+
+		/**
+		 * Stores the specified value (which may be null) at the specified row
+		 * */
+		abstract void set(int row, Object value);
+
+		/**
+		 * Shrinks the backing storage to the specified number of rows
+		 * */
+		abstract void trim(int size);
+
+		abstract Object getObject(int row);
+
+		final void setNull(int row){
+			int word = row >>> 6;
+			if(nulls==null){
+				nulls = new long[Math.max(word+1, 16)];
+			}else if(word >= nulls.length){
+				nulls = Arrays.copyOf(nulls, Math.max(word+1, nulls.length*2));
+			}
+			nulls[word] |= 1L << row;
+		}
+
+		final boolean isNull(int row){
+			int word = row >>> 6;
+			return nulls!=null && word < nulls.length && (nulls[word] & (1L << row))!=0;
+		}
+
+		final void trimNulls(int size){
+			if(nulls!=null){
+				nulls = Arrays.copyOf(nulls, (size+63) >>> 6);
+			}
+		}
+
+		static int grow(int capacity, int row){
+			return Math.max(row+1, capacity + (capacity >> 1) + 16);
+		}
+
+		int getInt(int row){
+			Object value = getObject(row);
+			return value==null ? 0 : ((Number)value).intValue();
+		}
+
+		long getLong(int row){
+			Object value = getObject(row);
+			return value==null ? 0 : ((Number)value).longValue();
+		}
+
+		double getDouble(int row){
+			Object value = getObject(row);
+			return value==null ? 0 : ((Number)value).doubleValue();
+		}
+
+		String getString(int row){
+			Object value = getObject(row);
+			return value==null ? null : value.toString();
+		}
+
+		Date getDate(int row){
+			return (Date)getObject(row);
+		}
+
+	}
+
+	static final class IntColumn extends Column {
+
+		private static final long serialVersionUID = 1L;
+
+		int[] values;
+
+		IntColumn(int capacity){
+			values = new int[capacity];
+		}
+
+		@Override
+		ColumnType type(){
+			return ColumnType.INT;
+		}
+
+		@Override
+		void read(ResultSet rs, int index, int row)throws SQLException{
+			int value = rs.getInt(index);
+			if(rs.wasNull()){
+				set(row, null);
+			}else{
+				setInt(row, value);
+			}
+		}
+
+		void setInt(int row, int value){
+			if(row >= values.length){
+				values = Arrays.copyOf(values, grow(values.length, row));
+			}
+			values[row] = value;
+		}
+
+		@Override
+		void set(int row, Object value){
+			if(value==null){
+				setInt(row, 0);
+				setNull(row);
+			}else{
+				setInt(row, ((Number)value).intValue());
+			}
+		}
+
+		@Override
+		void trim(int size){
+			if(size!=values.length){
+				values = Arrays.copyOf(values, size);
+			}
+			trimNulls(size);
+		}
+
+		@Override
+		Object getObject(int row){
+			return isNull(row) ? null : Integer.valueOf(values[row]);
+		}
+
+		@Override
+		int getInt(int row){
+			return values[row];
+		}
+
+		@Override
+		long getLong(int row){
+			return values[row];
+		}
+
+		@Override
+		double getDouble(int row){
+			return values[row];
+		}
+
+	}
+
+	static final class LongColumn extends Column {
+
+		private static final long serialVersionUID = 1L;
+
+		long[] values;
+
+		LongColumn(int capacity){
+			values = new long[capacity];
+		}
+
+		@Override
+		ColumnType type(){
+			return ColumnType.LONG;
+		}
+
+		@Override
+		void read(ResultSet rs, int index, int row)throws SQLException{
+			long value = rs.getLong(index);
+			if(rs.wasNull()){
+				set(row, null);
+			}else{
+				setLong(row, value);
+			}
+		}
+
+		void setLong(int row, long value){
+			if(row >= values.length){
+				values = Arrays.copyOf(values, grow(values.length, row));
+			}
+			values[row] = value;
+		}
+
+		@Override
+		void set(int row, Object value){
+			if(value==null){
+				setLong(row, 0);
+				setNull(row);
+			}else{
+				setLong(row, ((Number)value).longValue());
+			}
+		}
+
+		@Override
+		void trim(int size){
+			if(size!=values.length){
+				values = Arrays.copyOf(values, size);
+			}
+			trimNulls(size);
+		}
+
+		@Override
+		Object getObject(int row){
+			return isNull(row) ? null : Long.valueOf(values[row]);
+		}
+
+		@Override
+		int getInt(int row){
+			return (int)values[row];
+		}
+
+		@Override
+		long getLong(int row){
+			return values[row];
+		}
+
+		@Override
+		double getDouble(int row){
+			return values[row];
+		}
+
+	}
+
+	static final class DoubleColumn extends Column {
+
+		private static final long serialVersionUID = 1L;
+
+		double[] values;
+
+		DoubleColumn(int capacity){
+			values = new double[capacity];
+		}
+
+		@Override
+		ColumnType type(){
+			return ColumnType.DOUBLE;
+		}
+
+		@Override
+		void read(ResultSet rs, int index, int row)throws SQLException{
+			double value = rs.getDouble(index);
+			if(rs.wasNull()){
+				set(row, null);
+			}else{
+				setDouble(row, value);
+			}
+		}
+
+		void setDouble(int row, double value){
+			if(row >= values.length){
+				values = Arrays.copyOf(values, grow(values.length, row));
+			}
+			values[row] = value;
+		}
+
+		@Override
+		void set(int row, Object value){
+			if(value==null){
+				setDouble(row, 0);
+				setNull(row);
+			}else{
+				setDouble(row, ((Number)value).doubleValue());
+			}
+		}
+
+		@Override
+		void trim(int size){
+			if(size!=values.length){
+				values = Arrays.copyOf(values, size);
+			}
+			trimNulls(size);
+		}
+
+		@Override
+		Object getObject(int row){
+			return isNull(row) ? null : Double.valueOf(values[row]);
+		}
+
+		@Override
+		int getInt(int row){
+			return (int)values[row];
+		}
+
+		@Override
+		long getLong(int row){
+			return (long)values[row];
+		}
+
+		@Override
+		double getDouble(int row){
+			return values[row];
+		}
+
+	}
+
+	/**
+	 * Dictionary-encoded strings: each row stores an index into a table of distinct values
+	 * */
+	static final class StringColumn extends Column {
+
+		private static final long serialVersionUID = 1L;
+
+		int[] codes;
+		String[] dictionary = new String[16];
+		int dictionarySize;
+		transient HashMap<String, Integer> lookup = new HashMap<>();
+
+		StringColumn(int capacity){
+			codes = new int[capacity];
+		}
+
+		@Override
+		ColumnType type(){
+			return ColumnType.STRING;
+		}
+
+		@Override
+		void read(ResultSet rs, int index, int row)throws SQLException{
+			set(row, rs.getString(index));
+		}
+
+		int encode(String value){
+			Integer code = lookup.get(value);
+			if(code==null){
+				if(dictionarySize==dictionary.length){
+					dictionary = Arrays.copyOf(dictionary, dictionarySize*2);
+				}
+				code = dictionarySize;
+				dictionary[dictionarySize++] = value;
+				lookup.put(value, code);
+			}
+			return code;
+		}
+
+		@Override
+		void set(int row, Object value){
+			if(row >= codes.length){
+				codes = Arrays.copyOf(codes, grow(codes.length, row));
+			}
+			if(value==null){
+				codes[row] = -1;
+				setNull(row);
+			}else{
+				codes[row] = encode(value.toString());
+			}
+		}
+
+		@Override
+		void trim(int size){
+			if(size!=codes.length){
+				codes = Arrays.copyOf(codes, size);
+			}
+			dictionary = Arrays.copyOf(dictionary, dictionarySize);
+			trimNulls(size);
+			//the lookup table is only needed while loading
+			lookup = null;
+		}
+
+		@Override
+		Object getObject(int row){
+			return getString(row);
+		}
+
+		@Override
+		String getString(int row){
+			int code = codes[row];
+			return code < 0 ? null : dictionary[code];
+		}
+
+	}
+
+	/**
+	 * Dates stored as epoch milliseconds. The original {@link Date} subclass 
+	 * ({@link java.sql.Date}, {@link Time} or {@link Timestamp}) is recreated on read.
+	 * */
+	static final class DateColumn extends Column {
+
+		private static final long serialVersionUID = 1L;
+
+		long[] values;
+		int sqlType;
+
+		DateColumn(int capacity, int sqlType){
+			values = new long[capacity];
+			this.sqlType = sqlType;
+		}
+
+		@Override
+		ColumnType type(){
+			return ColumnType.DATE;
+		}
+
+		@Override
+		void read(ResultSet rs, int index, int row)throws SQLException{
+			Date value;
+			switch (sqlType) {
+				case java.sql.Types.DATE:
+					value = rs.getDate(index);
+					break;
+				case java.sql.Types.TIME:
+					value = rs.getTime(index);
+					break;
+				default:
+					value = rs.getTimestamp(index);
+					break;
+			}
+			set(row, value);
+		}
+
+		void setTime(int row, long value){
+			if(row >= values.length){
+				values = Arrays.copyOf(values, grow(values.length, row));
+			}
+			values[row] = value;
+		}
+
+		@Override
+		void set(int row, Object value){
+			if(value==null){
+				setTime(row, 0);
+				setNull(row);
+				return;
+			}
+			if(sqlType==Integer.MIN_VALUE){
+				//type inferred from the values; remember the first Date subclass we see
+				sqlType = value instanceof Timestamp ? java.sql.Types.TIMESTAMP 
+						: value instanceof java.sql.Date ? java.sql.Types.DATE
+						: value instanceof Time ? java.sql.Types.TIME : java.sql.Types.OTHER;
+			}
+			setTime(row, ((Date)value).getTime());
+		}
+
+		@Override
+		void trim(int size){
+			if(size!=values.length){
+				values = Arrays.copyOf(values, size);
+			}
+			trimNulls(size);
+		}
+
+		@Override
+		Object getObject(int row){
+			return getDate(row);
+		}
+
+		@Override
+		Date getDate(int row){
+			if(isNull(row)){
+				return null;
+			}
+			long time = values[row];
+			switch (sqlType) {
+				case java.sql.Types.TIMESTAMP:
+					return new Timestamp(time);
+				case java.sql.Types.DATE:
+					return new java.sql.Date(time);
+				case java.sql.Types.TIME:
+					return new Time(time);
+				default:
+					return new Date(time);
+			}
+		}
+
+		@Override
+		int getInt(int row){
+			return (int)values[row];
+		}
+
+		@Override
+		long getLong(int row){
+			return values[row];
+		}
+
+		@Override
+		double getDouble(int row){
+			return values[row];
+		}
+
+	}
+
+	/**
+	 * Fallback storage for values without a specialized representation (BigDecimal, byte[], etc)
+	 * */
+	static final class ObjectColumn extends Column {
+
+		private static final long serialVersionUID = 1L;
+
+		Object[] values;
+
+		ObjectColumn(int capacity){
+			values = new Object[capacity];
+		}
+
+		@Override
+		ColumnType type(){
+			return ColumnType.OBJECT;
+		}
+
+		@Override
+		void read(ResultSet rs, int index, int row)throws SQLException{
+			set(row, rs.getObject(index));
+		}
+
+		@Override
+		void set(int row, Object value){
+			if(row >= values.length){
+				values = Arrays.copyOf(values, grow(values.length, row));
+			}
+			values[row] = value;
+			if(value==null){
+				setNull(row);
+			}
+		}
+
+		@Override
+		void trim(int size){
+			if(size!=values.length){
+				values = Arrays.copyOf(values, size);
+			}
+			trimNulls(size);
+		}
+
+		@Override
+		Object getObject(int row){
+			return values[row];
+		}
+
+	}
+
+}
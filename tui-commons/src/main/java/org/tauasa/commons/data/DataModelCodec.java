@@ -0,0 +1,320 @@
+/*
+ * Copyright 2012 Tauasa Timoteo
+ * 
+ * Permission is hereby granted, free of charge, to any person 
+ * obtaining a copy of this software and associated documentation 
+ * files (the “Software”), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, 
+ * publish, distribute, sublicense, and/or sell copies of the Software,
+ * and to permit persons to whom the Software is furnished to do so, 
+ * subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be 
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, 
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES 
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NON-
+ * INFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS 
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN 
+ * AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF 
+ * OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS 
+ * IN THE SOFTWARE.
+ */
+package org.tauasa.commons.data;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Compact binary encoding of {@link IDataModel}s, for caching models or shipping them 
+ * between nodes without the size and cost of Java serialization.
+ * <p>
+ * The stream starts with a schema header (magic, version, column names and their 
+ * {@link ColumnType}s) followed by blocks of up to {@link #BLOCK_SIZE} rows stored column 
+ * by column. Within a block each column carries a type tag and an optional null bitmap:
+ * <ul>
+ * <li>Integer and Long columns are zig-zag varint deltas from the previous value</li>
+ * <li>Date columns are varint deltas of epoch milliseconds (plus sub-millisecond nanos for Timestamps)</li>
+ * <li>Strings are dictionary encoded; the first occurrence is written inline and 
+ * repeats are written as a varint code</li>
+ * <li>Doubles are written as is and columns mixing value classes use a tagged 
+ * encoding per value</li>
+ * </ul>
+ * Blocks are length-prefixed so a {@link DataModelDecoder} only ever holds one block in memory.
+ *
+ * @author Tauasa Timoteo
+ * 
+ */
+public final class DataModelCodec {
+
+	static final byte[] MAGIC = {'T', 'D', 'M'};
+	static final byte VERSION = 1;
+
+	/**
+	 * Maximum number of rows per block
+	 * */
+	public static final int BLOCK_SIZE = 4096;
+
+	/**
+	 * Maximum number of distinct strings remembered per column; once full, 
+	 * new strings are always written inline
+	 * */
+	static final int MAX_DICTIONARY_SIZE = 1 << 16;
+
+	//per block column tag for a column whose values don't share a single class
+	static final byte MIXED = 0x7F;
+	static final int HAS_NULLS = 0x80;
+
+	private DataModelCodec(){}
+
+	/**
+	 * Encodes the remaining rows of the specified model (read with {@link IDataModel#next()} 
+	 * from the current row, the same as the writers) to the specified stream. The stream 
+	 * is flushed but not closed.
+	 * 
+	 * @return the number of rows written
+	 * */
+	public static int encode(IDataModel model, OutputStream out)throws DataModelException, IOException{
+		return new Encoder(model, out).encode();
+	}
+
+	/**
+	 * Decodes a complete model from the specified stream into a {@link TableDataModel}
+	 * */
+	public static TableDataModel decode(InputStream in)throws DataModelException, IOException{
+		DataModelDecoder decoder = new DataModelDecoder(in);
+		List<Object[]> rows = new ArrayList<>();
+		int columnCount = decoder.getColumnCount();
+		while(decoder.next()){
+			Object[] row = new Object[columnCount];
+			for(int i=0;i<columnCount;i++){
+				row[i] = decoder.getObject(i);
+			}
+			rows.add(row);
+		}
+		return new TableDataModel(decoder.getColumnNames(), rows.toArray(new Object[rows.size()][]));
+	}
+
+	/**
+	 * Returns a forward-only model that decodes the specified stream one block at a time
+	 * */
+	public static DataModelDecoder open(InputStream in)throws DataModelException, IOException{
+		return new DataModelDecoder(in);
+	}
+
+	/**
+	 * Returns the per block tag for the specified column values: the {@link ValueCodec} 
+	 * tag if all non-null values have one of the specialized classes, {@link ValueCodec#NULL} 
+	 * if they are all null and {@link #MIXED} otherwise
+	 * */
+	static byte classify(Object[] values, int rows){
+		Class<?> type = null;
+		for(int i=0;i<rows;i++){
+			Object value = values[i];
+			if(value==null){
+				continue;
+			}
+			if(type==null){
+				type = value.getClass();
+			}else if(type!=value.getClass()){
+				return MIXED;
+			}
+		}
+		if(type==null){
+			return ValueCodec.NULL;
+		}else if(type==Integer.class){
+			return ValueCodec.INT;
+		}else if(type==Long.class){
+			return ValueCodec.LONG;
+		}else if(type==Double.class){
+			return ValueCodec.DOUBLE;
+		}else if(type==String.class){
+			return ValueCodec.STRING;
+		}else if(type==Timestamp.class){
+			return ValueCodec.TIMESTAMP;
+		}else if(type==java.sql.Date.class){
+			return ValueCodec.SQL_DATE;
+		}else if(type==Time.class){
+			return ValueCodec.TIME;
+		}else if(type==Date.class){
+			return ValueCodec.DATE;
+		}
+		return MIXED;
+	}
+
+	/**
+	 * Encoding state for a single stream: the block being filled and the string dictionaries
+	 * */
+	private static final class Encoder {
+
+		private final IDataModel model;
+		private final DataOutputStream out;
+		private final int columnCount;
+		private final Object[][] block;
+		private final List<HashMap<String, Integer>> dictionaries;
+		private final ByteArrayOutputStream blockBytes = new ByteArrayOutputStream(65536);
+		private final DataOutputStream blockOut = new DataOutputStream(blockBytes);
+
+		Encoder(IDataModel model, OutputStream out)throws DataModelException{
+			this.model=model;
+			this.out=new DataOutputStream(new BufferedOutputStream(out, 65536));
+			this.columnCount=model.getColumnCount();
+			this.block=new Object[columnCount][BLOCK_SIZE];
+			this.dictionaries=new ArrayList<>(columnCount);
+			for(int i=0;i<columnCount;i++){
+				dictionaries.add(new HashMap<>());
+			}
+		}
+
+		int encode()throws DataModelException, IOException{
+			writeHeader();
+
+			int total = 0;
+			int rows = 0;
+			while(model.next()){
+				for(int i=0;i<columnCount;i++){
+					block[i][rows] = model.getObject(i);
+				}
+				if(++rows == BLOCK_SIZE){
+					writeBlock(rows);
+					total += rows;
+					rows = 0;
+				}
+			}
+			if(rows > 0){
+				writeBlock(rows);
+				total += rows;
+			}
+
+			//end of stream
+			ValueCodec.writeVarLong(out, 0);
+			out.flush();
+			return total;
+		}
+
+		private void writeHeader()throws DataModelException, IOException{
+			out.write(MAGIC);
+			out.writeByte(VERSION);
+			String[] names = model.getColumnNames();
+			ValueCodec.writeVarLong(out, columnCount);
+			for(int i=0;i<columnCount;i++){
+				ValueCodec.writeBytes(out, names[i].getBytes(StandardCharsets.UTF_8));
+				out.writeByte(model.getColumnType(i).ordinal());
+			}
+		}
+
+		private void writeBlock(int rows)throws IOException{
+			blockBytes.reset();
+			for(int i=0;i<columnCount;i++){
+				writeColumn(i, block[i], rows);
+			}
+			ValueCodec.writeVarLong(out, rows);
+			ValueCodec.writeVarLong(out, blockBytes.size());
+			blockBytes.writeTo(out);
+		}
+
+		private void writeColumn(int column, Object[] values, int rows)throws IOException{
+			byte tag = classify(values, rows);
+
+			//null bitmap
+			byte[] nulls = null;
+			for(int i=0;i<rows;i++){
+				if(values[i]==null){
+					if(nulls==null){
+						nulls = new byte[(rows+7) >>> 3];
+					}
+					nulls[i >>> 3] |= 1 << (i & 7);
+				}
+			}
+			blockOut.writeByte(nulls==null ? tag : tag | HAS_NULLS);
+			if(nulls!=null){
+				blockOut.write(nulls);
+			}
+
+			switch(tag){
+				case ValueCodec.NULL:
+					break;
+				case ValueCodec.INT:
+				case ValueCodec.LONG:{
+					long previous = 0;
+					for(int i=0;i<rows;i++){
+						if(values[i]!=null){
+							long value = ((Number)values[i]).longValue();
+							ValueCodec.writeVarLong(blockOut, ValueCodec.zigZag(value - previous));
+							previous = value;
+						}
+					}
+					break;
+				}
+				case ValueCodec.DOUBLE:
+					for(int i=0;i<rows;i++){
+						if(values[i]!=null){
+							blockOut.writeDouble((Double)values[i]);
+						}
+					}
+					break;
+				case ValueCodec.STRING:{
+					HashMap<String, Integer> dictionary = dictionaries.get(column);
+					for(int i=0;i<rows;i++){
+						if(values[i]!=null){
+							String value = (String)values[i];
+							Integer code = dictionary.get(value);
+							if(code!=null){
+								ValueCodec.writeVarLong(blockOut, code+1);
+							}else{
+								//zero means the string follows inline
+								ValueCodec.writeVarLong(blockOut, 0);
+								ValueCodec.writeBytes(blockOut, value.getBytes(StandardCharsets.UTF_8));
+								if(dictionary.size() < MAX_DICTIONARY_SIZE){
+									dictionary.put(value, dictionary.size());
+								}
+							}
+						}
+					}
+					break;
+				}
+				case ValueCodec.DATE:
+				case ValueCodec.SQL_DATE:
+				case ValueCodec.TIME:
+				case ValueCodec.TIMESTAMP:{
+					long previous = 0;
+					for(int i=0;i<rows;i++){
+						if(values[i]!=null){
+							long value = ((Date)values[i]).getTime();
+							ValueCodec.writeVarLong(blockOut, ValueCodec.zigZag(value - previous));
+							previous = value;
+							if(tag==ValueCodec.TIMESTAMP){
+								ValueCodec.writeVarLong(blockOut, ((Timestamp)values[i]).getNanos() % 1000000);
+							}
+						}
+					}
+					break;
+				}
+				default:
+					for(int i=0;i<rows;i++){
+						if(values[i]!=null){
+							ValueCodec.write(blockOut, values[i]);
+						}
+					}
+			}
+
+			//don't hold on to the values until the next block overwrites them
+			Arrays.fill(values, 0, rows, null);
+		}
+
+	}
+
+}
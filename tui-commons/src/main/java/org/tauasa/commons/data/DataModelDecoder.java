@@ -0,0 +1,404 @@
+/*
+ * Copyright 2012 Tauasa Timoteo
+ * 
+ * Permission is hereby granted, free of charge, to any person 
+ * obtaining a copy of this software and associated documentation 
+ * files (the “Software”), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, 
+ * publish, distribute, sublicense, and/or sell copies of the Software,
+ * and to permit persons to whom the Software is furnished to do so, 
+ * subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be 
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, 
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES 
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NON-
+ * INFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS 
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN 
+ * AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF 
+ * OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS 
+ * IN THE SOFTWARE.
+ */
+package org.tauasa.commons.data;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Forward-only {@link IDataModel} that reads the format written by 
+ * {@link DataModelCodec#encode(IDataModel, java.io.OutputStream)}, decoding one block of 
+ * rows at a time. Like a forward-only {@link ResultSetDataModel}, {@link #size()} returns 
+ * {@link IDataModel#UNKNOWN_SIZE} until the last row has been read and only the current 
+ * block can be revisited.
+ *
+ * @author Tauasa Timoteo
+ * 
+ */
+public final class DataModelDecoder implements IDataModel, Closeable {
+
+	private static final long serialVersionUID = 1L;
+
+	protected transient DataInputStream in;
+	protected String[] columns;
+	protected ColumnType[] types;
+	protected ColumnIndex columnIndex;
+
+	//the current block, column major
+	private transient Object[][] block;
+	private transient int blockRows;
+	private transient int blockRow = -1;
+	private transient byte[] buffer = new byte[65536];
+	private transient List<List<String>> dictionaries;
+	private transient boolean exhausted;
+
+	protected int rowsRead;
+	protected int size = UNKNOWN_SIZE;
+
+	/**
+	 * Reads the schema header from the specified stream
+	 * */
+	public DataModelDecoder(InputStream in)throws DataModelException, IOException{
+		this.in = new DataInputStream(new BufferedInputStream(in, 65536));
+
+		byte[] magic = new byte[DataModelCodec.MAGIC.length];
+		this.in.readFully(magic);
+		if(!Arrays.equals(magic, DataModelCodec.MAGIC)){
+			throw new DataModelException("Not an encoded DataModel");
+		}
+		byte version = this.in.readByte();
+		if(version != DataModelCodec.VERSION){
+			throw new DataModelException("Unsupported DataModel encoding version: "+version);
+		}
+
+		int columnCount = (int)ValueCodec.readVarLong(this.in);
+		columns = new String[columnCount];
+		types = new ColumnType[columnCount];
+		ColumnType[] values = ColumnType.values();
+		dictionaries = new ArrayList<>(columnCount);
+		for(int i=0;i<columnCount;i++){
+			byte[] name = new byte[(int)ValueCodec.readVarLong(this.in)];
+			this.in.readFully(name);
+			columns[i] = new String(name, StandardCharsets.UTF_8);
+			types[i] = values[this.in.readByte()];
+			dictionaries.add(new ArrayList<>());
+		}
+		block = new Object[columnCount][];
+	}
+
+	/**
+	 * Reads and decodes the next block, returning false at the end of the stream
+	 * */
+	private boolean readBlock()throws IOException{
+		int rows = (int)ValueCodec.readVarLong(in);
+		if(rows==0){
+			exhausted = true;
+			return false;
+		}
+		int length = (int)ValueCodec.readVarLong(in);
+		if(length > buffer.length){
+			buffer = new byte[Math.max(length, buffer.length*2)];
+		}
+		in.readFully(buffer, 0, length);
+		ByteBuffer bytes = ByteBuffer.wrap(buffer, 0, length);
+
+		for(int i=0;i<columns.length;i++){
+			if(block[i]==null || block[i].length < rows){
+				block[i] = new Object[DataModelCodec.BLOCK_SIZE];
+			}
+			readColumn(bytes, dictionaries.get(i), block[i], rows);
+		}
+		blockRows = rows;
+		blockRow = -1;
+		return true;
+	}
+
+	private static void readColumn(ByteBuffer in, List<String> dictionary, Object[] values, int rows)throws IOException{
+		int flags = in.get() & 0xFF;
+		byte tag = (byte)(flags & ~DataModelCodec.HAS_NULLS);
+
+		byte[] nulls = null;
+		if((flags & DataModelCodec.HAS_NULLS)!=0){
+			nulls = new byte[(rows+7) >>> 3];
+			in.get(nulls);
+		}
+
+		long previous = 0;
+		for(int i=0;i<rows;i++){
+			if(tag==ValueCodec.NULL || (nulls!=null && (nulls[i >>> 3] & (1 << (i & 7)))!=0)){
+				values[i] = null;
+				continue;
+			}
+			switch(tag){
+				case ValueCodec.INT:
+					previous += ValueCodec.unZigZag(ValueCodec.readVarLong(in));
+					values[i] = (int)previous;
+					break;
+				case ValueCodec.LONG:
+					previous += ValueCodec.unZigZag(ValueCodec.readVarLong(in));
+					values[i] = previous;
+					break;
+				case ValueCodec.DOUBLE:
+					values[i] = in.getDouble();
+					break;
+				case ValueCodec.STRING:{
+					int code = (int)ValueCodec.readVarLong(in);
+					if(code==0){
+						String value = new String(ValueCodec.readBytes(in), StandardCharsets.UTF_8);
+						if(dictionary.size() < DataModelCodec.MAX_DICTIONARY_SIZE){
+							dictionary.add(value);
+						}
+						values[i] = value;
+					}else{
+						values[i] = dictionary.get(code-1);
+					}
+					break;
+				}
+				case ValueCodec.DATE:
+					previous += ValueCodec.unZigZag(ValueCodec.readVarLong(in));
+					values[i] = new Date(previous);
+					break;
+				case ValueCodec.SQL_DATE:
+					previous += ValueCodec.unZigZag(ValueCodec.readVarLong(in));
+					values[i] = new java.sql.Date(previous);
+					break;
+				case ValueCodec.TIME:
+					previous += ValueCodec.unZigZag(ValueCodec.readVarLong(in));
+					values[i] = new Time(previous);
+					break;
+				case ValueCodec.TIMESTAMP:{
+					previous += ValueCodec.unZigZag(ValueCodec.readVarLong(in));
+					Timestamp ts = new Timestamp(previous);
+					ts.setNanos(ts.getNanos() + (int)ValueCodec.readVarLong(in));
+					values[i] = ts;
+					break;
+				}
+				case DataModelCodec.MIXED:
+					values[i] = ValueCodec.read(in);
+					break;
+				default:
+					throw new StreamCorruptedException("Unknown column tag: "+tag);
+			}
+		}
+	}
+
+	private Object value(int column)throws DataModelException{
+		if(blockRow < 0 || blockRow >= blockRows){
+			throw new DataModelException("No current row");
+		}
+		return block[column][blockRow];
+	}
+
+	@Override
+	public void close()throws IOException{
+		in.close();
+	}
+
+	@Override
+	public ColumnType getColumnType(int column){
+		return types[column];
+	}
+
+	@Override
+	public boolean isNull(int column)throws DataModelException{
+		return value(column)==null;
+	}
+
+	@Override
+	public int getColumnIndex(String columnName)throws DataModelException{
+		if(columnIndex==null){
+			columnIndex = new ColumnIndex(columns);
+		}
+		return columnIndex.getIndex(columnName);
+	}
+
+	@Override
+	public int getColumnCount() {
+		return columns.length;
+	}
+
+	@Override
+	public String[] getColumnNames() throws DataModelException {
+		return columns;
+	}
+
+	@Override
+	public boolean next() throws DataModelException {
+		if(blockRow+1 < blockRows){
+			blockRow++;
+			rowsRead++;
+			return true;
+		}
+		if(exhausted){
+			return false;
+		}
+		try{
+			if(readBlock()){
+				blockRow = 0;
+				rowsRead++;
+				return true;
+			}
+		}catch(IOException e){
+			throw new DataModelException(e);
+		}
+		//we've reached the end so the size is now known
+		size = rowsRead;
+		return false;
+	}
+
+	/**
+	 * Moves to the specified row, which must be in the current block or after it
+	 * */
+	@Override
+	public boolean moveTo(int rowNum) throws DataModelException {
+		int blockStart = rowsRead - blockRow - 1;
+		if(rowNum < blockStart){
+			throw new DataModelException("moveTo("+rowNum+") is not supported by a forward-only DataModel once the row has been read");
+		}
+		if(rowNum < blockStart+blockRows){
+			rowsRead = rowNum+1;
+			blockRow = rowNum-blockStart;
+			return true;
+		}
+		while(rowsRead-1 < rowNum){
+			if(!next()){
+				return false;
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public boolean reset() throws DataModelException {
+		return moveTo(0);
+	}
+
+	@Override
+	public boolean previous() throws DataModelException {
+		if(blockRow<=0){
+			return false;
+		}
+		blockRow--;
+		rowsRead--;
+		return true;
+	}
+
+	@Override
+	public boolean last() throws DataModelException {
+		while(next()){
+			//read to the end
+		}
+		return blockRows > 0 && moveTo(size-1);
+	}
+
+	@Override
+	public boolean first() throws DataModelException {
+		return reset();
+	}
+
+	@Override
+	public int size() throws DataModelException {
+		return size;
+	}
+
+	@Override
+	public String getString(String name) throws DataModelException {
+		return getString(getColumnIndex(name));
+	}
+
+	@Override
+	public String getString(int column) throws DataModelException {
+		Object value = value(column);
+		return value==null ? null : value.toString();
+	}
+
+	public Number getNumber(String name)throws DataModelException{
+		return getNumber(getColumnIndex(name));
+	}
+
+	public Number getNumber(int column)throws DataModelException{
+		return (Number)value(column);
+	}
+
+	@Override
+	public int getInt(String name) throws DataModelException {
+		return getInt(getColumnIndex(name));
+	}
+
+	@Override
+	public int getInt(int column) throws DataModelException {
+		Number value = getNumber(column);
+		return value==null ? 0 : value.intValue();
+	}
+
+	@Override
+	public long getLong(String name) throws DataModelException {
+		return getLong(getColumnIndex(name));
+	}
+
+	@Override
+	public long getLong(int column) throws DataModelException {
+		Object value = value(column);
+		if(value instanceof Date){
+			//DATE columns are read as epoch millis
+			return ((Date)value).getTime();
+		}
+		return value==null ? 0 : ((Number)value).longValue();
+	}
+
+	@Override
+	public float getFloat(String name)throws DataModelException{
+		return getFloat(getColumnIndex(name));
+	}
+
+	@Override
+	public float getFloat(int column)throws DataModelException{
+		Number value = getNumber(column);
+		return value==null ? 0 : value.floatValue();
+	}
+
+	@Override
+	public double getDouble(String name)throws DataModelException{
+		return getDouble(getColumnIndex(name));
+	}
+
+	@Override
+	public double getDouble(int column)throws DataModelException{
+		Number value = getNumber(column);
+		return value==null ? 0 : value.doubleValue();
+	}
+
+	@Override
+	public Date getDate(String name) throws DataModelException {
+		return getDate(getColumnIndex(name));
+	}
+
+	@Override
+	public Date getDate(int column) throws DataModelException {
+		return (Date)value(column);
+	}
+
+	@Override
+	public Object getObject(String name) throws DataModelException {
+		return getObject(getColumnIndex(name));
+	}
+
+	@Override
+	public Object getObject(int column) throws DataModelException {
+		return value(column);
+	}
+
+}
@@ -0,0 +1,354 @@
+/*
+ * Copyright 2012 Tauasa Timoteo
+ * 
+ * Permission is hereby granted, free of charge, to any person 
+ * obtaining a copy of this software and associated documentation 
+ * files (the “Software”), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, 
+ * publish, distribute, sublicense, and/or sell copies of the Software,
+ * and to permit persons to whom the Software is furnished to do so, 
+ * subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be 
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, 
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES 
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NON-
+ * INFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS 
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN 
+ * AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF 
+ * OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS 
+ * IN THE SOFTWARE.
+ */
+package org.tauasa.commons.data;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.tauasa.commons.io.IOUtils;
+
+/**
+ * Finds the rows that were inserted, deleted or updated between two versions of the 
+ * same query, matching rows by a set of key columns with a hash join.
+ * <p>
+ * The old model is loaded into a hash table keyed on the key columns and the new model 
+ * is streamed past it. Each row carries a 64-bit hash of all of its values, so matching 
+ * rows whose hashes are equal are treated as unchanged without comparing their values. 
+ * If the old model has more than {@link #getMaxMemoryRows()} rows, both models are 
+ * hash-partitioned on their keys into {@link #getPartitions()} temporary files and joined 
+ * one partition at a time, so only one partition of the old model has to fit in memory.
+ * <p>
+ * Both models are read once with {@link IDataModel#next()} from their current rows and must 
+ * have the same columns. Updates and inserts are reported in the order of the new model 
+ * followed by the deletes, per partition when partitioned.
+ * <pre>
+ * DiffResult changes = DataModelDiff.diff(previous, current, "ID");
+ * </pre>
+ *
+ * @author Tauasa Timoteo
+ * 
+ */
+public class DataModelDiff {
+
+	private static final Logger logger = LoggerFactory.getLogger(DataModelDiff.class);
+
+	public static final int DEFAULT_MAX_MEMORY_ROWS = 1000000;
+	public static final int DEFAULT_PARTITIONS = 64;
+
+	protected String[] keys;
+	protected int maxMemoryRows = DEFAULT_MAX_MEMORY_ROWS;
+	protected int partitions = DEFAULT_PARTITIONS;
+	protected File tempDirectory;
+
+	public DataModelDiff(String... keys) {
+		if(keys==null || keys.length==0){
+			throw new IllegalArgumentException("At least one key column is required");
+		}
+		this.keys=keys;
+	}
+
+	/**
+	 * Diffs the specified models by the specified key columns and collects the differences
+	 * */
+	public static DiffResult diff(IDataModel before, IDataModel after, String... keys)throws DataModelException{
+		DiffResult result = new DiffResult(before.getColumnNames());
+		new DataModelDiff(keys).diff(before, after, result);
+		return result;
+	}
+
+	/**
+	 * Diffs the specified models, reporting the differences to the specified handler
+	 * 
+	 * @return the number of unchanged rows
+	 * */
+	public int diff(IDataModel before, IDataModel after, IDiffHandler handler)throws DataModelException{
+		String[] columns = before.getColumnNames();
+		if(!Arrays.equals(columns, after.getColumnNames())){
+			throw new DataModelException("Cannot diff models with different columns");
+		}
+		int[] keyColumns = new int[keys.length];
+		for(int i=0;i<keys.length;i++){
+			keyColumns[i] = before.getColumnIndex(keys[i]);
+		}
+
+		Map<RowKey, HashedRow> table = new HashMap<>();
+		Partitions spilled = null;
+		try{
+			//build
+			while(before.next()){
+				Object[] row = read(before, columns.length);
+				if(spilled==null){
+					put(table, row, keyColumns);
+					if(table.size() > maxMemoryRows){
+						spilled = new Partitions(partitions, tempDirectory);
+						if(logger.isDebugEnabled()){
+							logger.debug("More than "+maxMemoryRows+" rows, partitioning to disk");
+						}
+						for (HashedRow hashed : table.values()) {
+							spilled.write(spilled.before, hashed.row, keyColumns);
+						}
+						table = null;
+					}
+				}else{
+					spilled.write(spilled.before, row, keyColumns);
+				}
+			}
+
+			//probe
+			if(spilled==null){
+				int unchanged = 0;
+				while(after.next()){
+					unchanged += probe(table, read(after, columns.length), keyColumns, handler);
+				}
+				deleted(table, handler);
+				return unchanged;
+			}
+
+			while(after.next()){
+				spilled.write(spilled.after, read(after, columns.length), keyColumns);
+			}
+			spilled.flush();
+
+			int unchanged = 0;
+			for(int p=0;p<partitions;p++){
+				table = new HashMap<>();
+				ByteBuffer in = spilled.map(spilled.beforeFiles[p]);
+				while(in!=null && in.hasRemaining()){
+					put(table, readRow(in, columns.length), keyColumns);
+				}
+				in = spilled.map(spilled.afterFiles[p]);
+				while(in!=null && in.hasRemaining()){
+					unchanged += probe(table, readRow(in, columns.length), keyColumns, handler);
+				}
+				deleted(table, handler);
+			}
+			return unchanged;
+		}catch(IOException e){
+			throw new DataModelException("Unable to partition rows", e);
+		}finally{
+			if(spilled!=null){
+				spilled.close();
+			}
+		}
+	}
+
+	private static void put(Map<RowKey, HashedRow> table, Object[] row, int[] keyColumns)throws DataModelException{
+		HashedRow previous = table.put(RowKey.of(row, keyColumns), new HashedRow(row));
+		if(previous!=null){
+			throw new DataModelException("Duplicate key "+RowKey.of(row, keyColumns));
+		}
+	}
+
+	/**
+	 * Looks the specified new row up in the table, removing its match
+	 * 
+	 * @return 1 if the row is unchanged, otherwise 0
+	 * */
+	private static int probe(Map<RowKey, HashedRow> table, Object[] row, int[] keyColumns, IDiffHandler handler)throws DataModelException{
+		HashedRow match = table.remove(RowKey.of(row, keyColumns));
+		if(match==null){
+			handler.inserted(row);
+		}else if(match.hash != hash(row)){
+			handler.updated(match.row, row);
+		}else{
+			return 1;
+		}
+		return 0;
+	}
+
+	/**
+	 * Reports the rows left in the table (the ones no new row matched) as deleted
+	 * */
+	private static void deleted(Map<RowKey, HashedRow> table, IDiffHandler handler)throws DataModelException{
+		for (HashedRow row : table.values()) {
+			handler.deleted(row.row);
+		}
+	}
+
+	private static Object[] read(IDataModel model, int columnCount)throws DataModelException{
+		Object[] row = new Object[columnCount];
+		for(int i=0;i<columnCount;i++){
+			row[i] = model.getObject(i);
+		}
+		return row;
+	}
+
+	private static Object[] readRow(ByteBuffer in, int columnCount)throws IOException{
+		Object[] row = new Object[columnCount];
+		for(int i=0;i<columnCount;i++){
+			row[i] = ValueCodec.read(in);
+		}
+		return row;
+	}
+
+	/**
+	 * Order-sensitive 64-bit hash of all the values of a row
+	 * */
+	static long hash(Object[] row){
+		long hash = 1;
+		for (Object value : row) {
+			hash = SketchHash.mix(hash * 31 + (value==null ? 0 : SketchHash.hash(value)));
+		}
+		return hash;
+	}
+
+	public String[] getKeys() {
+		return keys;
+	}
+
+	public int getMaxMemoryRows() {
+		return maxMemoryRows;
+	}
+
+	/**
+	 * Sets the number of old rows held in memory before partitioning to disk
+	 * */
+	public void setMaxMemoryRows(int maxMemoryRows) {
+		this.maxMemoryRows = maxMemoryRows;
+	}
+
+	public int getPartitions() {
+		return partitions;
+	}
+
+	/**
+	 * Sets the number of partitions used once the old model doesn't fit in memory
+	 * */
+	public void setPartitions(int partitions) {
+		this.partitions = Math.max(1, partitions);
+	}
+
+	public File getTempDirectory() {
+		return tempDirectory;
+	}
+
+	/**
+	 * Sets where the partition files are created, the default temporary directory if null
+	 * */
+	public void setTempDirectory(File tempDirectory) {
+		this.tempDirectory = tempDirectory;
+	}
+
+	/**
+	 * A row and the hash of its values
+	 * */
+	private static final class HashedRow {
+
+		final Object[] row;
+		final long hash;
+
+		HashedRow(Object[] row) {
+			this.row=row;
+			this.hash=hash(row);
+		}
+
+	}
+
+	/**
+	 * Temporary partition files for both models, created on first write
+	 * */
+	private static final class Partitions implements Closeable {
+
+		final File directory;
+		final File[] beforeFiles;
+		final File[] afterFiles;
+		final DataOutputStream[] before;
+		final DataOutputStream[] after;
+
+		Partitions(int count, File directory) {
+			this.directory=directory;
+			beforeFiles = new File[count];
+			afterFiles = new File[count];
+			before = new DataOutputStream[count];
+			after = new DataOutputStream[count];
+		}
+
+		void write(DataOutputStream[] side, Object[] row, int[] keyColumns)throws IOException{
+			long keyHash = hash(RowKey.of(row, keyColumns).values);
+			int p = (int)((keyHash >>> 1) % side.length);
+			if(side[p]==null){
+				File[] files = side==before ? beforeFiles : afterFiles;
+				files[p] = File.createTempFile(side==before ? "diff-old-" : "diff-new-", ".part", directory);
+				files[p].deleteOnExit();
+				side[p] = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(files[p]), 16384));
+			}
+			for (Object value : row) {
+				ValueCodec.write(side[p], value);
+			}
+		}
+
+		void flush()throws IOException{
+			for(int p=0;p<before.length;p++){
+				if(before[p]!=null){
+					before[p].flush();
+				}
+				if(after[p]!=null){
+					after[p].flush();
+				}
+			}
+		}
+
+		/**
+		 * Maps the specified partition file, or returns null if the partition is empty
+		 * */
+		ByteBuffer map(File file)throws IOException{
+			if(file==null){
+				return null;
+			}
+			try(RandomAccessFile raf = new RandomAccessFile(file, "r")){
+				return raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+			}
+		}
+
+		@Override
+		public void close(){
+			for(int p=0;p<before.length;p++){
+				IOUtils.closeIgnoringException(before[p]);
+				IOUtils.closeIgnoringException(after[p]);
+				delete(beforeFiles[p]);
+				delete(afterFiles[p]);
+			}
+		}
+
+		private static void delete(File file){
+			if(file!=null && !file.delete()){
+				logger.warn("Unable to delete partition file "+file);
+			}
+		}
+
+	}
+
+}
@@ -0,0 +1,448 @@
+/*
+ * Copyright 2012 Tauasa Timoteo
+ * 
+ * Permission is hereby granted, free of charge, to any person 
+ * obtaining a copy of this software and associated documentation 
+ * files (the “Software”), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, 
+ * publish, distribute, sublicense, and/or sell copies of the Software,
+ * and to permit persons to whom the Software is furnished to do so, 
+ * subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be 
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, 
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES 
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NON-
+ * INFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS 
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN 
+ * AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF 
+ * OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS 
+ * IN THE SOFTWARE.
+ */
+package org.tauasa.commons.data;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * In-memory query operators over {@link IDataModel}s: filter, multi-key sort, top-N and 
+ * group-by with aggregates, so a result set can be re-sorted or re-grouped without 
+ * querying the database again.
+ * <p>
+ * Operators work on {@link IRandomAccessDataModel}s; other models are first copied into a 
+ * {@link TableDataModel} (see {@link #materialize(IDataModel)}). Filter, sort and top-N 
+ * return an {@link IndexedDataModel} view rather than copying rows. Comparisons and 
+ * aggregates read typed columns through the primitive getters; untyped (OBJECT) columns 
+ * are scanned once to find a common type. Models with at least 
+ * {@link DataModelUtils#PARALLEL_THRESHOLD} rows are processed in parallel on the common 
+ * ForkJoin pool, and all results are deterministic regardless.
+ *
+ * @author Tauasa Timoteo
+ * 
+ */
+public final class DataModelOperators {
+
+	private DataModelOperators(){}
+
+	/**
+	 * Returns the specified model if it is random access, otherwise copies its remaining 
+	 * rows (read with {@link IDataModel#next()} from the current row) into a {@link TableDataModel}
+	 * */
+	public static IRandomAccessDataModel materialize(IDataModel model)throws DataModelException{
+		if(model instanceof IRandomAccessDataModel){
+			return (IRandomAccessDataModel)model;
+		}
+		int columnCount = model.getColumnCount();
+		List<Object[]> rows = new ArrayList<>();
+		while(model.next()){
+			Object[] row = new Object[columnCount];
+			for(int i=0;i<columnCount;i++){
+				row[i] = model.getObject(i);
+			}
+			rows.add(row);
+		}
+		return new TableDataModel(model.getColumnNames(), rows.toArray(new Object[rows.size()][]));
+	}
+
+	/**
+	 * Returns a view of the rows that match the specified predicate, in their original order
+	 * */
+	public static IndexedDataModel filter(IDataModel model, Predicate<DataRow> predicate)throws DataModelException{
+		IRandomAccessDataModel m = materialize(model);
+		int[] rows = DataModelUtils.rows(m).filter(row -> predicate.test(new DataRow(m, row))).toArray();
+		return view(m, rows);
+	}
+
+	/**
+	 * Returns a view of the rows sorted by the specified keys. The sort is stable.
+	 * */
+	public static IndexedDataModel sort(IDataModel model, SortKey... keys)throws DataModelException{
+		IRandomAccessDataModel m = materialize(model);
+		RowComparator comparator = comparator(m, keys);
+		int[] rows = IntStream.range(0, m.getRowCount()).toArray();
+		RowSorter.sort(rows, comparator, rows.length >= DataModelUtils.PARALLEL_THRESHOLD);
+		return view(m, rows);
+	}
+
+	/**
+	 * Returns a view of the first n rows in the order of the specified keys, the same as 
+	 * the first n rows of {@link #sort(IDataModel, SortKey...)} but without sorting every row
+	 * */
+	public static IndexedDataModel top(IDataModel model, int n, SortKey... keys)throws DataModelException{
+		IRandomAccessDataModel m = materialize(model);
+		int count = m.getRowCount();
+		if(n >= count){
+			return sort(m, keys);
+		}else if(n <= 0){
+			return view(m, new int[0]);
+		}
+
+		//break ties by row so the result matches a stable sort
+		RowComparator comparator = comparator(m, keys).then(Integer::compare);
+
+		int[] candidates;
+		if(count >= DataModelUtils.PARALLEL_THRESHOLD){
+			int partitions = ForkJoinPool.getCommonPoolParallelism() * 4;
+			int size = (count + partitions - 1) / partitions;
+			candidates = IntStream.range(0, partitions).parallel()
+					.flatMap(p -> IntStream.of(top(comparator, p*size, Math.min(count, (p+1)*size), n)))
+					.toArray();
+		}else{
+			candidates = top(comparator, 0, count, n);
+		}
+		RowSorter.sort(candidates, comparator, false);
+		return view(m, Arrays.copyOf(candidates, n));
+	}
+
+	/**
+	 * Selects the n smallest rows of [from, to) with a bounded max-heap whose root is the largest row kept
+	 * */
+	private static int[] top(RowComparator comparator, int from, int to, int n){
+		int[] heap = new int[Math.max(0, Math.min(n, to-from))];
+		int size = 0;
+		for(int row=from;row<to;row++){
+			if(size < heap.length){
+				//sift up
+				int i = size++;
+				while(i > 0){
+					int parent = (i-1) >>> 1;
+					if(comparator.compare(heap[parent], row) >= 0){
+						break;
+					}
+					heap[i] = heap[parent];
+					i = parent;
+				}
+				heap[i] = row;
+			}else if(comparator.compare(row, heap[0]) < 0){
+				//replace the root and sift down
+				int i = 0;
+				while(true){
+					int child = 2*i+1;
+					if(child >= size){
+						break;
+					}
+					if(child+1 < size && comparator.compare(heap[child+1], heap[child]) > 0){
+						child++;
+					}
+					if(comparator.compare(heap[child], row) <= 0){
+						break;
+					}
+					heap[i] = heap[child];
+					i = child;
+				}
+				heap[i] = row;
+			}
+		}
+		return heap;
+	}
+
+	/**
+	 * Groups the rows by the specified key columns and computes the specified aggregates for 
+	 * each group. The result has one row per group, in order of first appearance, with the 
+	 * key columns followed by one column per aggregate (named by {@link Aggregate#getAlias()}).
+	 * */
+	public static TableDataModel groupBy(IDataModel model, String[] keys, Aggregate... aggregates)throws DataModelException{
+		IRandomAccessDataModel m = materialize(model);
+
+		int[] keyColumns = new int[keys.length];
+		for(int i=0;i<keys.length;i++){
+			keyColumns[i] = m.getColumnIndex(keys[i]);
+		}
+		int[] columns = new int[aggregates.length];
+		ColumnType[] types = new ColumnType[aggregates.length];
+		for(int i=0;i<aggregates.length;i++){
+			String column = aggregates[i].getColumn();
+			columns[i] = column==null ? -1 : m.getColumnIndex(column);
+			types[i] = column==null ? null : columnType(m, columns[i]);
+		}
+
+		int count = m.getRowCount();
+		Map<RowKey, Accumulator[]> groups;
+		if(count >= DataModelUtils.PARALLEL_THRESHOLD){
+			//group each partition separately and merge them in order so groups stay in order of first appearance
+			int partitions = ForkJoinPool.getCommonPoolParallelism() * 4;
+			int size = (count + partitions - 1) / partitions;
+			List<Map<RowKey, Accumulator[]>> partial = IntStream.range(0, partitions).parallel()
+					.mapToObj(p -> group(m, p*size, Math.min(count, (p+1)*size), keyColumns, aggregates, columns, types))
+					.collect(Collectors.toList());
+			groups = partial.get(0);
+			for(int p=1;p<partial.size();p++){
+				for(Map.Entry<RowKey, Accumulator[]> entry : partial.get(p).entrySet()){
+					Accumulator[] existing = groups.putIfAbsent(entry.getKey(), entry.getValue());
+					if(existing!=null){
+						for(int i=0;i<existing.length;i++){
+							existing[i].merge(entry.getValue()[i]);
+						}
+					}
+				}
+			}
+		}else{
+			groups = group(m, 0, count, keyColumns, aggregates, columns, types);
+		}
+
+		String[] names = new String[keys.length + aggregates.length];
+		System.arraycopy(keys, 0, names, 0, keys.length);
+		for(int i=0;i<aggregates.length;i++){
+			names[keys.length+i] = aggregates[i].getAlias();
+		}
+
+		Object[][] rows = new Object[groups.size()][];
+		int r = 0;
+		for(Map.Entry<RowKey, Accumulator[]> entry : groups.entrySet()){
+			Object[] row = new Object[names.length];
+			System.arraycopy(entry.getKey().values, 0, row, 0, keys.length);
+			for(int i=0;i<aggregates.length;i++){
+				row[keys.length+i] = entry.getValue()[i].result();
+			}
+			rows[r++] = row;
+		}
+		return new TableDataModel(names, rows);
+	}
+
+	private static Map<RowKey, Accumulator[]> group(IRandomAccessDataModel m, int from, int to, 
+			int[] keyColumns, Aggregate[] aggregates, int[] columns, ColumnType[] types){
+		Map<RowKey, Accumulator[]> groups = new LinkedHashMap<>();
+		for(int row=from;row<to;row++){
+			Object[] values = new Object[keyColumns.length];
+			for(int i=0;i<values.length;i++){
+				values[i] = m.getObject(row, keyColumns[i]);
+			}
+			Accumulator[] accumulators = groups.get(new RowKey(values));
+			if(accumulators==null){
+				accumulators = new Accumulator[aggregates.length];
+				for(int i=0;i<accumulators.length;i++){
+					accumulators[i] = new Accumulator(aggregates[i].getFunction(), types[i]);
+				}
+				groups.put(new RowKey(values), accumulators);
+			}
+			for(int i=0;i<accumulators.length;i++){
+				accumulators[i].add(m, row, columns[i]);
+			}
+		}
+		return groups;
+	}
+
+	private static IndexedDataModel view(IRandomAccessDataModel m, int[] rows){
+		if(m instanceof IndexedDataModel){
+			//view the original model directly rather than stacking views
+			IndexedDataModel indexed = (IndexedDataModel)m;
+			for(int i=0;i<rows.length;i++){
+				rows[i] = indexed.getSourceRow(rows[i]);
+			}
+			return new IndexedDataModel(indexed.getSource(), rows);
+		}
+		return new IndexedDataModel(m, rows);
+	}
+
+	/**
+	 * Returns the declared type of the specified column or, for OBJECT columns, the 
+	 * narrowest type that holds all of its values
+	 * */
+	static ColumnType columnType(IRandomAccessDataModel m, int column)throws DataModelException{
+		ColumnType type = m.getColumnType(column);
+		if(type!=ColumnType.OBJECT){
+			return type;
+		}
+		type = null;
+		for(int row=0, count=m.getRowCount();row<count && type!=ColumnType.OBJECT;row++){
+			type = ColumnType.widen(type, ColumnType.forValue(m.getObject(row, column)));
+		}
+		return type==null ? ColumnType.OBJECT : type;
+	}
+
+	static RowComparator comparator(IRandomAccessDataModel m, SortKey... keys)throws DataModelException{
+		if(keys.length==0){
+			throw new DataModelException("No sort keys");
+		}
+		RowComparator comparator = null;
+		for (SortKey key : keys) {
+			int column = m.getColumnIndex(key.getColumn());
+			RowComparator c = comparator(m, column, columnType(m, column));
+			if(!key.isAscending()){
+				c = c.reversed();
+			}
+			comparator = comparator==null ? c : comparator.then(c);
+		}
+		return comparator;
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private static RowComparator comparator(IRandomAccessDataModel m, int column, ColumnType type){
+		RowComparator values;
+		switch(type){
+			case INT:
+				values = (a, b) -> Integer.compare(m.getInt(a, column), m.getInt(b, column));
+				break;
+			case LONG:
+				values = (a, b) -> Long.compare(m.getLong(a, column), m.getLong(b, column));
+				break;
+			case DOUBLE:
+				values = (a, b) -> Double.compare(m.getDouble(a, column), m.getDouble(b, column));
+				break;
+			case STRING:
+				values = (a, b) -> m.getString(a, column).compareTo(m.getString(b, column));
+				break;
+			case DATE:
+				values = (a, b) -> Long.compare(m.getDate(a, column).getTime(), m.getDate(b, column).getTime());
+				break;
+			default:
+				values = (a, b) -> ((Comparable)m.getObject(a, column)).compareTo(m.getObject(b, column));
+		}
+		//nulls sort low
+		return (a, b) -> {
+			boolean nullA = m.isNull(a, column);
+			boolean nullB = m.isNull(b, column);
+			if(nullA || nullB){
+				return nullA==nullB ? 0 : (nullA ? -1 : 1);
+			}
+			return values.compare(a, b);
+		};
+	}
+
+	/**
+	 * Running state of one aggregate for one group
+	 * */
+	private static final class Accumulator {
+
+		final Aggregate.Function function;
+		final ColumnType type;
+		final boolean integral;
+		long count;
+		long longSum;
+		double doubleSum;
+		Object min;
+		Object max;
+		double minValue;
+		double maxValue;
+
+		Accumulator(Aggregate.Function function, ColumnType type) {
+			this.function=function;
+			this.type=type;
+			this.integral=type==ColumnType.INT || type==ColumnType.LONG;
+		}
+
+		@SuppressWarnings({ "unchecked", "rawtypes" })
+		void add(IRandomAccessDataModel m, int row, int column){
+			if(column < 0){
+				count++;
+				return;
+			}
+			if(m.isNull(row, column)){
+				return;
+			}
+			count++;
+			switch(function){
+				case SUM:
+				case AVG:
+					if(integral){
+						longSum += m.getLong(row, column);
+					}else{
+						doubleSum += m.getDouble(row, column);
+					}
+					break;
+				case MIN:
+				case MAX:
+					if(type.isNumeric()){
+						double value = m.getDouble(row, column);
+						if(min==null || value < minValue){
+							min = m.getObject(row, column);
+							minValue = value;
+						}
+						if(max==null || value > maxValue){
+							max = m.getObject(row, column);
+							maxValue = value;
+						}
+					}else{
+						Comparable value = (Comparable)m.getObject(row, column);
+						if(min==null || value.compareTo(min) < 0){
+							min = value;
+						}
+						if(max==null || value.compareTo(max) > 0){
+							max = value;
+						}
+					}
+					break;
+				default:
+					break;
+			}
+		}
+
+		@SuppressWarnings({ "unchecked", "rawtypes" })
+		void merge(Accumulator other){
+			count += other.count;
+			longSum += other.longSum;
+			doubleSum += other.doubleSum;
+			if(other.min!=null){
+				if(type.isNumeric()){
+					if(min==null || other.minValue < minValue){
+						min = other.min;
+						minValue = other.minValue;
+					}
+					if(max==null || other.maxValue > maxValue){
+						max = other.max;
+						maxValue = other.maxValue;
+					}
+				}else{
+					if(min==null || ((Comparable)other.min).compareTo(min) < 0){
+						min = other.min;
+					}
+					if(max==null || ((Comparable)other.max).compareTo(max) > 0){
+						max = other.max;
+					}
+				}
+			}
+		}
+
+		Object result(){
+			switch(function){
+				case COUNT:
+					return count;
+				case SUM:
+					if(count==0){
+						return null;
+					}
+					return integral ? (Object)longSum : (Object)doubleSum;
+				case AVG:
+					if(count==0){
+						return null;
+					}
+					return (integral ? (double)longSum : doubleSum) / count;
+				case MIN:
+					return min;
+				default:
+					return max;
+			}
+		}
+
+	}
+
+}
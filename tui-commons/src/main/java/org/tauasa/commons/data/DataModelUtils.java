@@ -0,0 +1,334 @@
+/*
+ * Copyright 2012 Tauasa Timoteo
+ * 
+ * Permission is hereby granted, free of charge, to any person 
+ * obtaining a copy of this software and associated documentation 
+ * files (the “Software”), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, 
+ * publish, distribute, sublicense, and/or sell copies of the Software,
+ * and to permit persons to whom the Software is furnished to do so, 
+ * subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be 
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, 
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES 
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NON-
+ * INFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS 
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN 
+ * AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF 
+ * OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS 
+ * IN THE SOFTWARE.
+ */
+package org.tauasa.commons.data;
+
+import java.util.Arrays;
+import java.util.DoubleSummaryStatistics;
+import java.util.LongSummaryStatistics;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * {@link Stream} support and column reductions for {@link IDataModel} implementations.
+ * <p>
+ * Models that implement {@link IRandomAccessDataModel} ({@link TableDataModel}, 
+ * {@link ColumnarDataModel}) are read by row index without touching their cursor, and 
+ * their streams split evenly across the common ForkJoin pool. Every other model is read 
+ * through its cursor, starting after the current row (the same way the writers 
+ * read it) and is consumed by the operation; its streams can still run in parallel 
+ * but the rows are read by a single thread in batches.
+ * <p>
+ * The reductions ignore null values and run in parallel once a random access model 
+ * has at least {@link #PARALLEL_THRESHOLD} rows. {@link #sketch} computes approximate 
+ * aggregates ({@link HyperLogLog}, {@link QuantileSketch}, {@link HeavyHitters}) in one 
+ * pass and fixed memory, merging per-partition sketches for large random access models.
+ *
+ * @author Tauasa Timoteo
+ * 
+ */
+public final class DataModelUtils {
+
+	/**
+	 * Minimum number of rows before the reductions split a random access model across threads
+	 * */
+	public static final int PARALLEL_THRESHOLD = 1 << 14;
+
+	/**
+	 * Number of rows cursor based models are read ahead by their spliterator
+	 * */
+	static final int CURSOR_BATCH_SIZE = 1024;
+
+	private DataModelUtils(){}
+
+	/**
+	 * Returns a sequential stream of the rows of the specified model
+	 * */
+	public static Stream<DataRow> stream(IDataModel model)throws DataModelException{
+		return StreamSupport.stream(spliterator(model), false);
+	}
+
+	/**
+	 * Returns a parallel stream of the rows of the specified model
+	 * */
+	public static Stream<DataRow> parallelStream(IDataModel model)throws DataModelException{
+		return StreamSupport.stream(spliterator(model), true);
+	}
+
+	/**
+	 * Returns a {@link Spliterator} over the rows of the specified model
+	 * */
+	public static Spliterator<DataRow> spliterator(IDataModel model)throws DataModelException{
+		if(model instanceof IRandomAccessDataModel){
+			IRandomAccessDataModel m = (IRandomAccessDataModel)model;
+			return new DataRowSpliterator(m, 0, m.getRowCount());
+		}
+		return new CursorSpliterator(model);
+	}
+
+	/**
+	 * Returns count, sum, min, average and max of the non-null values of the specified numeric column
+	 * */
+	public static DoubleSummaryStatistics summarize(IDataModel model, int column)throws DataModelException{
+		if(model instanceof IRandomAccessDataModel){
+			IRandomAccessDataModel m = (IRandomAccessDataModel)model;
+			return rows(m).filter(row -> !m.isNull(row, column))
+					.mapToDouble(row -> m.getDouble(row, column))
+					.summaryStatistics();
+		}
+		DoubleSummaryStatistics stats = new DoubleSummaryStatistics();
+		while(model.next()){
+			if(!model.isNull(column)){
+				stats.accept(model.getDouble(column));
+			}
+		}
+		return stats;
+	}
+
+	public static DoubleSummaryStatistics summarize(IDataModel model, String name)throws DataModelException{
+		return summarize(model, model.getColumnIndex(name));
+	}
+
+	/**
+	 * Same as {@link #summarize(IDataModel, int)} but exact for integral columns 
+	 * whose sum would not fit in a double's 53 bit mantissa
+	 * */
+	public static LongSummaryStatistics summarizeLong(IDataModel model, int column)throws DataModelException{
+		if(model instanceof IRandomAccessDataModel){
+			IRandomAccessDataModel m = (IRandomAccessDataModel)model;
+			return rows(m).filter(row -> !m.isNull(row, column))
+					.mapToLong(row -> m.getLong(row, column))
+					.summaryStatistics();
+		}
+		LongSummaryStatistics stats = new LongSummaryStatistics();
+		while(model.next()){
+			if(!model.isNull(column)){
+				stats.accept(model.getLong(column));
+			}
+		}
+		return stats;
+	}
+
+	public static LongSummaryStatistics summarizeLong(IDataModel model, String name)throws DataModelException{
+		return summarizeLong(model, model.getColumnIndex(name));
+	}
+
+	/**
+	 * Returns the sum of the non-null values of the specified numeric column
+	 * */
+	public static double sum(IDataModel model, int column)throws DataModelException{
+		return summarize(model, column).getSum();
+	}
+
+	public static double sum(IDataModel model, String name)throws DataModelException{
+		return sum(model, model.getColumnIndex(name));
+	}
+
+	/**
+	 * Returns the sum of the non-null values of the specified integral column
+	 * */
+	public static long sumLong(IDataModel model, int column)throws DataModelException{
+		return summarizeLong(model, column).getSum();
+	}
+
+	public static long sumLong(IDataModel model, String name)throws DataModelException{
+		return sumLong(model, model.getColumnIndex(name));
+	}
+
+	/**
+	 * Returns the smallest non-null value of the specified numeric column, or 
+	 * {@link Double#NaN} if the column has no values
+	 * */
+	public static double min(IDataModel model, int column)throws DataModelException{
+		DoubleSummaryStatistics stats = summarize(model, column);
+		return stats.getCount()==0 ? Double.NaN : stats.getMin();
+	}
+
+	public static double min(IDataModel model, String name)throws DataModelException{
+		return min(model, model.getColumnIndex(name));
+	}
+
+	/**
+	 * Returns the largest non-null value of the specified numeric column, or 
+	 * {@link Double#NaN} if the column has no values
+	 * */
+	public static double max(IDataModel model, int column)throws DataModelException{
+		DoubleSummaryStatistics stats = summarize(model, column);
+		return stats.getCount()==0 ? Double.NaN : stats.getMax();
+	}
+
+	public static double max(IDataModel model, String name)throws DataModelException{
+		return max(model, model.getColumnIndex(name));
+	}
+
+	/**
+	 * Returns the number of non-null values in the specified column, which may be of any type
+	 * */
+	public static long count(IDataModel model, int column)throws DataModelException{
+		if(model instanceof IRandomAccessDataModel){
+			IRandomAccessDataModel m = (IRandomAccessDataModel)model;
+			return rows(m).filter(row -> !m.isNull(row, column)).count();
+		}
+		long count = 0;
+		while(model.next()){
+			if(!model.isNull(column)){
+				count++;
+			}
+		}
+		return count;
+	}
+
+	public static long count(IDataModel model, String name)throws DataModelException{
+		return count(model, model.getColumnIndex(name));
+	}
+
+	/**
+	 * Summarizes the specified column with sketches created by the specified factory, 
+	 * which must always create identically configured sketches so they can be merged
+	 * */
+	public static <S extends ISketch<S>> S sketch(IDataModel model, int column, Supplier<S> factory)throws DataModelException{
+		if(model instanceof IRandomAccessDataModel){
+			IRandomAccessDataModel m = (IRandomAccessDataModel)model;
+			int count = m.getRowCount();
+			if(count >= PARALLEL_THRESHOLD){
+				int partitions = ForkJoinPool.getCommonPoolParallelism() * 4;
+				int size = (count + partitions - 1) / partitions;
+				return IntStream.range(0, partitions).parallel()
+						.mapToObj(p -> {
+							S sketch = factory.get();
+							for(int row=p*size, end=Math.min(count, (p+1)*size);row<end;row++){
+								sketch.update(m, row, column);
+							}
+							return sketch;
+						})
+						.reduce((a, b) -> {
+							a.merge(b);
+							return a;
+						})
+						.get();
+			}
+			S sketch = factory.get();
+			for(int row=0;row<count;row++){
+				sketch.update(m, row, column);
+			}
+			return sketch;
+		}
+		S sketch = factory.get();
+		while(model.next()){
+			sketch.update(model, column);
+		}
+		return sketch;
+	}
+
+	public static <S extends ISketch<S>> S sketch(IDataModel model, String name, Supplier<S> factory)throws DataModelException{
+		return sketch(model, model.getColumnIndex(name), factory);
+	}
+
+	/**
+	 * Returns the approximate number of distinct non-null values in the specified column
+	 * */
+	public static long approxDistinct(IDataModel model, String name)throws DataModelException{
+		return sketch(model, name, HyperLogLog::new).estimate();
+	}
+
+	/**
+	 * Returns the approximate value of the specified quantile (0 to 1) of a numeric column
+	 * */
+	public static double approxQuantile(IDataModel model, String name, double quantile)throws DataModelException{
+		return sketch(model, name, QuantileSketch::new).quantile(quantile);
+	}
+
+	/**
+	 * Returns the row indexes of the specified model, in parallel if it is large enough
+	 * */
+	static IntStream rows(IRandomAccessDataModel model){
+		int count = model.getRowCount();
+		IntStream rows = IntStream.range(0, count);
+		return count >= PARALLEL_THRESHOLD ? rows.parallel() : rows;
+	}
+
+	/**
+	 * Reads a cursor based model ahead in batches of {@link #CURSOR_BATCH_SIZE} rows, 
+	 * each copied into a {@link TableDataModel} that the returned {@link DataRow}s point to. 
+	 * The inherited trySplit() hands batches of rows to other threads.
+	 * */
+	private static final class CursorSpliterator extends Spliterators.AbstractSpliterator<DataRow> {
+
+		private final IDataModel model;
+		private final String[] columns;
+		private final ColumnIndex columnIndex;
+		private TableDataModel batch;
+		private int batchRow;
+		private boolean exhausted;
+
+		CursorSpliterator(IDataModel model)throws DataModelException{
+			super(Long.MAX_VALUE, ORDERED | NONNULL);
+			this.model=model;
+			this.columns=model.getColumnNames().clone();
+			this.columnIndex=new ColumnIndex(columns);
+		}
+
+		@Override
+		public boolean tryAdvance(Consumer<? super DataRow> action) {
+			if(batch==null || batchRow >= batch.getRowCount()){
+				if(exhausted || !readBatch()){
+					return false;
+				}
+			}
+			action.accept(new DataRow(batch, batchRow++));
+			return true;
+		}
+
+		private boolean readBatch(){
+			try{
+				Object[][] rows = new Object[CURSOR_BATCH_SIZE][];
+				int count = 0;
+				while(count < CURSOR_BATCH_SIZE && model.next()){
+					Object[] row = new Object[columns.length];
+					for(int i=0;i<row.length;i++){
+						row[i] = model.getObject(i);
+					}
+					rows[count++] = row;
+				}
+				if(count < CURSOR_BATCH_SIZE){
+					exhausted = true;
+					rows = Arrays.copyOf(rows, count);
+				}
+				batch = new TableDataModel(columns, rows);
+				batch.columnIndex = columnIndex;
+				batchRow = 0;
+				return count > 0;
+			}catch(DataModelException e){
+				throw new UncheckedDataModelException(e);
+			}
+		}
+
+	}
+
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright 2012 Tauasa Timoteo
+ * 
+ * Permission is hereby granted, free of charge, to any person 
+ * obtaining a copy of this software and associated documentation 
+ * files (the “Software”), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, 
+ * publish, distribute, sublicense, and/or sell copies of the Software,
+ * and to permit persons to whom the Software is furnished to do so, 
+ * subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be 
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, 
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES 
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NON-
+ * INFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS 
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN 
+ * AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF 
+ * OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS 
+ * IN THE SOFTWARE.
+ */
+package org.tauasa.commons.data;
+
+import java.util.Date;
+
+/**
+ * A single row of a {@link IRandomAccessDataModel}, as returned by the streams built by 
+ * {@link DataModelUtils}. A DataRow is just a (model, row) pair; values are read from the 
+ * model when the getters are called, so the row isn't copied.
+ * <p>
+ * The name-based getters throw {@link UncheckedDataModelException} when the column 
+ * does not exist.
+ *
+ * @author Tauasa Timoteo
+ * 
+ */
+public final class DataRow {
+
+	private final IRandomAccessDataModel model;
+	private final int row;
+
+	public DataRow(IRandomAccessDataModel model, int row) {
+		this.model=model;
+		this.row=row;
+	}
+
+	/**
+	 * Returns the model that contains this row
+	 * */
+	public IRandomAccessDataModel getModel() {
+		return model;
+	}
+
+	/**
+	 * Returns the zero-based index of this row in its model
+	 * */
+	public int getRow() {
+		return row;
+	}
+
+	public boolean isNull(String name){
+		return model.isNull(row, column(name));
+	}
+
+	public boolean isNull(int column){
+		return model.isNull(row, column);
+	}
+
+	public Object getObject(String name){
+		return model.getObject(row, column(name));
+	}
+
+	public Object getObject(int column){
+		return model.getObject(row, column);
+	}
+
+	public String getString(String name){
+		return model.getString(row, column(name));
+	}
+
+	public String getString(int column){
+		return model.getString(row, column);
+	}
+
+	public int getInt(String name){
+		return model.getInt(row, column(name));
+	}
+
+	public int getInt(int column){
+		return model.getInt(row, column);
+	}
+
+	public long getLong(String name){
+		return model.getLong(row, column(name));
+	}
+
+	public long getLong(int column){
+		return model.getLong(row, column);
+	}
+
+	public double getDouble(String name){
+		return model.getDouble(row, column(name));
+	}
+
+	public double getDouble(int column){
+		return model.getDouble(row, column);
+	}
+
+	public Date getDate(String name){
+		return model.getDate(row, column(name));
+	}
+
+	public Date getDate(int column){
+		return model.getDate(row, column);
+	}
+
+	/**
+	 * Copies the values of this row into a new array
+	 * */
+	public Object[] toArray(){
+		try{
+			Object[] values = new Object[model.getColumnCount()];
+			for(int i=0;i<values.length;i++){
+				values[i] = model.getObject(row, i);
+			}
+			return values;
+		}catch(DataModelException e){
+			throw new UncheckedDataModelException(e);
+		}
+	}
+
+	private int column(String name){
+		try{
+			return model.getColumnIndex(name);
+		}catch(DataModelException e){
+			throw new UncheckedDataModelException(e);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "DataRow[" + row + "]";
+	}
+
+}
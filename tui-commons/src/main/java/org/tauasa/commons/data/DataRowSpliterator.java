@@ -0,0 +1,88 @@
+/*
+ * Copyright 2012 Tauasa Timoteo
+ * 
+ * Permission is hereby granted, free of charge, to any person 
+ * obtaining a copy of this software and associated documentation 
+ * files (the “Software”), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, 
+ * publish, distribute, sublicense, and/or sell copies of the Software,
+ * and to permit persons to whom the Software is furnished to do so, 
+ * subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be 
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, 
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES 
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NON-
+ * INFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS 
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN 
+ * AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF 
+ * OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS 
+ * IN THE SOFTWARE.
+ */
+package org.tauasa.commons.data;
+
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * {@link Spliterator} over a range of rows of a {@link IRandomAccessDataModel}. 
+ * Splits in half by row index so parallel streams get balanced, exactly sized chunks.
+ *
+ * @author Tauasa Timoteo
+ * 
+ */
+final class DataRowSpliterator implements Spliterator<DataRow> {
+
+	private final IRandomAccessDataModel model;
+	private int index;
+	private final int fence;
+
+	DataRowSpliterator(IRandomAccessDataModel model, int origin, int fence) {
+		this.model=model;
+		this.index=origin;
+		this.fence=fence;
+	}
+
+	@Override
+	public boolean tryAdvance(Consumer<? super DataRow> action) {
+		if(index < fence){
+			action.accept(new DataRow(model, index++));
+			return true;
+		}
+		return false;
+	}
+
+	@Override
+	public void forEachRemaining(Consumer<? super DataRow> action) {
+		int i = index;
+		//update the index first so a throwing action can't cause a row to be visited twice
+		index = fence;
+		for(;i<fence;i++){
+			action.accept(new DataRow(model, i));
+		}
+	}
+
+	@Override
+	public Spliterator<DataRow> trySplit() {
+		int mid = (index + fence) >>> 1;
+		if(mid <= index){
+			return null;
+		}
+		Spliterator<DataRow> prefix = new DataRowSpliterator(model, index, mid);
+		index = mid;
+		return prefix;
+	}
+
+	@Override
+	public long estimateSize() {
+		return fence - index;
+	}
+
+	@Override
+	public int characteristics() {
+		return ORDERED | SIZED | SUBSIZED | NONNULL | IMMUTABLE;
+	}
+
+}
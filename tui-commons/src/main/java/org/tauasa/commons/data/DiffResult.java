@@ -0,0 +1,107 @@
+/*
+ * Copyright 2012 Tauasa Timoteo
+ * 
+ * Permission is hereby granted, free of charge, to any person 
+ * obtaining a copy of this software and associated documentation 
+ * files (the “Software”), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, 
+ * publish, distribute, sublicense, and/or sell copies of the Software,
+ * and to permit persons to whom the Software is furnished to do so, 
+ * subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be 
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, 
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES 
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NON-
+ * INFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS 
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN 
+ * AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF 
+ * OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS 
+ * IN THE SOFTWARE.
+ */
+package org.tauasa.commons.data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * {@link IDiffHandler} that collects the differences into {@link TableDataModel}s
+ *
+ * @author Tauasa Timoteo
+ * 
+ */
+public class DiffResult implements IDiffHandler {
+
+	protected final String[] columns;
+	protected final List<Object[]> inserted = new ArrayList<>();
+	protected final List<Object[]> deleted = new ArrayList<>();
+	protected final List<Object[]> updatedBefore = new ArrayList<>();
+	protected final List<Object[]> updatedAfter = new ArrayList<>();
+
+	public DiffResult(String[] columns) {
+		this.columns=columns;
+	}
+
+	@Override
+	public void inserted(Object[] row) {
+		inserted.add(row);
+	}
+
+	@Override
+	public void deleted(Object[] row) {
+		deleted.add(row);
+	}
+
+	@Override
+	public void updated(Object[] before, Object[] after) {
+		updatedBefore.add(before);
+		updatedAfter.add(after);
+	}
+
+	/**
+	 * Returns true if the models had the same rows
+	 * */
+	public boolean isEmpty(){
+		return inserted.isEmpty() && deleted.isEmpty() && updatedAfter.isEmpty();
+	}
+
+	/**
+	 * Returns the rows that are only in the new model
+	 * */
+	public TableDataModel getInserted(){
+		return model(inserted);
+	}
+
+	/**
+	 * Returns the rows that are only in the old model
+	 * */
+	public TableDataModel getDeleted(){
+		return model(deleted);
+	}
+
+	/**
+	 * Returns the new values of the updated rows
+	 * */
+	public TableDataModel getUpdated(){
+		return model(updatedAfter);
+	}
+
+	/**
+	 * Returns the old values of the updated rows, in the same order as {@link #getUpdated()}
+	 * */
+	public TableDataModel getUpdatedBefore(){
+		return model(updatedBefore);
+	}
+
+	private TableDataModel model(List<Object[]> rows){
+		return new TableDataModel(columns, rows.toArray(new Object[rows.size()][]));
+	}
+
+	@Override
+	public String toString() {
+		return "DiffResult[inserted=" + inserted.size() + ", deleted=" + deleted.size() + ", updated=" + updatedAfter.size() + "]";
+	}
+
+}
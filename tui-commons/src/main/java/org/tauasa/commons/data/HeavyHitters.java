@@ -0,0 +1,205 @@
+/*
+ * Copyright 2012 Tauasa Timoteo
+ * 
+ * Permission is hereby granted, free of charge, to any person 
+ * obtaining a copy of this software and associated documentation 
+ * files (the “Software”), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, 
+ * publish, distribute, sublicense, and/or sell copies of the Software,
+ * and to permit persons to whom the Software is furnished to do so, 
+ * subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be 
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, 
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES 
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NON-
+ * INFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS 
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN 
+ * AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF 
+ * OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS 
+ * IN THE SOFTWARE.
+ */
+package org.tauasa.commons.data;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.tauasa.commons.util.KeyValuePair;
+
+/**
+ * Heavy hitter (most frequent value) tracker: a count-min sketch of 
+ * {@link #getDepth()} rows of {@link #getWidth()} counters plus the k values with the 
+ * highest estimated counts seen so far. Counts are never underestimated and are 
+ * overestimated by at most about e/width of the total count (with probability 
+ * 1 - e<sup>-depth</sup>), so any value that makes up a large enough share of the column 
+ * ends up in {@link #getTopK()}.
+ *
+ * @author Tauasa Timoteo
+ * 
+ */
+public final class HeavyHitters implements ISketch<HeavyHitters> {
+
+	private static final long serialVersionUID = 1L;
+
+	public static final int DEFAULT_WIDTH = 2048;
+	public static final int DEFAULT_DEPTH = 5;
+
+	private final int k;
+	private final int width;
+	private final int depth;
+	private final long[] counts;
+	private long total;
+
+	//candidate values and their estimated counts; every candidate's count is at least minCandidate
+	private final HashMap<Object, Long> candidates;
+	private long minCandidate;
+
+	public HeavyHitters(int k) {
+		this(k, DEFAULT_WIDTH, DEFAULT_DEPTH);
+	}
+
+	public HeavyHitters(int k, int width, int depth) {
+		if(k < 1 || width < 1 || depth < 1){
+			throw new IllegalArgumentException("k, width and depth must be positive");
+		}
+		this.k=k;
+		this.width=width;
+		this.depth=depth;
+		this.counts=new long[width*depth];
+		this.candidates=new HashMap<>(k*2);
+	}
+
+	@Override
+	public void update(Object value){
+		if(value!=null){
+			add(value, 1);
+		}
+	}
+
+	/**
+	 * Adds the specified number of occurrences of a value
+	 * */
+	public void add(Object value, long n){
+		long hash = SketchHash.hash(value);
+		long estimate = Long.MAX_VALUE;
+		for(int row=0;row<depth;row++){
+			int index = row*width + bucket(hash, row);
+			counts[index] += n;
+			estimate = Math.min(estimate, counts[index]);
+		}
+		total += n;
+		offer(value, estimate);
+	}
+
+	/**
+	 * Bucket of the specified row, derived from the two halves of the hash (Kirsch-Mitzenmacher)
+	 * */
+	private int bucket(long hash, int row){
+		int h = (int)hash + row * (int)(hash >>> 32);
+		return (h & Integer.MAX_VALUE) % width;
+	}
+
+	private void offer(Object value, long estimate){
+		if(candidates.containsKey(value) || candidates.size() < k){
+			candidates.put(value, estimate);
+			if(candidates.size()==k){
+				minCandidate = min();
+			}
+			return;
+		}
+		//counts only grow, so minCandidate is a lower bound and usually lets us skip the scan
+		if(estimate <= minCandidate){
+			return;
+		}
+		Object smallest = null;
+		long smallestCount = Long.MAX_VALUE;
+		for (Map.Entry<Object, Long> entry : candidates.entrySet()) {
+			if(entry.getValue() < smallestCount){
+				smallest = entry.getKey();
+				smallestCount = entry.getValue();
+			}
+		}
+		if(estimate > smallestCount){
+			candidates.remove(smallest);
+			candidates.put(value, estimate);
+		}
+		minCandidate = min();
+	}
+
+	private long min(){
+		long min = Long.MAX_VALUE;
+		for (Long count : candidates.values()) {
+			min = Math.min(min, count);
+		}
+		return min;
+	}
+
+	/**
+	 * Returns the estimated number of occurrences of the specified value
+	 * */
+	public long estimate(Object value){
+		long hash = SketchHash.hash(value);
+		long estimate = Long.MAX_VALUE;
+		for(int row=0;row<depth;row++){
+			estimate = Math.min(estimate, counts[row*width + bucket(hash, row)]);
+		}
+		return estimate;
+	}
+
+	/**
+	 * Returns up to k values with their estimated counts, most frequent first
+	 * */
+	public List<KeyValuePair<Object, Long>> getTopK(){
+		List<KeyValuePair<Object, Long>> top = new ArrayList<>(candidates.size());
+		for (Map.Entry<Object, Long> entry : candidates.entrySet()) {
+			top.add(new KeyValuePair<>(entry.getKey(), entry.getValue()));
+		}
+		top.sort((a, b) -> Long.compare(b.getValue(), a.getValue()));
+		return top;
+	}
+
+	@Override
+	public void merge(HeavyHitters other){
+		if(other.width!=width || other.depth!=depth){
+			throw new IllegalArgumentException("Cannot merge sketches of different dimensions");
+		}
+		for(int i=0;i<counts.length;i++){
+			counts[i] += other.counts[i];
+		}
+		total += other.total;
+
+		//re-estimate the candidates of both sides against the merged counts
+		Set<Object> values = new HashSet<>(candidates.keySet());
+		values.addAll(other.candidates.keySet());
+		candidates.clear();
+		for (Object value : values) {
+			offer(value, estimate(value));
+		}
+	}
+
+	/**
+	 * Returns the number of (non-null) values added
+	 * */
+	public long getTotal() {
+		return total;
+	}
+
+	public int getK() {
+		return k;
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getDepth() {
+		return depth;
+	}
+
+}
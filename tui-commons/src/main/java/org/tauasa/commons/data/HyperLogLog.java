@@ -0,0 +1,134 @@
+/*
+ * Copyright 2012 Tauasa Timoteo
+ * 
+ * Permission is hereby granted, free of charge, to any person 
+ * obtaining a copy of this software and associated documentation 
+ * files (the “Software”), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, 
+ * publish, distribute, sublicense, and/or sell copies of the Software,
+ * and to permit persons to whom the Software is furnished to do so, 
+ * subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be 
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, 
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES 
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NON-
+ * INFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS 
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN 
+ * AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF 
+ * OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS 
+ * IN THE SOFTWARE.
+ */
+package org.tauasa.commons.data;
+
+/**
+ * HyperLogLog distinct value counter. Uses 2<sup>precision</sup> one byte registers and 
+ * estimates the number of distinct values with a standard error of about 
+ * 1.04/sqrt(2<sup>precision</sup>), e.g. 0.8% in 16KB for the default precision of 14. 
+ * Small cardinalities are estimated with linear counting.
+ *
+ * @author Tauasa Timoteo
+ * 
+ */
+public final class HyperLogLog implements ISketch<HyperLogLog> {
+
+	private static final long serialVersionUID = 1L;
+
+	public static final int DEFAULT_PRECISION = 14;
+
+	private final int precision;
+	private final byte[] registers;
+
+	public HyperLogLog() {
+		this(DEFAULT_PRECISION);
+	}
+
+	/**
+	 * @param precision number of index bits, from 4 to 18
+	 * */
+	public HyperLogLog(int precision) {
+		if(precision < 4 || precision > 18){
+			throw new IllegalArgumentException("Precision must be between 4 and 18: "+precision);
+		}
+		this.precision=precision;
+		this.registers=new byte[1 << precision];
+	}
+
+	@Override
+	public void update(Object value){
+		if(value!=null){
+			updateHash(SketchHash.hash(value));
+		}
+	}
+
+	/**
+	 * Adds a value by its 64-bit hash
+	 * */
+	public void updateHash(long hash){
+		int index = (int)(hash >>> (64 - precision));
+		//the sentinel bit bounds the run of zeros when the remaining bits are all zero
+		long rest = (hash << precision) | (1L << (precision - 1));
+		byte rank = (byte)(Long.numberOfLeadingZeros(rest) + 1);
+		if(rank > registers[index]){
+			registers[index] = rank;
+		}
+	}
+
+	/**
+	 * Returns the estimated number of distinct values
+	 * */
+	public long estimate(){
+		int m = registers.length;
+		double sum = 0;
+		int zeros = 0;
+		for (byte register : registers) {
+			sum += 1.0 / (1L << register);
+			if(register==0){
+				zeros++;
+			}
+		}
+		double estimate = alpha(m) * m * m / sum;
+		if(estimate <= 2.5 * m && zeros > 0){
+			//linear counting is more accurate while many registers are still empty
+			estimate = m * Math.log((double)m / zeros);
+		}
+		return Math.round(estimate);
+	}
+
+	private static double alpha(int m){
+		switch(m){
+			case 16:
+				return 0.673;
+			case 32:
+				return 0.697;
+			case 64:
+				return 0.709;
+			default:
+				return 0.7213 / (1 + 1.079 / m);
+		}
+	}
+
+	@Override
+	public void merge(HyperLogLog other){
+		if(other.precision != precision){
+			throw new IllegalArgumentException("Cannot merge HyperLogLogs with precision "+precision+" and "+other.precision);
+		}
+		for(int i=0;i<registers.length;i++){
+			if(other.registers[i] > registers[i]){
+				registers[i] = other.registers[i];
+			}
+		}
+	}
+
+	public int getPrecision() {
+		return precision;
+	}
+
+	@Override
+	public String toString() {
+		return "HyperLogLog[precision=" + precision + ", estimate=" + estimate() + "]";
+	}
+
+}
@@ -25,6 +25,7 @@ package org.tauasa.commons.data;
 
 import java.io.Serializable;
 import java.util.Date;
+import java.util.stream.Stream;
 
 /**
  * DataModel contract
@@ -34,6 +35,12 @@ import java.util.Date;
  */
 public interface IDataModel extends Serializable {
 
+	/**
+	 * Value returned by {@link #size()} when the number of rows cannot be determined 
+	 * without consuming the data (i.e. a forward-only model that has not been read to the end)
+	 * */
+	public static final int UNKNOWN_SIZE = -1;
+
 	/**
 	 * Returns the number of columns in DataModel implementation
 	 * */
@@ -44,6 +51,60 @@ public interface IDataModel extends Serializable {
 	 * */
 	public String[] getColumnNames()throws DataModelException;
 
+	/**
+	 * Returns the zero-based index of the specified column. The default implementation scans 
+	 * {@link #getColumnNames()}; implementations should override it with a constant time lookup.
+	 * 
+	 * @throws DataModelException if the column does not exist
+	 * */
+	public default int getColumnIndex(String name)throws DataModelException{
+		String[] names = getColumnNames();
+		for(int i=0;i<names.length;i++){
+			if(names[i].equals(name)){
+				return i;
+			}
+		}
+		throw new DataModelException("Column not found: "+name);
+	}
+
+	/**
+	 * Resolves the specified column once into a {@link ColumnRef} that can be reused 
+	 * for every row instead of looking the column up by name on each call
+	 * */
+	public default ColumnRef column(String name)throws DataModelException{
+		return new ColumnRef(name, getColumnIndex(name));
+	}
+
+	/**
+	 * Returns the storage type of the specified column, or {@link ColumnType#OBJECT} if the 
+	 * model does not know it. Writers use this to read values with the primitive getters.
+	 * */
+	public default ColumnType getColumnType(int column)throws DataModelException{
+		return ColumnType.OBJECT;
+	}
+
+	/**
+	 * Returns true if the specified column of the current row is null. Typed models should 
+	 * override the default implementation, which has to read (and box) the value.
+	 * */
+	public default boolean isNull(int column)throws DataModelException{
+		return getObject(column)==null;
+	}
+
+	/**
+	 * Returns a sequential stream of the rows of this model, see {@link DataModelUtils#stream(IDataModel)}
+	 * */
+	public default Stream<DataRow> stream()throws DataModelException{
+		return DataModelUtils.stream(this);
+	}
+
+	/**
+	 * Returns a parallel stream of the rows of this model, see {@link DataModelUtils#parallelStream(IDataModel)}
+	 * */
+	public default Stream<DataRow> parallelStream()throws DataModelException{
+		return DataModelUtils.parallelStream(this);
+	}
+
 	/**
 	 * Moves to the specified row of data
 	 * */
@@ -75,7 +136,7 @@ public interface IDataModel extends Serializable {
 	public boolean first()throws DataModelException;
 
 	/**
-	 * Returns the size of this data iterator
+	 * Returns the size of this data iterator or {@link #UNKNOWN_SIZE} if the size is not yet known
 	 * */
 	public int size()throws DataModelException;
 
@@ -89,6 +150,12 @@ public interface IDataModel extends Serializable {
 
 	public long getLong(String name)throws DataModelException;
 
+	/**
+	 * Returns the value of the specified column as a long. For a column whose 
+	 * {@link #getColumnType(int)} is {@link ColumnType#DATE} this is the date in epoch 
+	 * milliseconds, so typed readers never need to create a {@link Date}; 0 is returned 
+	 * for a null value, as for the other primitive getters.
+	 * */
 	public long getLong(int column)throws DataModelException;
 
 	public float getFloat(String name)throws DataModelException;
@@ -0,0 +1,50 @@
+/*
+ * Copyright 2012 Tauasa Timoteo
+ * 
+ * Permission is hereby granted, free of charge, to any person 
+ * obtaining a copy of this software and associated documentation 
+ * files (the “Software”), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, 
+ * publish, distribute, sublicense, and/or sell copies of the Software,
+ * and to permit persons to whom the Software is furnished to do so, 
+ * subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be 
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, 
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES 
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NON-
+ * INFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS 
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN 
+ * AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF 
+ * OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS 
+ * IN THE SOFTWARE.
+ */
+package org.tauasa.commons.data;
+
+/**
+ * Receives the differences found by {@link DataModelDiff}. Rows are passed as arrays 
+ * of values in column order.
+ *
+ * @author Tauasa Timoteo
+ * 
+ */
+public interface IDiffHandler {
+
+	/**
+	 * Called for a row whose key is only in the new model
+	 * */
+	public void inserted(Object[] row)throws DataModelException;
+
+	/**
+	 * Called for a row whose key is only in the old model
+	 * */
+	public void deleted(Object[] row)throws DataModelException;
+
+	/**
+	 * Called for a key that is in both models with different values
+	 * */
+	public void updated(Object[] before, Object[] after)throws DataModelException;
+
+}
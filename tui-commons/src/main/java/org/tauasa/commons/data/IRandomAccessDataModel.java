@@ -0,0 +1,61 @@
+/*
+ * Copyright 2012 Tauasa Timoteo
+ * 
+ * Permission is hereby granted, free of charge, to any person 
+ * obtaining a copy of this software and associated documentation 
+ * files (the “Software”), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, 
+ * publish, distribute, sublicense, and/or sell copies of the Software,
+ * and to permit persons to whom the Software is furnished to do so, 
+ * subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be 
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, 
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES 
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NON-
+ * INFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS 
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN 
+ * AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF 
+ * OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS 
+ * IN THE SOFTWARE.
+ */
+package org.tauasa.commons.data;
+
+import java.util.Date;
+
+/**
+ * An in-memory {@link IDataModel} whose values can be read by row and column without 
+ * moving the cursor. These accessors don't share any state so they may be called from 
+ * several threads at once (as long as nothing modifies the model), which is what lets 
+ * {@link DataModelUtils} split the rows across a ForkJoin pool.
+ * <p>
+ * Unlike the cursor getters, null numeric values are returned as zero; use 
+ * {@link #isNull(int, int)} to tell them apart.
+ *
+ * @author Tauasa Timoteo
+ * 
+ */
+public interface IRandomAccessDataModel extends IDataModel {
+
+	/**
+	 * Returns the number of rows in the model
+	 * */
+	public int getRowCount();
+
+	public boolean isNull(int row, int column);
+
+	public Object getObject(int row, int column);
+
+	public String getString(int row, int column);
+
+	public int getInt(int row, int column);
+
+	public long getLong(int row, int column);
+
+	public double getDouble(int row, int column);
+
+	public Date getDate(int row, int column);
+
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright 2012 Tauasa Timoteo
+ * 
+ * Permission is hereby granted, free of charge, to any person 
+ * obtaining a copy of this software and associated documentation 
+ * files (the “Software”), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, 
+ * publish, distribute, sublicense, and/or sell copies of the Software,
+ * and to permit persons to whom the Software is furnished to do so, 
+ * subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be 
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, 
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES 
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NON-
+ * INFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS 
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN 
+ * AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF 
+ * OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS 
+ * IN THE SOFTWARE.
+ */
+package org.tauasa.commons.data;
+
+import java.io.Serializable;
+
+/**
+ * Fixed-memory summary of the values of a column, built in a single streaming pass. 
+ * Sketches of the same configuration can be merged, so partitions of a model can be 
+ * summarized in parallel and combined (see {@link DataModelUtils#sketch}).
+ *
+ * @author Tauasa Timoteo
+ * 
+ */
+public interface ISketch<S extends ISketch<S>> extends Serializable {
+
+	/**
+	 * Adds a value to the sketch; null values are ignored
+	 * */
+	public void update(Object value);
+
+	/**
+	 * Adds the value of the specified column of the current row
+	 * */
+	public default void update(IDataModel model, int column)throws DataModelException{
+		update(model.getObject(column));
+	}
+
+	/**
+	 * Adds the value of the specified row and column
+	 * */
+	public default void update(IRandomAccessDataModel model, int row, int column){
+		update(model.getObject(row, column));
+	}
+
+	/**
+	 * Adds everything in the specified sketch to this one
+	 * 
+	 * @throws IllegalArgumentException if the sketches are configured differently
+	 * */
+	public void merge(S other);
+
+}
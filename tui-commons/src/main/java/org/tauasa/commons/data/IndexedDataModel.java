@@ -0,0 +1,258 @@
+/*
+ * Copyright 2012 Tauasa Timoteo
+ * 
+ * Permission is hereby granted, free of charge, to any person 
+ * obtaining a copy of this software and associated documentation 
+ * files (the “Software”), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, 
+ * publish, distribute, sublicense, and/or sell copies of the Software,
+ * and to permit persons to whom the Software is furnished to do so, 
+ * subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be 
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, 
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES 
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NON-
+ * INFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS 
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN 
+ * AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF 
+ * OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS 
+ * IN THE SOFTWARE.
+ */
+package org.tauasa.commons.data;
+
+import java.util.Date;
+
+/**
+ * Read-only view of a {@link IRandomAccessDataModel} through an array of row indexes. 
+ * The results of {@link DataModelOperators#filter} and {@link DataModelOperators#sort} 
+ * are IndexedDataModels, so filtering or re-ordering a model costs four bytes per row 
+ * rather than a copy of the rows.
+ *
+ * @author Tauasa Timoteo
+ * 
+ */
+public final class IndexedDataModel implements IRandomAccessDataModel {
+
+	private static final long serialVersionUID = 1L;
+
+	protected IRandomAccessDataModel source;
+	protected int[] rows;
+	protected int currentRow = -1;
+
+	/**
+	 * Creates a view of the specified rows of the source model, in the order given
+	 * */
+	public IndexedDataModel(IRandomAccessDataModel source, int[] rows) {
+		this.source=source;
+		this.rows=rows;
+	}
+
+	/**
+	 * Returns the model this is a view of
+	 * */
+	public IRandomAccessDataModel getSource() {
+		return source;
+	}
+
+	/**
+	 * Returns the index in the source model of the specified row of this view
+	 * */
+	public int getSourceRow(int row){
+		return rows[row];
+	}
+
+	/////////////////////////////////////
+	// Begin IRandomAccessDataModel method impls
+	/////////////////////////////////////
+	@Override
+	public int getRowCount() {
+		return rows.length;
+	}
+
+	@Override
+	public boolean isNull(int row, int column) {
+		return source.isNull(rows[row], column);
+	}
+
+	@Override
+	public Object getObject(int row, int column) {
+		return source.getObject(rows[row], column);
+	}
+
+	@Override
+	public String getString(int row, int column) {
+		return source.getString(rows[row], column);
+	}
+
+	@Override
+	public int getInt(int row, int column) {
+		return source.getInt(rows[row], column);
+	}
+
+	@Override
+	public long getLong(int row, int column) {
+		return source.getLong(rows[row], column);
+	}
+
+	@Override
+	public double getDouble(int row, int column) {
+		return source.getDouble(rows[row], column);
+	}
+
+	@Override
+	public Date getDate(int row, int column) {
+		return source.getDate(rows[row], column);
+	}
+
+	/////////////////////////////////////
+	// End IRandomAccessDataModel method impls
+	/////////////////////////////////////
+
+	@Override
+	public ColumnType getColumnType(int column)throws DataModelException{
+		return source.getColumnType(column);
+	}
+
+	@Override
+	public boolean isNull(int column)throws DataModelException{
+		return source.isNull(rows[currentRow], column);
+	}
+
+	@Override
+	public int getColumnIndex(String columnName)throws DataModelException{
+		return source.getColumnIndex(columnName);
+	}
+
+	@Override
+	public int getColumnCount()throws DataModelException{
+		return source.getColumnCount();
+	}
+
+	@Override
+	public String[] getColumnNames() throws DataModelException {
+		return source.getColumnNames();
+	}
+
+	@Override
+	public boolean moveTo(int rowNum) throws DataModelException {
+		if(rowNum >= rows.length){
+			return false;
+		}
+		currentRow = rowNum;
+		return true;
+	}
+
+	@Override
+	public boolean reset() throws DataModelException {
+		currentRow = 0;
+		return true;
+	}
+
+	@Override
+	public boolean next() throws DataModelException {
+		if(currentRow+1 > rows.length-1){
+			return false;
+		}
+		currentRow++;
+		return true;
+	}
+
+	@Override
+	public boolean previous() throws DataModelException {
+		if(currentRow<=0){
+			return false;
+		}
+		currentRow--;
+		return true;
+	}
+
+	@Override
+	public boolean last() throws DataModelException {
+		currentRow = rows.length-1;
+		return true;
+	}
+
+	@Override
+	public boolean first() throws DataModelException {
+		return reset();
+	}
+
+	@Override
+	public int size() throws DataModelException {
+		return rows.length;
+	}
+
+	@Override
+	public String getString(String name) throws DataModelException {
+		return getString(getColumnIndex(name));
+	}
+
+	@Override
+	public String getString(int column) throws DataModelException {
+		return source.getString(rows[currentRow], column);
+	}
+
+	@Override
+	public int getInt(String name) throws DataModelException {
+		return getInt(getColumnIndex(name));
+	}
+
+	@Override
+	public int getInt(int column) throws DataModelException {
+		return source.getInt(rows[currentRow], column);
+	}
+
+	@Override
+	public long getLong(String name) throws DataModelException {
+		return getLong(getColumnIndex(name));
+	}
+
+	@Override
+	public long getLong(int column) throws DataModelException {
+		return source.getLong(rows[currentRow], column);
+	}
+
+	@Override
+	public float getFloat(String name) throws DataModelException {
+		return getFloat(getColumnIndex(name));
+	}
+
+	@Override
+	public float getFloat(int column) throws DataModelException {
+		return (float)source.getDouble(rows[currentRow], column);
+	}
+
+	@Override
+	public double getDouble(String name) throws DataModelException {
+		return getDouble(getColumnIndex(name));
+	}
+
+	@Override
+	public double getDouble(int column) throws DataModelException {
+		return source.getDouble(rows[currentRow], column);
+	}
+
+	@Override
+	public Date getDate(String name) throws DataModelException {
+		return getDate(getColumnIndex(name));
+	}
+
+	@Override
+	public Date getDate(int column) throws DataModelException {
+		return source.getDate(rows[currentRow], column);
+	}
+
+	@Override
+	public Object getObject(String name) throws DataModelException {
+		return getObject(getColumnIndex(name));
+	}
+
+	@Override
+	public Object getObject(int column) throws DataModelException {
+		return source.getObject(rows[currentRow], column);
+	}
+
+}
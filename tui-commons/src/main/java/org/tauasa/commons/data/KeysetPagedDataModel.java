@@ -0,0 +1,608 @@
+/*
+ * Copyright 2012 Tauasa Timoteo
+ * 
+ * Permission is hereby granted, free of charge, to any person 
+ * obtaining a copy of this software and associated documentation 
+ * files (the “Software”), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, 
+ * publish, distribute, sublicense, and/or sell copies of the Software,
+ * and to permit persons to whom the Software is furnished to do so, 
+ * subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be 
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, 
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES 
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NON-
+ * INFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS 
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN 
+ * AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF 
+ * OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS 
+ * IN THE SOFTWARE.
+ */
+package org.tauasa.commons.data;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.tauasa.commons.jdbc.AbstractDAO;
+import org.tauasa.commons.jdbc.IConnectionFactory;
+import org.tauasa.commons.jdbc.JDBCUtils;
+
+/**
+ * Lazy, scrollable {@link IDataModel} that reads a query one fixed-size page at a time 
+ * using keyset (seek) pagination: each page is selected with a predicate on the sort keys 
+ * of the last row of the previous page rather than an offset, so every page costs the 
+ * same no matter how deep it is. A connection is obtained from the {@link IConnectionFactory} 
+ * for each page fetch and closed straight afterwards, so no connection or cursor is held 
+ * while the model is idle.
+ * <p>
+ * The query is wrapped as a derived table, ordered by the keys and limited with 
+ * {@link java.sql.Statement#setMaxRows(int)}. Together the key columns must be unique 
+ * and non-null, and they must be part of the select list. For keys (A ASC, B DESC) 
+ * page n+1 is selected with:
+ * <pre>
+ * SELECT * FROM (query) keyset_page WHERE (A &gt; ?) OR (A = ? AND B &lt; ?) ORDER BY A ASC, B DESC
+ * </pre>
+ * Up to {@link #getMaxPages()} pages are kept in an LRU cache and the page after the one 
+ * being read is fetched in the background. Because pages can only be located from the 
+ * previous page's last key, moving to a row beyond the pages read so far fetches every 
+ * page in between, and {@link #size()} is {@link IDataModel#UNKNOWN_SIZE} until the last 
+ * page has been read (or {@link #count()} has been called).
+ * <p>
+ * The prefetch thread exits after a few idle seconds, so a model that is never closed 
+ * doesn't keep a thread; {@link #close()} stops it straight away and drops the cached pages. 
+ * A deserialized model has no connection factory until {@link #setConnectionFactory(IConnectionFactory)} 
+ * is called, and is positioned before the first row.
+ *
+ * @author Tauasa Timoteo
+ * 
+ */
+public final class KeysetPagedDataModel implements IDataModel, Closeable {
+
+	private static final long serialVersionUID = 1L;
+	private static final Logger logger = LoggerFactory.getLogger(KeysetPagedDataModel.class);
+
+	public static final int DEFAULT_PAGE_SIZE = 500;
+	public static final int DEFAULT_MAX_PAGES = 16;
+
+	//seconds the prefetch thread waits for another page before exiting
+	private static final long PREFETCH_KEEP_ALIVE = 5;
+
+	protected transient IConnectionFactory connectionFactory;
+	protected String sql;
+	protected Object[] args;
+	protected SortKey[] keys;
+	protected int pageSize;
+	protected int maxPages = DEFAULT_MAX_PAGES;
+	protected boolean prefetch = true;
+	protected int queryTimeout = -1;
+
+	protected String firstPageSql;
+	protected String nextPageSql;
+
+	protected String[] columns;
+	protected ColumnIndex columnIndex;
+	protected int[] keyColumns;
+
+	//last key of every full page read so far: boundaries.get(n) is where page n+1 starts
+	protected final List<Object[]> boundaries = new ArrayList<>();
+
+	protected transient LinkedHashMap<Integer, Object[][]> pages;
+	protected transient Map<Integer, CompletableFuture<Object[][]>> loading;
+	protected transient ExecutorService executor;
+
+	protected volatile int size = UNKNOWN_SIZE;
+	protected int currentRow = -1;
+	protected transient Object[] current;
+
+	/**
+	 * Creates a paged model over the connections of the specified DAO
+	 * */
+	public KeysetPagedDataModel(AbstractDAO dao, String sql, Object[] args, SortKey... keys) {
+		this(dao.getConnectionFactory(), sql, args, DEFAULT_PAGE_SIZE, keys);
+	}
+
+	public KeysetPagedDataModel(IConnectionFactory connectionFactory, String sql, Object[] args, SortKey... keys) {
+		this(connectionFactory, sql, args, DEFAULT_PAGE_SIZE, keys);
+	}
+
+	/**
+	 * @param connectionFactory where connections for each page fetch come from
+	 * @param sql the query to page through, without an ORDER BY clause
+	 * @param args the query's parameters, may be null
+	 * @param pageSize number of rows per page
+	 * @param keys unique, non-null sort keys the pages are sought by
+	 * */
+	public KeysetPagedDataModel(IConnectionFactory connectionFactory, String sql, Object[] args, int pageSize, SortKey... keys) {
+		if(keys==null || keys.length==0){
+			throw new IllegalArgumentException("At least one key is required");
+		}
+		if(pageSize < 1){
+			throw new IllegalArgumentException("Invalid page size: "+pageSize);
+		}
+		this.connectionFactory=connectionFactory;
+		this.sql=sql;
+		this.args=args==null ? new Object[0] : args;
+		this.keys=keys;
+		this.pageSize=pageSize;
+
+		StringBuilder orderBy = new StringBuilder(" ORDER BY ");
+		StringBuilder seek = new StringBuilder(" WHERE ");
+		for(int i=0;i<keys.length;i++){
+			if(i > 0){
+				orderBy.append(", ");
+				seek.append(" OR ");
+			}
+			orderBy.append(keys[i].getColumn()).append(keys[i].isAscending() ? " ASC" : " DESC");
+			seek.append('(');
+			for(int j=0;j<i;j++){
+				seek.append(keys[j].getColumn()).append(" = ? AND ");
+			}
+			seek.append(keys[i].getColumn()).append(keys[i].isAscending() ? " > ?" : " < ?").append(')');
+		}
+		String from = "SELECT * FROM (" + sql + ") keyset_page";
+		firstPageSql = from + orderBy;
+		nextPageSql = from + seek + orderBy;
+
+		init();
+	}
+
+	private void init(){
+		pages = new LinkedHashMap<Integer, Object[][]>(16, 0.75f, true){
+			private static final long serialVersionUID = 1L;
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Integer, Object[][]> eldest) {
+				return size() > maxPages;
+			}
+		};
+		loading = new HashMap<>();
+	}
+
+	/**
+	 * Returns the specified page, from the cache, an in-flight prefetch or the database
+	 * */
+	private Object[][] page(int page)throws DataModelException{
+		CompletableFuture<Object[][]> future;
+		synchronized(pages){
+			Object[][] rows = pages.get(page);
+			if(rows!=null){
+				return rows;
+			}
+			future = loading.get(page);
+		}
+		try{
+			Object[][] rows = future!=null ? future.join() : fetch(page);
+			synchronized(pages){
+				pages.put(page, rows);
+			}
+			return rows;
+		}catch(SQLException e){
+			throw new DataModelException("Unable to fetch page "+page, e);
+		}catch(CompletionException e){
+			throw new DataModelException("Unable to fetch page "+page, e.getCause());
+		}
+	}
+
+	/**
+	 * Reads the specified page from the database. Its boundary must already be known.
+	 * */
+	private Object[][] fetch(int page)throws SQLException{
+		Object[] after;
+		synchronized(boundaries){
+			after = page==0 ? null : boundaries.get(page-1);
+		}
+
+		if(logger.isDebugEnabled()){
+			logger.debug("Fetching page "+page+" of "+sql);
+		}
+
+		Object[] params = args;
+		if(after!=null){
+			//each OR term binds the leading keys for equality and the last one for the comparison
+			List<Object> bound = new ArrayList<>();
+			for (Object arg : args) {
+				bound.add(arg);
+			}
+			for(int i=0;i<keys.length;i++){
+				for(int j=0;j<=i;j++){
+					bound.add(after[j]);
+				}
+			}
+			params = bound.toArray();
+		}
+
+		Object[][] rows;
+		try(Connection conn = connectionFactory.getConnection();
+				PreparedStatement stmt = conn.prepareStatement(after==null ? firstPageSql : nextPageSql)){
+			stmt.setMaxRows(pageSize);
+			stmt.setFetchSize(pageSize);
+			if(queryTimeout > 0){
+				stmt.setQueryTimeout(queryTimeout);
+			}
+			JDBCUtils.bind(stmt, params);
+			try(ResultSet rs = stmt.executeQuery()){
+				synchronized(boundaries){
+					if(columns==null){
+						columns = JDBCUtils.getColumnNames(rs);
+						columnIndex = new ColumnIndex(columns);
+						keyColumns = new int[keys.length];
+						for(int i=0;i<keys.length;i++){
+							keyColumns[i] = columnIndex.indexOf(keys[i].getColumn());
+							if(keyColumns[i] < 0){
+								throw new SQLException("Key column "+keys[i].getColumn()+" is not in the select list");
+							}
+						}
+					}
+				}
+				List<Object[]> list = new ArrayList<>(pageSize);
+				while(rs.next()){
+					Object[] row = new Object[columns.length];
+					for(int i=0;i<row.length;i++){
+						row[i] = rs.getObject(i+1);
+					}
+					list.add(row);
+				}
+				rows = list.toArray(new Object[list.size()][]);
+			}
+		}
+
+		synchronized(boundaries){
+			if(rows.length == pageSize){
+				if(boundaries.size()==page){
+					Object[] last = rows[rows.length-1];
+					Object[] key = new Object[keys.length];
+					for(int i=0;i<key.length;i++){
+						key[i] = last[keyColumns[i]];
+					}
+					boundaries.add(key);
+				}
+			}else{
+				size = page*pageSize + rows.length;
+			}
+		}
+		return rows;
+	}
+
+	/**
+	 * Starts fetching the page after the specified one if it isn't cached or already loading
+	 * */
+	private void prefetch(int page){
+		if(!prefetch){
+			return;
+		}
+		int next = page+1;
+		if(knownPages() <= page){
+			//last page, or not read yet
+			return;
+		}
+		synchronized(pages){
+			if(pages.containsKey(next) || loading.containsKey(next)){
+				return;
+			}
+			if(executor==null){
+				ThreadPoolExecutor pool = new ThreadPoolExecutor(1, 1, PREFETCH_KEEP_ALIVE, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+					Thread thread = new Thread(r, "KeysetPagedDataModel-prefetch");
+					thread.setDaemon(true);
+					return thread;
+				});
+				pool.allowCoreThreadTimeOut(true);
+				executor = pool;
+			}
+			CompletableFuture<Object[][]> future = CompletableFuture.supplyAsync(() -> {
+				try{
+					return fetch(next);
+				}catch(SQLException e){
+					throw new CompletionException(e);
+				}
+			}, executor);
+			loading.put(next, future);
+			future.whenComplete((rows, error) -> {
+				synchronized(pages){
+					loading.remove(next);
+					if(rows!=null){
+						pages.put(next, rows);
+					}else if(logger.isDebugEnabled()){
+						logger.debug("Prefetch of page "+next+" failed", error);
+					}
+				}
+			});
+		}
+	}
+
+	/**
+	 * Runs a COUNT(*) over the query so {@link #size()} is known without reading every page
+	 * */
+	public int count()throws DataModelException{
+		try(Connection conn = connectionFactory.getConnection();
+				PreparedStatement stmt = conn.prepareStatement("SELECT COUNT(*) FROM (" + sql + ") keyset_count")){
+			JDBCUtils.bind(stmt, args);
+			try(ResultSet rs = stmt.executeQuery()){
+				rs.next();
+				synchronized(boundaries){
+					size = rs.getInt(1);
+					return size;
+				}
+			}
+		}catch(SQLException e){
+			throw new DataModelException(e);
+		}
+	}
+
+	/**
+	 * Stops the prefetch thread and drops the cached pages
+	 * */
+	@Override
+	public void close(){
+		synchronized(pages){
+			if(executor!=null){
+				executor.shutdownNow();
+				executor = null;
+			}
+			pages.clear();
+			loading.clear();
+		}
+	}
+
+	/**
+	 * Sets where connections for page fetches come from, required after deserialization
+	 * */
+	public void setConnectionFactory(IConnectionFactory connectionFactory){
+		this.connectionFactory=connectionFactory;
+	}
+
+	public IConnectionFactory getConnectionFactory(){
+		return connectionFactory;
+	}
+
+	private void readObject(ObjectInputStream in)throws IOException, ClassNotFoundException{
+		in.defaultReadObject();
+		currentRow = -1;
+		init();
+	}
+
+	/**
+	 * Returns the number of pages whose successor can be located
+	 * */
+	private int knownPages(){
+		synchronized(boundaries){
+			return boundaries.size();
+		}
+	}
+
+	private Object[] row()throws DataModelException{
+		if(current==null){
+			throw new DataModelException("No current row");
+		}
+		return current;
+	}
+
+	public int getPageSize() {
+		return pageSize;
+	}
+
+	public int getMaxPages() {
+		return maxPages;
+	}
+
+	/**
+	 * Sets the number of pages kept in memory
+	 * */
+	public void setMaxPages(int maxPages) {
+		this.maxPages = Math.max(1, maxPages);
+	}
+
+	public boolean isPrefetch() {
+		return prefetch;
+	}
+
+	public void setPrefetch(boolean prefetch) {
+		this.prefetch = prefetch;
+	}
+
+	public int getQueryTimeout() {
+		return queryTimeout;
+	}
+
+	public void setQueryTimeout(int queryTimeout) {
+		this.queryTimeout = queryTimeout;
+	}
+
+	@Override
+	public boolean isNull(int column)throws DataModelException{
+		return row()[column]==null;
+	}
+
+	@Override
+	public int getColumnIndex(String columnName)throws DataModelException{
+		getColumnNames();
+		return columnIndex.getIndex(columnName);
+	}
+
+	@Override
+	public int getColumnCount()throws DataModelException{
+		return getColumnNames().length;
+	}
+
+	/**
+	 * Returns the column names, fetching the first page if it hasn't been read yet
+	 * */
+	@Override
+	public String[] getColumnNames() throws DataModelException {
+		if(columns==null){
+			page(0);
+		}
+		return columns;
+	}
+
+	@Override
+	public boolean moveTo(int rowNum) throws DataModelException {
+		if(rowNum < 0){
+			currentRow = -1;
+			current = null;
+			return true;
+		}
+		int page = rowNum / pageSize;
+		//walk forward until we know where the page starts
+		for(int p=knownPages();p<page;p++){
+			if(size!=UNKNOWN_SIZE && rowNum >= size){
+				return false;
+			}
+			page(p);
+		}
+		if(size!=UNKNOWN_SIZE && rowNum >= size){
+			return false;
+		}
+		Object[][] rows = page(page);
+		int index = rowNum % pageSize;
+		if(index >= rows.length){
+			return false;
+		}
+		currentRow = rowNum;
+		current = rows[index];
+		prefetch(page);
+		return true;
+	}
+
+	@Override
+	public boolean reset() throws DataModelException {
+		return moveTo(0);
+	}
+
+	@Override
+	public boolean next() throws DataModelException {
+		return moveTo(currentRow+1);
+	}
+
+	@Override
+	public boolean previous() throws DataModelException {
+		if(currentRow<=0){
+			return false;
+		}
+		return moveTo(currentRow-1);
+	}
+
+	/**
+	 * Moves to the last row, reading every page that hasn't been read yet
+	 * */
+	@Override
+	public boolean last() throws DataModelException {
+		while(size==UNKNOWN_SIZE){
+			page(knownPages());
+		}
+		return size > 0 && moveTo(size-1);
+	}
+
+	@Override
+	public boolean first() throws DataModelException {
+		return reset();
+	}
+
+	/**
+	 * Returns the number of rows if the last page has been read, otherwise {@link IDataModel#UNKNOWN_SIZE}
+	 * */
+	@Override
+	public int size() throws DataModelException {
+		return size;
+	}
+
+	@Override
+	public String getString(String name) throws DataModelException {
+		return getString(getColumnIndex(name));
+	}
+
+	@Override
+	public String getString(int column) throws DataModelException {
+		Object value = row()[column];
+		return value==null ? null : value.toString();
+	}
+
+	public Number getNumber(String name)throws DataModelException{
+		return getNumber(getColumnIndex(name));
+	}
+
+	public Number getNumber(int column)throws DataModelException{
+		return (Number)row()[column];
+	}
+
+	@Override
+	public int getInt(String name) throws DataModelException {
+		return getInt(getColumnIndex(name));
+	}
+
+	@Override
+	public int getInt(int column) throws DataModelException {
+		return getNumber(column).intValue();
+	}
+
+	@Override
+	public long getLong(String name) throws DataModelException {
+		return getLong(getColumnIndex(name));
+	}
+
+	@Override
+	public long getLong(int column) throws DataModelException {
+		return getNumber(column).longValue();
+	}
+
+	@Override
+	public float getFloat(String name)throws DataModelException{
+		return getFloat(getColumnIndex(name));
+	}
+
+	@Override
+	public float getFloat(int column)throws DataModelException{
+		return getNumber(column).floatValue();
+	}
+
+	@Override
+	public double getDouble(String name)throws DataModelException{
+		return getDouble(getColumnIndex(name));
+	}
+
+	@Override
+	public double getDouble(int column)throws DataModelException{
+		return getNumber(column).doubleValue();
+	}
+
+	@Override
+	public Date getDate(String name) throws DataModelException {
+		return getDate(getColumnIndex(name));
+	}
+
+	@Override
+	public Date getDate(int column) throws DataModelException {
+		return (Date)row()[column];
+	}
+
+	@Override
+	public Object getObject(String name) throws DataModelException {
+		return getObject(getColumnIndex(name));
+	}
+
+	@Override
+	public Object getObject(int column) throws DataModelException {
+		return row()[column];
+	}
+
+}
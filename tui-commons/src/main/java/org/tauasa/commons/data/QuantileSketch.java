@@ -0,0 +1,303 @@
+/*
+ * Copyright 2012 Tauasa Timoteo
+ * 
+ * Permission is hereby granted, free of charge, to any person 
+ * obtaining a copy of this software and associated documentation 
+ * files (the “Software”), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, 
+ * publish, distribute, sublicense, and/or sell copies of the Software,
+ * and to permit persons to whom the Software is furnished to do so, 
+ * subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be 
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, 
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES 
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NON-
+ * INFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS 
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN 
+ * AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF 
+ * OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS 
+ * IN THE SOFTWARE.
+ */
+package org.tauasa.commons.data;
+
+import java.io.Serializable;
+
+/**
+ * Quantile sketch for numeric columns with a relative error guarantee, after DDSketch: 
+ * values are counted in logarithmically sized buckets, so any quantile is returned within 
+ * {@link #getRelativeAccuracy()} of the true value (e.g. 1% by default) no matter how the 
+ * values are distributed. At most {@link #getMaxBuckets()} buckets are kept for each sign; 
+ * past that the smallest magnitudes are collapsed together, which only affects the 
+ * accuracy of the lowest quantiles. Merging keeps the guarantee.
+ *
+ * @author Tauasa Timoteo
+ * 
+ */
+public final class QuantileSketch implements ISketch<QuantileSketch> {
+
+	private static final long serialVersionUID = 1L;
+
+	public static final double DEFAULT_RELATIVE_ACCURACY = 0.01;
+	public static final int DEFAULT_MAX_BUCKETS = 2048;
+
+	//magnitudes below this are counted as zero
+	private static final double MIN_INDEXABLE = 1e-300;
+
+	private final double relativeAccuracy;
+	private final double gamma;
+	private final double logGamma;
+	private final int maxBuckets;
+	private final Store positive;
+	private final Store negative;
+	private long zeroCount;
+	private long count;
+	private double sum;
+	private double min = Double.POSITIVE_INFINITY;
+	private double max = Double.NEGATIVE_INFINITY;
+
+	public QuantileSketch() {
+		this(DEFAULT_RELATIVE_ACCURACY, DEFAULT_MAX_BUCKETS);
+	}
+
+	/**
+	 * @param relativeAccuracy maximum relative error of the quantiles, between 0 and 1
+	 * @param maxBuckets maximum number of buckets kept for each sign
+	 * */
+	public QuantileSketch(double relativeAccuracy, int maxBuckets) {
+		if(relativeAccuracy <= 0 || relativeAccuracy >= 1){
+			throw new IllegalArgumentException("Relative accuracy must be between 0 and 1: "+relativeAccuracy);
+		}
+		this.relativeAccuracy=relativeAccuracy;
+		this.gamma=(1 + relativeAccuracy) / (1 - relativeAccuracy);
+		this.logGamma=Math.log(gamma);
+		this.maxBuckets=Math.max(16, maxBuckets);
+		this.positive=new Store(this.maxBuckets);
+		this.negative=new Store(this.maxBuckets);
+	}
+
+	/**
+	 * Adds a {@link Number}; null and non-numeric values are ignored
+	 * */
+	@Override
+	public void update(Object value){
+		if(value instanceof Number){
+			add(((Number)value).doubleValue());
+		}
+	}
+
+	@Override
+	public void update(IDataModel model, int column)throws DataModelException{
+		if(!model.isNull(column)){
+			add(model.getDouble(column));
+		}
+	}
+
+	@Override
+	public void update(IRandomAccessDataModel model, int row, int column){
+		if(!model.isNull(row, column)){
+			add(model.getDouble(row, column));
+		}
+	}
+
+	/**
+	 * Adds a value; NaN is ignored
+	 * */
+	public void add(double value){
+		if(Double.isNaN(value)){
+			return;
+		}
+		if(value > MIN_INDEXABLE){
+			positive.add(index(value), 1);
+		}else if(value < -MIN_INDEXABLE){
+			negative.add(index(-value), 1);
+		}else{
+			zeroCount++;
+		}
+		count++;
+		sum += value;
+		min = Math.min(min, value);
+		max = Math.max(max, value);
+	}
+
+	private int index(double value){
+		return (int)Math.ceil(Math.log(value) / logGamma);
+	}
+
+	/**
+	 * Returns the representative value of a bucket, within the relative accuracy of everything in it
+	 * */
+	private double value(int index){
+		return 2 * Math.pow(gamma, index) / (gamma + 1);
+	}
+
+	/**
+	 * Returns the value at the specified quantile (0 to 1), or NaN if the sketch is empty
+	 * */
+	public double quantile(double quantile){
+		if(quantile < 0 || quantile > 1){
+			throw new IllegalArgumentException("Quantile must be between 0 and 1: "+quantile);
+		}
+		if(count==0){
+			return Double.NaN;
+		}
+
+		long rank = (long)(quantile * (count - 1));
+		double value;
+		if(rank < negative.total){
+			//most negative first, i.e. highest magnitude index first
+			long n = 0;
+			int index = negative.hi;
+			for(;index>=negative.lo;index--){
+				n += negative.count(index);
+				if(n > rank){
+					break;
+				}
+			}
+			value = -value(index);
+		}else if(rank < negative.total + zeroCount){
+			value = 0;
+		}else{
+			long n = negative.total + zeroCount;
+			int index = positive.lo;
+			for(;index<=positive.hi;index++){
+				n += positive.count(index);
+				if(n > rank){
+					break;
+				}
+			}
+			value = value(index);
+		}
+		return Math.max(min, Math.min(max, value));
+	}
+
+	@Override
+	public void merge(QuantileSketch other){
+		if(other.relativeAccuracy != relativeAccuracy){
+			throw new IllegalArgumentException("Cannot merge sketches with relative accuracy "+relativeAccuracy+" and "+other.relativeAccuracy);
+		}
+		positive.merge(other.positive);
+		negative.merge(other.negative);
+		zeroCount += other.zeroCount;
+		count += other.count;
+		sum += other.sum;
+		min = Math.min(min, other.min);
+		max = Math.max(max, other.max);
+	}
+
+	public long getCount() {
+		return count;
+	}
+
+	public double getSum() {
+		return sum;
+	}
+
+	/**
+	 * Returns the smallest value added, or positive infinity if the sketch is empty
+	 * */
+	public double getMin() {
+		return min;
+	}
+
+	/**
+	 * Returns the largest value added, or negative infinity if the sketch is empty
+	 * */
+	public double getMax() {
+		return max;
+	}
+
+	public double getRelativeAccuracy() {
+		return relativeAccuracy;
+	}
+
+	public int getMaxBuckets() {
+		return maxBuckets;
+	}
+
+	@Override
+	public String toString() {
+		return "QuantileSketch[count=" + count + ", p50=" + quantile(0.5) + ", p99=" + quantile(0.99) + "]";
+	}
+
+	/**
+	 * Dense bucket counts for the index range [lo, hi] held in a window of at most 
+	 * maxBuckets slots starting at offset. Indexes that would widen the range past 
+	 * maxBuckets are folded into the lowest bucket.
+	 * */
+	static final class Store implements Serializable {
+
+		private static final long serialVersionUID = 1L;
+
+		private final int maxBuckets;
+		private long[] counts;
+		private int offset;
+		int lo;
+		int hi;
+		long total;
+
+		Store(int maxBuckets) {
+			this.maxBuckets=maxBuckets;
+		}
+
+		long count(int index){
+			return counts[index - offset];
+		}
+
+		void add(int index, long n){
+			if(total==0){
+				if(counts==null){
+					counts = new long[Math.min(64, maxBuckets)];
+				}
+				offset = index - counts.length/2;
+				lo = index;
+				hi = index;
+			}else if(index < lo || index > hi){
+				resize(Math.min(lo, index), Math.max(hi, index));
+			}
+			counts[Math.max(index, lo) - offset] += n;
+			total += n;
+		}
+
+		private void resize(int newLo, int newHi){
+			if(newHi - newLo + 1 > maxBuckets){
+				newLo = newHi - maxBuckets + 1;
+			}
+			if(newLo >= offset && newHi < offset + counts.length && newLo <= lo){
+				//fits in the current window
+				lo = newLo;
+				hi = newHi;
+				return;
+			}
+
+			int span = newHi - newLo + 1;
+			int length = Math.min(maxBuckets, Math.max(span, counts.length*2));
+			long[] resized = new long[length];
+			//leave room to grow in both directions unless the window is full
+			int newOffset = newLo - (length - span)/2;
+			for(int i=lo;i<=hi;i++){
+				long c = counts[i - offset];
+				if(c!=0){
+					resized[Math.max(i, newLo) - newOffset] += c;
+				}
+			}
+			counts = resized;
+			offset = newOffset;
+			lo = newLo;
+			hi = newHi;
+		}
+
+		void merge(Store other){
+			for(int i=other.lo;other.total>0 && i<=other.hi;i++){
+				long c = other.count(i);
+				if(c!=0){
+					add(i, c);
+				}
+			}
+		}
+
+	}
+
+}
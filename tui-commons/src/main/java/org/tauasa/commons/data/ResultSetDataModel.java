@@ -26,7 +26,9 @@ package org.tauasa.commons.data;
 import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
+import java.sql.Timestamp;
 import java.util.Date;
+import java.util.HashMap;
 
 /**
  * {@link IDataModel} implementation that provides data from an underlying {@link ResultSet}. The
@@ -34,6 +36,13 @@ import java.util.Date;
  * DataModel allows a ResultSet to be traversed as a zero-based array (instead of one-based).
  * <P>
  * <b>NOTE:</b> To enable traversal, the target {@link ResultSet} must be of type {@link ResultSet#TYPE_SCROLL_INSENSITIVE}
+ * <P>
+ * A {@link ResultSet#TYPE_FORWARD_ONLY} ResultSet puts the model in streaming mode: rows can only be read 
+ * with {@link #next()}, nothing is buffered by the model and {@link #size()} returns {@link #UNKNOWN_SIZE} 
+ * until the last row has been read. Combined with a fetch size (see {@link #ResultSetDataModel(ResultSet, int)}) 
+ * this lets writers render arbitrarily large results in constant memory. Note that some drivers need extra 
+ * settings to actually stream (e.g. PostgreSQL only honors the fetch size with auto-commit disabled and 
+ * MySQL requires a fetch size of {@link Integer#MIN_VALUE}).
  *
  * @author Tauasa Timoteo
  * 
@@ -44,10 +53,46 @@ public final class ResultSetDataModel implements IDataModel {
 	protected ResultSet resultSet;
 	protected ResultSetMetaData metaData;
 	private int size = -1;
+	private boolean forwardOnly;
+	private int rowsRead;
+	private HashMap<String, Integer> columnIndexes = new HashMap<>();
+	private ColumnType[] columnTypes;
 
 	public ResultSetDataModel(ResultSet rs)throws DataModelException{
 		resultSet=rs;
-		moveTo(-1);
+		try{
+			forwardOnly = rs.getType() == ResultSet.TYPE_FORWARD_ONLY;
+		}catch(SQLException e){
+			throw new DataModelException(e);
+		}
+		if(!forwardOnly){
+			moveTo(-1);
+		}
+	}
+
+	/**
+	 * Creates a DataModel that hints the driver to fetch the specified number of rows per round trip
+	 * */
+	public ResultSetDataModel(ResultSet rs, int fetchSize)throws DataModelException{
+		this(rs);
+		try{
+			rs.setFetchSize(fetchSize);
+		}catch(SQLException e){
+			throw new DataModelException(e);
+		}
+	}
+
+	/**
+	 * Returns true if the underlying ResultSet is {@link ResultSet#TYPE_FORWARD_ONLY}
+	 * */
+	public boolean isForwardOnly(){
+		return forwardOnly;
+	}
+
+	private void checkScrollable(String operation)throws DataModelException{
+		if(forwardOnly){
+			throw new DataModelException(operation+" is not supported by a TYPE_FORWARD_ONLY ResultSet");
+		}
 	}
 
 	/**
@@ -82,6 +127,44 @@ public final class ResultSetDataModel implements IDataModel {
 		}
 	}
 
+	/**
+	 * Resolves the column through {@link ResultSet#findColumn(String)} once and 
+	 * caches the result, so the driver's name lookup is paid once per column
+	 * */
+	@Override
+	public int getColumnIndex(String name)throws DataModelException{
+		Integer index = columnIndexes.get(name);
+		if(index==null){
+			try{
+				index = resultSet.findColumn(name)-1;
+			}catch(SQLException e){
+				throw new DataModelException(e);
+			}
+			columnIndexes.put(name, index);
+		}
+		return index;
+	}
+
+	/**
+	 * Returns the storage type matching the column's SQL type (see {@link ColumnType#forSqlType(int, int, int)})
+	 * */
+	@Override
+	public ColumnType getColumnType(int column)throws DataModelException{
+		if(columnTypes==null){
+			try{
+				ResultSetMetaData md = getMetaData();
+				ColumnType[] types = new ColumnType[md.getColumnCount()];
+				for(int i=0;i<types.length;i++){
+					types[i] = ColumnType.forSqlType(md.getColumnType(i+1), md.getPrecision(i+1), md.getScale(i+1));
+				}
+				columnTypes = types;
+			}catch(SQLException e){
+				throw new DataModelException(e);
+			}
+		}
+		return columnTypes[column];
+	}
+
 	public ResultSetMetaData getMetaData()throws DataModelException{
 		try{
 			if(metaData==null){
@@ -95,6 +178,18 @@ public final class ResultSetDataModel implements IDataModel {
 
         @Override
 	public boolean moveTo(int rowNum)throws DataModelException{
+		if(forwardOnly){
+			//only forward movement is possible
+			if(rowNum < rowsRead-1){
+				checkScrollable("moveTo("+rowNum+")");
+			}
+			while(rowsRead-1 < rowNum){
+				if(!next()){
+					return false;
+				}
+			}
+			return true;
+		}
 		try{
 			if(rowNum < 0){
 				resultSet.beforeFirst();
@@ -108,7 +203,11 @@ public final class ResultSetDataModel implements IDataModel {
 
         @Override
 	public boolean reset()throws DataModelException{
+		if(forwardOnly && rowsRead > 0){
+			checkScrollable("reset()");
+		}
 		metaData = null;
+		columnIndexes.clear();
 		size = -1;
 		return moveTo(-1);
 	}
@@ -116,6 +215,15 @@ public final class ResultSetDataModel implements IDataModel {
         @Override
 	public boolean next() throws DataModelException {
 		try{
+			if(forwardOnly){
+				if(resultSet.next()){
+					rowsRead++;
+					return true;
+				}
+				//we've reached the end so the size is now known
+				size = rowsRead;
+				return false;
+			}
 			return resultSet.next();
 		}catch(SQLException e){
 			throw new DataModelException(e);
@@ -124,6 +232,7 @@ public final class ResultSetDataModel implements IDataModel {
 
         @Override
 	public boolean previous() throws DataModelException {
+		checkScrollable("previous()");
 		try{
 			return resultSet.previous();
 		}catch(SQLException e){
@@ -133,6 +242,7 @@ public final class ResultSetDataModel implements IDataModel {
 
         @Override
 	public boolean last() throws DataModelException {
+		checkScrollable("last()");
 		try{
 			return resultSet.last();
 		}catch(SQLException e){
@@ -142,6 +252,7 @@ public final class ResultSetDataModel implements IDataModel {
 
         @Override
 	public boolean first() throws DataModelException {
+		checkScrollable("first()");
 		try{
 			return resultSet.first();
 		}catch(SQLException e){
@@ -151,7 +262,7 @@ public final class ResultSetDataModel implements IDataModel {
 
         @Override
 	public int size() throws DataModelException {
-		if(size!=-1){
+		if(size!=-1 || forwardOnly){
 			return size;
 		}
 		try{
@@ -178,11 +289,7 @@ public final class ResultSetDataModel implements IDataModel {
 
         @Override
 	public String getString(String name) throws DataModelException {
-		try{
-			return resultSet.getString(name);
-		}catch(SQLException e){
-			throw new DataModelException(e);
-		}
+		return getString(getColumnIndex(name));
 	}
 
         @Override
@@ -196,11 +303,7 @@ public final class ResultSetDataModel implements IDataModel {
 
         @Override
 	public int getInt(String name) throws DataModelException {
-		try{
-			return resultSet.getInt(name);
-		}catch(SQLException e){
-			throw new DataModelException(e);
-		}
+		return getInt(getColumnIndex(name));
 	}
 
         @Override
@@ -214,16 +317,17 @@ public final class ResultSetDataModel implements IDataModel {
 
         @Override
 	public long getLong(String name) throws DataModelException {
-		try{
-			return resultSet.getLong(name);
-		}catch(SQLException e){
-			throw new DataModelException(e);
-		}
+		return getLong(getColumnIndex(name));
 	}
 
         @Override
 	public long getLong(int column) throws DataModelException {
 		try{
+			if(getColumnType(column)==ColumnType.DATE){
+				//epoch millis, getTimestamp keeps the time of day of TIME and TIMESTAMP columns
+				Timestamp ts = resultSet.getTimestamp(column+1);
+				return ts==null ? 0 : ts.getTime();
+			}
 			return resultSet.getLong(column+1);
 		}catch(SQLException e){
 			throw new DataModelException(e);
@@ -232,11 +336,7 @@ public final class ResultSetDataModel implements IDataModel {
 
         @Override
 	public float getFloat(String name)throws DataModelException{
-		try{
-			return resultSet.getFloat(name);
-		}catch(SQLException e){
-			throw new DataModelException(e);
-		}
+		return getFloat(getColumnIndex(name));
 	}
 
         @Override
@@ -250,11 +350,7 @@ public final class ResultSetDataModel implements IDataModel {
 
         @Override
 	public double getDouble(String name)throws DataModelException{
-		try{
-			return resultSet.getDouble(name);
-		}catch(SQLException e){
-			throw new DataModelException(e);
-		}
+		return getDouble(getColumnIndex(name));
 	}
 
         @Override
@@ -268,11 +364,7 @@ public final class ResultSetDataModel implements IDataModel {
 
         @Override
 	public Date getDate(String name) throws DataModelException {
-		try{
-			return resultSet.getDate(name);
-		}catch(SQLException e){
-			throw new DataModelException(e);
-		}
+		return getDate(getColumnIndex(name));
 	}
 
         @Override
@@ -286,11 +378,7 @@ public final class ResultSetDataModel implements IDataModel {
 
         @Override
 	public Object getObject(String name) throws DataModelException {
-		try{
-			return resultSet.getObject(name);
-		}catch(SQLException e){
-			throw new DataModelException(e);
-		}
+		return getObject(getColumnIndex(name));
 	}
 
         @Override
@@ -0,0 +1,70 @@
+/*
+ * Copyright 2012 Tauasa Timoteo
+ * 
+ * Permission is hereby granted, free of charge, to any person 
+ * obtaining a copy of this software and associated documentation 
+ * files (the “Software”), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, 
+ * publish, distribute, sublicense, and/or sell copies of the Software,
+ * and to permit persons to whom the Software is furnished to do so, 
+ * subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be 
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, 
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES 
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NON-
+ * INFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS 
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN 
+ * AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF 
+ * OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS 
+ * IN THE SOFTWARE.
+ */
+package org.tauasa.commons.data;
+
+import java.util.Arrays;
+
+/**
+ * Hash key made of the values of one or more columns of a row
+ *
+ * @author Tauasa Timoteo
+ * 
+ */
+final class RowKey {
+
+	final Object[] values;
+	final int hash;
+
+	RowKey(Object[] values) {
+		this.values=values;
+		this.hash=Arrays.hashCode(values);
+	}
+
+	/**
+	 * Returns the key made of the specified columns of a row
+	 * */
+	static RowKey of(Object[] row, int[] columns){
+		Object[] values = new Object[columns.length];
+		for(int i=0;i<columns.length;i++){
+			values[i] = row[columns[i]];
+		}
+		return new RowKey(values);
+	}
+
+	@Override
+	public int hashCode() {
+		return hash;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		return obj instanceof RowKey && hash==((RowKey)obj).hash && Arrays.equals(values, ((RowKey)obj).values);
+	}
+
+	@Override
+	public String toString() {
+		return Arrays.toString(values);
+	}
+
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright 2012 Tauasa Timoteo
+ * 
+ * Permission is hereby granted, free of charge, to any person 
+ * obtaining a copy of this software and associated documentation 
+ * files (the “Software”), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, 
+ * publish, distribute, sublicense, and/or sell copies of the Software,
+ * and to permit persons to whom the Software is furnished to do so, 
+ * subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be 
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, 
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES 
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NON-
+ * INFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS 
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN 
+ * AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF 
+ * OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS 
+ * IN THE SOFTWARE.
+ */
+package org.tauasa.commons.data;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Stable merge sort of an array of row indexes. Large arrays are split into halves 
+ * that are sorted in parallel on the common ForkJoin pool.
+ *
+ * @author Tauasa Timoteo
+ * 
+ */
+final class RowSorter {
+
+	//below this size a range is sorted on the current thread
+	static final int PARALLEL_GRANULARITY = 8192;
+
+	//below this size a range is insertion sorted
+	static final int INSERTION_THRESHOLD = 32;
+
+	private RowSorter(){}
+
+	static void sort(int[] rows, RowComparator comparator, boolean parallel){
+		if(rows.length < 2){
+			return;
+		}
+		int[] buffer = rows.clone();
+		if(parallel && rows.length > PARALLEL_GRANULARITY){
+			ForkJoinPool.commonPool().invoke(new SortTask(buffer, rows, 0, rows.length, comparator));
+		}else{
+			mergeSort(buffer, rows, 0, rows.length, comparator);
+		}
+	}
+
+	/**
+	 * Sorts src[from, to) into dst[from, to); both ranges must contain the same values on entry
+	 * */
+	static void mergeSort(int[] src, int[] dst, int from, int to, RowComparator comparator){
+		if(to - from <= INSERTION_THRESHOLD){
+			insertionSort(dst, from, to, comparator);
+			return;
+		}
+		int mid = (from + to) >>> 1;
+		//sort the halves into src, alternating buffers so nothing is copied back
+		mergeSort(dst, src, from, mid, comparator);
+		mergeSort(dst, src, mid, to, comparator);
+		merge(src, dst, from, mid, to, comparator);
+	}
+
+	static void merge(int[] src, int[] dst, int from, int mid, int to, RowComparator comparator){
+		//already in order
+		if(comparator.compare(src[mid-1], src[mid]) <= 0){
+			System.arraycopy(src, from, dst, from, to-from);
+			return;
+		}
+		int i = from;
+		int j = mid;
+		for(int k=from;k<to;k++){
+			//take from the left on ties to keep the sort stable
+			if(j >= to || (i < mid && comparator.compare(src[i], src[j]) <= 0)){
+				dst[k] = src[i++];
+			}else{
+				dst[k] = src[j++];
+			}
+		}
+	}
+
+	static void insertionSort(int[] rows, int from, int to, RowComparator comparator){
+		for(int i=from+1;i<to;i++){
+			int row = rows[i];
+			int j = i-1;
+			while(j >= from && comparator.compare(rows[j], row) > 0){
+				rows[j+1] = rows[j];
+				j--;
+			}
+			rows[j+1] = row;
+		}
+	}
+
+	private static final class SortTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final int[] src;
+		private final int[] dst;
+		private final int from;
+		private final int to;
+		private final RowComparator comparator;
+
+		SortTask(int[] src, int[] dst, int from, int to, RowComparator comparator) {
+			this.src=src;
+			this.dst=dst;
+			this.from=from;
+			this.to=to;
+			this.comparator=comparator;
+		}
+
+		@Override
+		protected void compute() {
+			if(to - from <= PARALLEL_GRANULARITY){
+				mergeSort(src, dst, from, to, comparator);
+				return;
+			}
+			int mid = (from + to) >>> 1;
+			invokeAll(new SortTask(dst, src, from, mid, comparator), new SortTask(dst, src, mid, to, comparator));
+			merge(src, dst, from, mid, to, comparator);
+		}
+
+	}
+
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2012 Tauasa Timoteo
+ * 
+ * Permission is hereby granted, free of charge, to any person 
+ * obtaining a copy of this software and associated documentation 
+ * files (the “Software”), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, 
+ * publish, distribute, sublicense, and/or sell copies of the Software,
+ * and to permit persons to whom the Software is furnished to do so, 
+ * subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be 
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, 
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES 
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NON-
+ * INFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS 
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN 
+ * AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF 
+ * OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS 
+ * IN THE SOFTWARE.
+ */
+package org.tauasa.commons.data;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.Timestamp;
+import java.util.Date;
+
+/**
+ * 64-bit value hashing for the sketches and {@link DataModelDiff}. Integral numbers and 
+ * dates hash by their long value and strings by their characters, so equal values always 
+ * hash the same across JVMs (unlike {@link Object#hashCode()} for arbitrary objects, which 
+ * is the fallback).
+ *
+ * @author Tauasa Timoteo
+ * 
+ */
+final class SketchHash {
+
+	private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+	private static final long FNV_PRIME = 0x100000001b3L;
+
+	private SketchHash(){}
+
+	static long hash(Object value){
+		if(value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte){
+			return hash(((Number)value).longValue());
+		}else if(value instanceof String){
+			return hash((String)value);
+		}else if(value instanceof Double || value instanceof Float){
+			return hash(Double.doubleToLongBits(((Number)value).doubleValue()));
+		}else if(value instanceof Timestamp){
+			Timestamp ts = (Timestamp)value;
+			return hash(ts.getTime() * 1000000L + ts.getNanos() % 1000000);
+		}else if(value instanceof Date){
+			return hash(((Date)value).getTime());
+		}else if(value instanceof BigDecimal || value instanceof BigInteger){
+			//hashCode() is only 32 bits; the string form is consistent with equals()
+			return hash(value.toString());
+		}else if(value instanceof Boolean){
+			return hash((Boolean)value ? 1L : 0L);
+		}else if(value instanceof byte[]){
+			return hash((byte[])value);
+		}
+		return hash((long)value.hashCode());
+	}
+
+	static long hash(long value){
+		//offset by the golden ratio so zero doesn't hash to zero
+		return mix(value + 0x9E3779B97F4A7C15L);
+	}
+
+	static long hash(String value){
+		long h = FNV_OFFSET;
+		for(int i=0, len=value.length();i<len;i++){
+			h = (h ^ value.charAt(i)) * FNV_PRIME;
+		}
+		return mix(h);
+	}
+
+	static long hash(byte[] value){
+		long h = FNV_OFFSET;
+		for (byte b : value) {
+			h = (h ^ (b & 0xFF)) * FNV_PRIME;
+		}
+		return mix(h);
+	}
+
+	/**
+	 * MurmurHash3's 64-bit finalizer, which spreads every input bit over the whole hash
+	 * */
+	static long mix(long k){
+		k ^= k >>> 33;
+		k *= 0xff51afd7ed558ccdL;
+		k ^= k >>> 33;
+		k *= 0xc4ceb93fe53a87c5L;
+		k ^= k >>> 33;
+		return k;
+	}
+
+}
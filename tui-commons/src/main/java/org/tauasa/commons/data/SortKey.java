@@ -0,0 +1,69 @@
+/*
+ * Copyright 2012 Tauasa Timoteo
+ * 
+ * Permission is hereby granted, free of charge, to any person 
+ * obtaining a copy of this software and associated documentation 
+ * files (the “Software”), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, 
+ * publish, distribute, sublicense, and/or sell copies of the Software,
+ * and to permit persons to whom the Software is furnished to do so, 
+ * subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be 
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, 
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES 
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NON-
+ * INFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS 
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN 
+ * AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF 
+ * OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS 
+ * IN THE SOFTWARE.
+ */
+package org.tauasa.commons.data;
+
+import java.io.Serializable;
+
+/**
+ * A column to sort on and its direction, for {@link DataModelOperators#sort} and 
+ * {@link DataModelOperators#top}. Null values sort before all other values, so they 
+ * come first in ascending order and last in descending order.
+ *
+ * @author Tauasa Timoteo
+ * 
+ */
+public final class SortKey implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private final String column;
+	private final boolean ascending;
+
+	public SortKey(String column, boolean ascending) {
+		this.column=column;
+		this.ascending=ascending;
+	}
+
+	public static SortKey asc(String column){
+		return new SortKey(column, true);
+	}
+
+	public static SortKey desc(String column){
+		return new SortKey(column, false);
+	}
+
+	public String getColumn() {
+		return column;
+	}
+
+	public boolean isAscending() {
+		return ascending;
+	}
+
+	@Override
+	public String toString() {
+		return column + (ascending ? " ASC" : " DESC");
+	}
+
+}
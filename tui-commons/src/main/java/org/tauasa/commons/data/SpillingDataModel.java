@@ -0,0 +1,534 @@
+/*
+ * Copyright 2012 Tauasa Timoteo
+ * 
+ * Permission is hereby granted, free of charge, to any person 
+ * obtaining a copy of this software and associated documentation 
+ * files (the “Software”), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, 
+ * publish, distribute, sublicense, and/or sell copies of the Software,
+ * and to permit persons to whom the Software is furnished to do so, 
+ * subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be 
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, 
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES 
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NON-
+ * INFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS 
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN 
+ * AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF 
+ * OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS 
+ * IN THE SOFTWARE.
+ */
+package org.tauasa.commons.data;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.tauasa.commons.io.IOUtils;
+import org.tauasa.commons.jdbc.JDBCUtils;
+
+/**
+ * Scrollable {@link IDataModel} that keeps rows on the heap until a configurable 
+ * budget is used up and writes the remaining rows to a temporary file which is read 
+ * back through memory mapping. Rows are located through an offset index (8 bytes 
+ * per spilled row) so {@link #moveTo(int)}, {@link #previous()} and {@link #last()} 
+ * work the same as on a {@link TableDataModel}; only the current row is decoded.
+ * <p>
+ * The temporary file is deleted by {@link #close()} (and on JVM exit as a fallback), 
+ * so always close a SpillingDataModel once it is no longer needed.
+ * Values are stored with a compact binary encoding; types without a dedicated 
+ * encoding must be {@link java.io.Serializable}.
+ *
+ * @author Tauasa Timoteo
+ * 
+ */
+public final class SpillingDataModel implements IDataModel, Closeable {
+
+	private static final long serialVersionUID = 1L;
+	private static final Logger logger = LoggerFactory.getLogger(SpillingDataModel.class);
+
+	/**
+	 * Default number of (estimated) bytes of rows kept on the heap
+	 * */
+	public static final long DEFAULT_HEAP_BUDGET = 64L * 1024 * 1024;
+
+	/**
+	 * Size of each mapped region of the spill file. Rows never cross a segment boundary.
+	 * */
+	static final int SEGMENT_SIZE = 1 << 30;
+
+	protected String[] columns;
+	protected long heapBudget;
+
+	protected transient ColumnIndex columnIndex;
+	protected transient ArrayList<Object[]> memoryRows;
+	protected transient long heapUsed;
+	protected transient int rowCount;
+	protected transient int currentRow = -1;
+
+	//the decoded current row
+	private transient Object[] current;
+	private transient int currentLoaded = -1;
+
+	//spill file state, created on first spill
+	private transient File file;
+	private transient RandomAccessFile raf;
+	private transient OutputStream fileOut;
+	private transient long[] offsets;
+	private transient long written;
+	private transient MappedByteBuffer[] segments;
+	private transient long mapped;
+	private transient ByteArrayOutputStream rowBuffer;
+	private transient DataOutputStream rowOut;
+	private transient boolean closed;
+
+	/**
+	 * Creates an empty DataModel with the specified columns and the default heap budget
+	 * */
+	public SpillingDataModel(String[] columns) {
+		this(columns, DEFAULT_HEAP_BUDGET);
+	}
+
+	/**
+	 * Creates an empty DataModel with the specified columns that spills to disk once 
+	 * its rows use more than approximately heapBudget bytes of heap
+	 * */
+	public SpillingDataModel(String[] columns, long heapBudget) {
+		this.columns=columns;
+		this.heapBudget=heapBudget;
+		init();
+	}
+
+	/**
+	 * Creates a DataModel from the specified {@link ResultSet} using the default heap budget
+	 * */
+	public SpillingDataModel(ResultSet rs)throws SQLException, DataModelException{
+		this(rs, DEFAULT_HEAP_BUDGET);
+	}
+
+	/**
+	 * Creates a DataModel from the specified {@link ResultSet}. Like 
+	 * {@link TableDataModel#load(ResultSet)} the ResultSet is read in a single pass, 
+	 * from the beginning if it is scrollable.
+	 * */
+	public SpillingDataModel(ResultSet rs, long heapBudget)throws SQLException, DataModelException{
+		this(JDBCUtils.getColumnNames(rs), heapBudget);
+
+		if(rs.getType() != ResultSet.TYPE_FORWARD_ONLY && !rs.isBeforeFirst()){
+			rs.beforeFirst();
+		}
+
+		try{
+			while(rs.next()){
+				Object[] row = new Object[columns.length];
+				for(int i=0;i<row.length;i++){
+					row[i] = rs.getObject(i+1);
+				}
+				add(row);
+			}
+		}catch(SQLException | DataModelException | RuntimeException e){
+			//don't leave the spill file behind
+			close();
+			throw e;
+		}
+	}
+
+	private void init(){
+		memoryRows = new ArrayList<>();
+		rowBuffer = new ByteArrayOutputStream(256);
+		rowOut = new DataOutputStream(rowBuffer);
+	}
+
+	/**
+	 * Appends a row of values to this DataModel
+	 * */
+	public void add(Object[] row)throws DataModelException{
+		if(closed){
+			throw new DataModelException("DataModel is closed");
+		}
+		if(row.length != columns.length){
+			throw new DataModelException("Expected "+columns.length+" values but got "+row.length);
+		}
+
+		if(file==null){
+			long size = estimateSize(row);
+			if(heapUsed + size <= heapBudget){
+				memoryRows.add(row);
+				heapUsed += size;
+				rowCount++;
+				return;
+			}
+		}
+
+		try{
+			spill(row);
+		}catch(IOException e){
+			throw new DataModelException("Unable to write to "+file, e);
+		}
+		rowCount++;
+	}
+
+	private void spill(Object[] row)throws IOException, DataModelException{
+		if(file==null){
+			file = File.createTempFile("datamodel", ".spill");
+			file.deleteOnExit();
+			raf = new RandomAccessFile(file, "rw");
+			fileOut = new BufferedOutputStream(Channels.newOutputStream(raf.getChannel()), 65536);
+			offsets = new long[1024];
+			segments = new MappedByteBuffer[0];
+			if(logger.isDebugEnabled()){
+				logger.debug("Heap budget of "+heapBudget+" bytes used by "+rowCount+" rows, spilling to "+file);
+			}
+		}
+
+		rowBuffer.reset();
+		for (Object value : row) {
+			ValueCodec.write(rowOut, value);
+		}
+		int length = rowBuffer.size();
+		if(length > SEGMENT_SIZE){
+			throw new DataModelException("Row "+rowCount+" is too large to spill ("+length+" bytes)");
+		}
+
+		//pad to the next segment rather than let the row straddle two mappings
+		long segmentEnd = (written / SEGMENT_SIZE + 1) * SEGMENT_SIZE;
+		if(written + length > segmentEnd){
+			for(long i=written;i<segmentEnd;i++){
+				fileOut.write(0);
+			}
+			written = segmentEnd;
+		}
+
+		int spilled = rowCount - memoryRows.size();
+		if(spilled == offsets.length){
+			offsets = Arrays.copyOf(offsets, offsets.length*2);
+		}
+		offsets[spilled] = written;
+		rowBuffer.writeTo(fileOut);
+		written += length;
+	}
+
+	/**
+	 * Returns the specified row, decoding it from the spill file if necessary
+	 * */
+	private Object[] readRow(int row)throws DataModelException{
+		if(row < memoryRows.size()){
+			return memoryRows.get(row);
+		}
+		try{
+			map();
+			long offset = offsets[row - memoryRows.size()];
+			ByteBuffer in = segments[(int)(offset / SEGMENT_SIZE)].duplicate();
+			in.position((int)(offset % SEGMENT_SIZE));
+			Object[] values = new Object[columns.length];
+			for(int i=0;i<values.length;i++){
+				values[i] = ValueCodec.read(in);
+			}
+			return values;
+		}catch(IOException e){
+			throw new DataModelException("Unable to read row "+row+" from "+file, e);
+		}
+	}
+
+	/**
+	 * Maps whatever has been written to the spill file since the last call
+	 * */
+	private void map()throws IOException{
+		if(mapped == written){
+			return;
+		}
+		fileOut.flush();
+		int first = (int)(mapped / SEGMENT_SIZE);
+		int count = (int)((written + SEGMENT_SIZE - 1) / SEGMENT_SIZE);
+		segments = Arrays.copyOf(segments, count);
+		FileChannel channel = raf.getChannel();
+		for(int i=first;i<count;i++){
+			long start = (long)i * SEGMENT_SIZE;
+			segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(SEGMENT_SIZE, written - start));
+		}
+		mapped = written;
+	}
+
+	private Object[] row()throws DataModelException{
+		if(closed){
+			throw new DataModelException("DataModel is closed");
+		}
+		if(currentLoaded != currentRow){
+			current = readRow(currentRow);
+			currentLoaded = currentRow;
+		}
+		return current;
+	}
+
+	/**
+	 * Returns true if some of the rows have been written to disk
+	 * */
+	public boolean isSpilled(){
+		return file!=null;
+	}
+
+	/**
+	 * Returns the number of rows held on the heap
+	 * */
+	public int getMemoryRowCount(){
+		return memoryRows==null ? 0 : memoryRows.size();
+	}
+
+	public long getHeapBudget() {
+		return heapBudget;
+	}
+
+	/**
+	 * Releases the spill file. The DataModel can't be used afterwards.
+	 * */
+	@Override
+	public void close(){
+		if(closed){
+			return;
+		}
+		closed = true;
+		memoryRows = null;
+		current = null;
+		segments = null;
+		offsets = null;
+		if(file!=null){
+			IOUtils.closeIgnoringException(fileOut);
+			IOUtils.closeIgnoringException(raf);
+			//the mappings are released once they're garbage collected, which doesn't stop unlinking the file
+			if(!file.delete()){
+				logger.warn("Unable to delete spill file "+file);
+			}else if(logger.isDebugEnabled()){
+				logger.debug("Deleted spill file "+file);
+			}
+		}
+	}
+
+	@Override
+	public boolean isNull(int column)throws DataModelException{
+		return row()[column]==null;
+	}
+
+	@Override
+	public int getColumnIndex(String columnName)throws DataModelException{
+		if(columnIndex==null){
+			columnIndex = new ColumnIndex(columns);
+		}
+		return columnIndex.getIndex(columnName);
+	}
+
+	@Override
+	public int getColumnCount() {
+		return columns.length;
+	}
+
+	@Override
+	public String[] getColumnNames() throws DataModelException {
+		return columns;
+	}
+
+	@Override
+	public boolean moveTo(int rowNum) throws DataModelException {
+		if(rowNum >= rowCount){
+			return false;
+		}
+		currentRow = rowNum;
+		return true;
+	}
+
+	@Override
+	public boolean reset() throws DataModelException {
+		currentRow = 0;
+		return true;
+	}
+
+	@Override
+	public boolean next() throws DataModelException {
+		if(currentRow+1 > rowCount-1){
+			return false;
+		}
+		currentRow++;
+		return true;
+	}
+
+	@Override
+	public boolean previous() throws DataModelException {
+		if(currentRow<=0){
+			return false;
+		}
+		currentRow--;
+		return true;
+	}
+
+	@Override
+	public boolean last() throws DataModelException {
+		currentRow = rowCount-1;
+		return true;
+	}
+
+	@Override
+	public boolean first() throws DataModelException {
+		return reset();
+	}
+
+	@Override
+	public int size() throws DataModelException {
+		return rowCount;
+	}
+
+	@Override
+	public String getString(String name) throws DataModelException {
+		return getString(getColumnIndex(name));
+	}
+
+	@Override
+	public String getString(int column) throws DataModelException {
+		Object value = row()[column];
+		return value==null ? null : value.toString();
+	}
+
+	public Number getNumber(String name)throws DataModelException{
+		return getNumber(getColumnIndex(name));
+	}
+
+	public Number getNumber(int column)throws DataModelException{
+		return (Number)row()[column];
+	}
+
+	@Override
+	public int getInt(String name) throws DataModelException {
+		return getInt(getColumnIndex(name));
+	}
+
+	@Override
+	public int getInt(int column) throws DataModelException {
+		return getNumber(column).intValue();
+	}
+
+	@Override
+	public long getLong(String name) throws DataModelException {
+		return getLong(getColumnIndex(name));
+	}
+
+	@Override
+	public long getLong(int column) throws DataModelException {
+		return getNumber(column).longValue();
+	}
+
+	@Override
+	public float getFloat(String name)throws DataModelException{
+		return getFloat(getColumnIndex(name));
+	}
+
+	@Override
+	public float getFloat(int column)throws DataModelException{
+		return getNumber(column).floatValue();
+	}
+
+	@Override
+	public double getDouble(String name)throws DataModelException{
+		return getDouble(getColumnIndex(name));
+	}
+
+	@Override
+	public double getDouble(int column)throws DataModelException{
+		return getNumber(column).doubleValue();
+	}
+
+	@Override
+	public Date getDate(String name) throws DataModelException {
+		return getDate(getColumnIndex(name));
+	}
+
+	@Override
+	public Date getDate(int column) throws DataModelException {
+		return (Date)row()[column];
+	}
+
+	@Override
+	public Object getObject(String name) throws DataModelException {
+		return getObject(getColumnIndex(name));
+	}
+
+	@Override
+	public Object getObject(int column) throws DataModelException {
+		return row()[column];
+	}
+
+	/**
+	 * Rough shallow heap size of a row: the array plus its values
+	 * */
+	static long estimateSize(Object[] row){
+		long size = 24 + 8L*row.length;
+		for (Object value : row) {
+			if(value==null){
+				continue;
+			}else if(value instanceof String){
+				size += 40 + ((String)value).length();
+			}else if(value instanceof BigDecimal){
+				size += 72;
+			}else if(value instanceof Date){
+				size += 32;
+			}else if(value instanceof byte[]){
+				size += 16 + ((byte[])value).length;
+			}else{
+				size += 24;
+			}
+		}
+		return size;
+	}
+
+	/////////////////////////////////////
+	// Serialization: rows are written out and spilled again on the receiving side
+	/////////////////////////////////////
+
+	private void writeObject(ObjectOutputStream out)throws IOException{
+		out.defaultWriteObject();
+		out.writeInt(rowCount);
+		try{
+			for(int i=0;i<rowCount;i++){
+				out.writeObject(readRow(i));
+			}
+		}catch(DataModelException e){
+			throw new IOException(e);
+		}
+	}
+
+	private void readObject(ObjectInputStream in)throws IOException, ClassNotFoundException{
+		in.defaultReadObject();
+		currentRow = -1;
+		currentLoaded = -1;
+		init();
+		int count = in.readInt();
+		try{
+			for(int i=0;i<count;i++){
+				add((Object[])in.readObject());
+			}
+		}catch(DataModelException e){
+			close();
+			throw new IOException(e);
+		}
+	}
+
+}
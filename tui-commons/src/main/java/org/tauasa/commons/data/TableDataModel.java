@@ -25,6 +25,7 @@ package org.tauasa.commons.data;
 
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
@@ -41,12 +42,18 @@ import org.tauasa.commons.util.Utils;
  * @author Tauasa Timoteo
  * 
  */
-public final class TableDataModel extends AbstractTableModel implements IDataModel {
+public final class TableDataModel extends AbstractTableModel implements IRandomAccessDataModel {
 
 	private static final long serialVersionUID = 1L;
 	protected String[] columns;
 	protected Object[][] rows;
 	protected int currentRow = -1;
+	protected ColumnIndex columnIndex;
+
+	/**
+	 * Number of rows allocated at a time by {@link #load(ResultSet)}
+	 * */
+	static final int LOAD_CHUNK_SIZE = 1024;
 
 	/**
 	 * Creates a DataModel using the specified column names and rows of data
@@ -93,54 +100,78 @@ public final class TableDataModel extends AbstractTableModel implements IDataMod
 			
 			//iterate over each column in this row...
 			for(int j=0;j<columns.length;j++){
-				//get the value for this column and
-				Object value = row.get(columns[j]);
-				setValueAt(value, i, j);
+				//get the value for this column (no need to fire
+				//cell events since nobody can be listening yet)
+				rows[i][j] = row.get(columns[j]);
 			}
 		}
 	}
 
 	/**
-	 * Creates a DataModel from the specified {@link ResultSet}.  The specified {@link ResultSet}
-	 * type must NOT be {@link ResultSet#TYPE_FORWARD_ONLY}. This constructor iterates over the 
-	 * entire ResultSet twice.
+	 * Creates a DataModel from the specified {@link ResultSet}. The ResultSet is read 
+	 * in a single pass (see {@link #load(ResultSet)}) so it may be {@link ResultSet#TYPE_FORWARD_ONLY}.
 	 * */
 	public TableDataModel(ResultSet rs)throws SQLException, DataModelException{
-		if(rs.getType() == ResultSet.TYPE_FORWARD_ONLY){
-			throw new DataModelException("ResultSetType cannot be TYPE_FORWARD_ONLY");
-		}
+		load(rs);
+	}
+
+	/**
+	 * Replaces the contents of this DataModel with the rows of the specified {@link ResultSet}. 
+	 * Rows are read in a single pass into fixed-size chunks, values are fetched by column 
+	 * index rather than by name and no {@link javax.swing.event.TableModelEvent}s are fired 
+	 * while loading; listeners receive a single structure change event once the load completes.
+	 * A scrollable ResultSet is read from the beginning, a forward-only ResultSet from its 
+	 * current position.
+	 * */
+	public void load(ResultSet rs)throws SQLException{
 
 		//fetch the columns
-		columns = JDBCUtils.getColumnNames(rs);
+		String[] names = JDBCUtils.getColumnNames(rs);
+		int columnCount = names.length;
 
-		if(rs.isBeforeFirst()){
+		if(rs.getType() != ResultSet.TYPE_FORWARD_ONLY && !rs.isBeforeFirst()){
 			//move to the first row
 			rs.beforeFirst();
 		}
 
+		//collect rows into chunks so growing never copies the rows we already have
+		List<Object[][]> chunks = new ArrayList<>();
+		Object[][] chunk = new Object[LOAD_CHUNK_SIZE][];
+		int chunkRows = 0;
 		int numRows = 0;
 
 		while(rs.next()){
-			numRows++;
-		}
-
-		rows = new Object[numRows][columns.length];
-
-		//populate the model
-		rs.beforeFirst();//go back to the beginning
-
-		int rowIndex = 0;
-		while(rs.next()){
-
-			for(int i=0;i<columns.length;i++){
-
-				//set the value
-				setValueAt(rs.getObject(columns[i]), rowIndex, i);
+			if(chunkRows==chunk.length){
+				chunks.add(chunk);
+				chunk = new Object[LOAD_CHUNK_SIZE][];
+				chunkRows = 0;
+			}
 
+			Object[] row = new Object[columnCount];
+			for(int i=0;i<columnCount;i++){
+				row[i] = rs.getObject(i+1);
 			}
-			rowIndex++;
+
+			chunk[chunkRows++] = row;
+			numRows++;
 		}
+		chunks.add(chunk);
+
+		//stitch the chunks together into the row index
+		Object[][] loaded = new Object[numRows][];
+		int offset = 0;
+		for(Object[][] c : chunks){
+			int count = Math.min(c.length, numRows-offset);
+			System.arraycopy(c, 0, loaded, offset, count);
+			offset += count;
+		}
+
+		columns = names;
+		columnIndex = null;
+		rows = loaded;
+		currentRow = -1;
 
+		fireTableStructureChanged();
 	}
 
 	/////////////////////////////////////
@@ -176,6 +207,52 @@ public final class TableDataModel extends AbstractTableModel implements IDataMod
 	// End TableModel method impls & overrides
 	/////////////////////////////////////
 
+	/////////////////////////////////////
+	// Begin IRandomAccessDataModel method impls
+	/////////////////////////////////////
+	@Override
+	public boolean isNull(int row, int column) {
+		return rows[row][column]==null;
+	}
+
+	@Override
+	public Object getObject(int row, int column) {
+		return rows[row][column];
+	}
+
+	@Override
+	public String getString(int row, int column) {
+		Object value = rows[row][column];
+		return value==null ? null : value.toString();
+	}
+
+	@Override
+	public int getInt(int row, int column) {
+		Object value = rows[row][column];
+		return value==null ? 0 : ((Number)value).intValue();
+	}
+
+	@Override
+	public long getLong(int row, int column) {
+		Object value = rows[row][column];
+		return value==null ? 0 : ((Number)value).longValue();
+	}
+
+	@Override
+	public double getDouble(int row, int column) {
+		Object value = rows[row][column];
+		return value==null ? 0 : ((Number)value).doubleValue();
+	}
+
+	@Override
+	public Date getDate(int row, int column) {
+		return (Date)rows[row][column];
+	}
+
+	/////////////////////////////////////
+	// End IRandomAccessDataModel method impls
+	/////////////////////////////////////
+
         @Override
 	public String[] getColumnNames() throws DataModelException {
 		return columns;
@@ -227,13 +304,12 @@ public final class TableDataModel extends AbstractTableModel implements IDataMod
 		return getRowCount();
 	}
 
-	protected int getColumnIndex(String columnName)throws DataModelException{
-		for(int i=0;i<columns.length;i++){
-			if(columns[i].equals(columnName)){
-				return i;
-			}
+	@Override
+	public int getColumnIndex(String columnName)throws DataModelException{
+		if(columnIndex==null){
+			columnIndex = new ColumnIndex(columns);
 		}
-		throw new DataModelException("Column not found: "+columnName);
+		return columnIndex.getIndex(columnName);
 	}
 
         @Override
@@ -0,0 +1,57 @@
+/*
+ * Copyright 2012 Tauasa Timoteo
+ * 
+ * Permission is hereby granted, free of charge, to any person 
+ * obtaining a copy of this software and associated documentation 
+ * files (the “Software”), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, 
+ * publish, distribute, sublicense, and/or sell copies of the Software,
+ * and to permit persons to whom the Software is furnished to do so, 
+ * subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be 
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, 
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES 
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NON-
+ * INFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS 
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN 
+ * AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF 
+ * OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS 
+ * IN THE SOFTWARE.
+ */
+package org.tauasa.commons.data;
+
+/**
+ * Unchecked wrapper for a {@link DataModelException} thrown while traversing a 
+ * {@link IDataModel} through a stream, where checked exceptions can't be thrown
+ *
+ * @author Tauasa Timoteo
+ * 
+ */
+public class UncheckedDataModelException extends RuntimeException {
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * @param cause the root cause
+	 */
+	public UncheckedDataModelException(DataModelException cause) {
+		super(cause);
+	}
+
+	/**
+	 * @param message the exception message
+	 * @param cause the root cause
+	 */
+	public UncheckedDataModelException(String message, DataModelException cause) {
+		super(message, cause);
+	}
+
+	@Override
+	public synchronized DataModelException getCause() {
+		return (DataModelException)super.getCause();
+	}
+
+}
@@ -0,0 +1,242 @@
+/*
+ * Copyright 2012 Tauasa Timoteo
+ * 
+ * Permission is hereby granted, free of charge, to any person 
+ * obtaining a copy of this software and associated documentation 
+ * files (the “Software”), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, 
+ * publish, distribute, sublicense, and/or sell copies of the Software,
+ * and to permit persons to whom the Software is furnished to do so, 
+ * subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be 
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, 
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES 
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NON-
+ * INFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS 
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN 
+ * AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF 
+ * OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS 
+ * IN THE SOFTWARE.
+ */
+package org.tauasa.commons.data;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.StreamCorruptedException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.util.Date;
+
+/**
+ * Self-describing binary encoding of single values: a one byte type tag followed by the 
+ * value. Integral values are zig-zag varints, strings are length-prefixed UTF-8 and 
+ * anything without a dedicated tag falls back to Java serialization. Values are 
+ * written to a {@link DataOutput} and read back from a {@link ByteBuffer}'s position.
+ *
+ * @author Tauasa Timoteo
+ * 
+ */
+final class ValueCodec {
+
+	static final byte NULL = 0;
+	static final byte INT = 1;
+	static final byte LONG = 2;
+	static final byte DOUBLE = 3;
+	static final byte FLOAT = 4;
+	static final byte SHORT = 5;
+	static final byte BYTE = 6;
+	static final byte BOOLEAN = 7;
+	static final byte STRING = 8;
+	static final byte BIG_DECIMAL = 9;
+	static final byte BIG_INTEGER = 10;
+	static final byte DATE = 11;
+	static final byte SQL_DATE = 12;
+	static final byte TIME = 13;
+	static final byte TIMESTAMP = 14;
+	static final byte BYTES = 15;
+	static final byte SERIALIZED = 16;
+
+	private ValueCodec(){}
+
+	static void write(DataOutput out, Object value)throws IOException{
+		if(value==null){
+			out.writeByte(NULL);
+		}else if(value instanceof Integer){
+			out.writeByte(INT);
+			writeVarLong(out, zigZag((Integer)value));
+		}else if(value instanceof Long){
+			out.writeByte(LONG);
+			writeVarLong(out, zigZag((Long)value));
+		}else if(value instanceof Double){
+			out.writeByte(DOUBLE);
+			out.writeDouble((Double)value);
+		}else if(value instanceof String){
+			out.writeByte(STRING);
+			writeBytes(out, ((String)value).getBytes(StandardCharsets.UTF_8));
+		}else if(value instanceof Timestamp){
+			Timestamp ts = (Timestamp)value;
+			out.writeByte(TIMESTAMP);
+			writeVarLong(out, zigZag(ts.getTime()));
+			writeVarLong(out, ts.getNanos());
+		}else if(value instanceof java.sql.Date){
+			out.writeByte(SQL_DATE);
+			writeVarLong(out, zigZag(((Date)value).getTime()));
+		}else if(value instanceof Time){
+			out.writeByte(TIME);
+			writeVarLong(out, zigZag(((Date)value).getTime()));
+		}else if(value.getClass()==Date.class){
+			out.writeByte(DATE);
+			writeVarLong(out, zigZag(((Date)value).getTime()));
+		}else if(value instanceof BigDecimal){
+			BigDecimal d = (BigDecimal)value;
+			out.writeByte(BIG_DECIMAL);
+			writeVarLong(out, zigZag(d.scale()));
+			writeBytes(out, d.unscaledValue().toByteArray());
+		}else if(value instanceof BigInteger){
+			out.writeByte(BIG_INTEGER);
+			writeBytes(out, ((BigInteger)value).toByteArray());
+		}else if(value instanceof Float){
+			out.writeByte(FLOAT);
+			out.writeFloat((Float)value);
+		}else if(value instanceof Short){
+			out.writeByte(SHORT);
+			writeVarLong(out, zigZag((Short)value));
+		}else if(value instanceof Byte){
+			out.writeByte(BYTE);
+			out.writeByte((Byte)value);
+		}else if(value instanceof Boolean){
+			out.writeByte(BOOLEAN);
+			out.writeBoolean((Boolean)value);
+		}else if(value instanceof byte[]){
+			out.writeByte(BYTES);
+			writeBytes(out, (byte[])value);
+		}else{
+			//no dedicated encoding; throws NotSerializableException if the value isn't Serializable
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			try(ObjectOutputStream oos = new ObjectOutputStream(bytes)){
+				oos.writeObject(value);
+			}
+			out.writeByte(SERIALIZED);
+			writeBytes(out, bytes.toByteArray());
+		}
+	}
+
+	static Object read(ByteBuffer in)throws IOException{
+		byte tag = in.get();
+		switch(tag){
+			case NULL:
+				return null;
+			case INT:
+				return (int)unZigZag(readVarLong(in));
+			case LONG:
+				return unZigZag(readVarLong(in));
+			case DOUBLE:
+				return in.getDouble();
+			case STRING:
+				return new String(readBytes(in), StandardCharsets.UTF_8);
+			case TIMESTAMP:
+				Timestamp ts = new Timestamp(unZigZag(readVarLong(in)));
+				ts.setNanos((int)readVarLong(in));
+				return ts;
+			case SQL_DATE:
+				return new java.sql.Date(unZigZag(readVarLong(in)));
+			case TIME:
+				return new Time(unZigZag(readVarLong(in)));
+			case DATE:
+				return new Date(unZigZag(readVarLong(in)));
+			case BIG_DECIMAL:
+				int scale = (int)unZigZag(readVarLong(in));
+				return new BigDecimal(new BigInteger(readBytes(in)), scale);
+			case BIG_INTEGER:
+				return new BigInteger(readBytes(in));
+			case FLOAT:
+				return in.getFloat();
+			case SHORT:
+				return (short)unZigZag(readVarLong(in));
+			case BYTE:
+				return in.get();
+			case BOOLEAN:
+				return in.get()!=0;
+			case BYTES:
+				return readBytes(in);
+			case SERIALIZED:
+				try(ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(readBytes(in)))){
+					return ois.readObject();
+				}catch(ClassNotFoundException e){
+					throw new IOException(e);
+				}
+			default:
+				throw new StreamCorruptedException("Unknown value tag: "+tag);
+		}
+	}
+
+	static void writeBytes(DataOutput out, byte[] bytes)throws IOException{
+		writeVarLong(out, bytes.length);
+		out.write(bytes);
+	}
+
+	static byte[] readBytes(ByteBuffer in){
+		byte[] bytes = new byte[(int)readVarLong(in)];
+		in.get(bytes);
+		return bytes;
+	}
+
+	/**
+	 * Writes an unsigned LEB128 varint (7 bits per byte, low bits first)
+	 * */
+	static void writeVarLong(DataOutput out, long value)throws IOException{
+		while((value & ~0x7FL)!=0){
+			out.writeByte((int)((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		out.writeByte((int)value);
+	}
+
+	static long readVarLong(ByteBuffer in){
+		long value = 0;
+		for(int shift=0;shift<64;shift+=7){
+			byte b = in.get();
+			value |= (long)(b & 0x7F) << shift;
+			if(b >= 0){
+				return value;
+			}
+		}
+		throw new IllegalStateException("Malformed varint");
+	}
+
+	static long readVarLong(DataInput in)throws IOException{
+		long value = 0;
+		for(int shift=0;shift<64;shift+=7){
+			byte b = in.readByte();
+			value |= (long)(b & 0x7F) << shift;
+			if(b >= 0){
+				return value;
+			}
+		}
+		throw new StreamCorruptedException("Malformed varint");
+	}
+
+	/**
+	 * Maps signed values to unsigned so small negative numbers stay short as varints
+	 * */
+	static long zigZag(long value){
+		return (value << 1) ^ (value >> 63);
+	}
+
+	static long unZigZag(long value){
+		return (value >>> 1) ^ -(value & 1);
+	}
+
+}
@@ -23,22 +23,124 @@
  */
 package org.tauasa.commons.data.writer;
 
+import java.io.IOException;
 import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+
+import org.tauasa.commons.data.DataModelException;
+import org.tauasa.commons.data.IDataModel;
+import org.tauasa.commons.data.IRandomAccessDataModel;
+import org.tauasa.commons.data.UncheckedDataModelException;
 
 /**
  * Abstract {@link IDataModelWriter} that outputs model data to an {@link OutputStream}
+ * <P>
+ * Writers that support it render {@link IRandomAccessDataModel}s in parallel when 
+ * {@link #setParallelism(int)} is greater than one: ranges of {@link #getChunkSize()} rows 
+ * are formatted into byte chunks on the {@link #getExecutor()} and written to the 
+ * OutputStream in order. At most twice the parallelism chunks are in flight at once, 
+ * which caps the memory used. A parallel write covers every row of the model regardless 
+ * of its cursor position.
  *
  * @author Tauasa Timoteo
  * 
  */
 public abstract class AbstractDataModelWriter implements IDataModelWriter {
 
+	public static final int DEFAULT_CHUNK_SIZE = 2048;
+
 	protected OutputStream out;
+	protected int parallelism = 1;
+	protected int chunkSize = DEFAULT_CHUNK_SIZE;
+	protected Executor executor;
 
 	public AbstractDataModelWriter(OutputStream out) {
 		this.out=out;
 	}
 
+	/**
+	 * Formats rows [from, to) of a model into bytes
+	 * */
+	@FunctionalInterface
+	protected interface ChunkRenderer {
+
+		public byte[] render(int from, int to)throws DataModelException, IOException;
+
+	}
+
+	/**
+	 * Returns true if the specified model should be written with {@link #writeChunks}
+	 * */
+	protected boolean isParallel(IDataModel data){
+		return parallelism > 1 && data instanceof IRandomAccessDataModel;
+	}
+
+	/**
+	 * Renders rows [0, rowCount) in chunks on the executor and writes the chunks to the 
+	 * specified stream in row order, optionally flushing it after each chunk
+	 * 
+	 * @return the number of rows written
+	 * */
+	protected int writeChunks(int rowCount, ChunkRenderer renderer, OutputStream target, boolean flush)throws DataModelException, IOException{
+		Executor exec = executor==null ? ForkJoinPool.commonPool() : executor;
+		int maxInFlight = parallelism*2;
+		ArrayDeque<CompletableFuture<byte[]>> inFlight = new ArrayDeque<>(maxInFlight);
+		try{
+			for(int from=0;from<rowCount;from+=chunkSize){
+				if(inFlight.size() >= maxInFlight){
+					writeChunk(inFlight.poll(), target, flush);
+				}
+				int start = from;
+				int end = Math.min(rowCount, from+chunkSize);
+				inFlight.add(CompletableFuture.supplyAsync(() -> {
+					try{
+						return renderer.render(start, end);
+					}catch(DataModelException | IOException e){
+						throw new CompletionException(e);
+					}
+				}, exec));
+			}
+			while(!inFlight.isEmpty()){
+				writeChunk(inFlight.poll(), target, flush);
+			}
+		}finally{
+			//only non-empty if a chunk failed
+			for (CompletableFuture<byte[]> chunk : inFlight) {
+				chunk.cancel(false);
+			}
+		}
+		return rowCount;
+	}
+
+	private static void writeChunk(CompletableFuture<byte[]> chunk, OutputStream target, boolean flush)throws DataModelException, IOException{
+		byte[] bytes;
+		try{
+			bytes = chunk.join();
+		}catch(CompletionException e){
+			Throwable cause = e.getCause();
+			if(cause instanceof IOException){
+				throw (IOException)cause;
+			}else if(cause instanceof DataModelException){
+				throw (DataModelException)cause;
+			}else if(cause instanceof UncheckedDataModelException){
+				throw ((UncheckedDataModelException)cause).getCause();
+			}else if(cause instanceof RuntimeException){
+				throw (RuntimeException)cause;
+			}else if(cause instanceof Error){
+				throw (Error)cause;
+			}
+			throw new DataModelException(cause);
+		}
+		target.write(bytes);
+		if(flush){
+			target.flush();
+		}
+	}
+
 	public OutputStream getOutputStream() {
 		return out;
 	}
@@ -47,4 +149,39 @@ public abstract class AbstractDataModelWriter implements IDataModelWriter {
 		this.out = out;
 	}
 
+	public int getParallelism() {
+		return parallelism;
+	}
+
+	/**
+	 * Sets the number of threads random access models are rendered with; one (the default) 
+	 * or less writes on the calling thread only
+	 * */
+	public void setParallelism(int parallelism) {
+		this.parallelism = parallelism;
+	}
+
+	public int getChunkSize() {
+		return chunkSize;
+	}
+
+	/**
+	 * Sets the number of rows rendered per chunk in parallel mode
+	 * */
+	public void setChunkSize(int chunkSize) {
+		this.chunkSize = Math.max(1, chunkSize);
+	}
+
+	public Executor getExecutor() {
+		return executor;
+	}
+
+	/**
+	 * Sets the executor chunks are rendered on in parallel mode, the common 
+	 * {@link ForkJoinPool} by default
+	 * */
+	public void setExecutor(Executor executor) {
+		this.executor = executor;
+	}
+
 }
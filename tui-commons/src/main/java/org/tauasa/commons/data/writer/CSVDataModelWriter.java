@@ -0,0 +1,241 @@
+/*
+ * Copyright 2012 Tauasa Timoteo
+ * 
+ * Permission is hereby granted, free of charge, to any person 
+ * obtaining a copy of this software and associated documentation 
+ * files (the “Software”), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, 
+ * publish, distribute, sublicense, and/or sell copies of the Software,
+ * and to permit persons to whom the Software is furnished to do so, 
+ * subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be 
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, 
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES 
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NON-
+ * INFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS 
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN 
+ * AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF 
+ * OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS 
+ * IN THE SOFTWARE.
+ */
+package org.tauasa.commons.data.writer;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPOutputStream;
+
+import org.tauasa.commons.data.DataModelException;
+import org.tauasa.commons.data.IDataModel;
+import org.tauasa.commons.data.IRandomAccessDataModel;
+
+import com.opencsv.CSVWriter;
+
+/**
+ * {@link IDataModelWriter} implementation that streams an {@link IDataModel} as CSV using 
+ * <a href="http://opencsv.sourceforge.net/">opencsv</a>. Rows are read with {@link IDataModel#next()} 
+ * and encoded through a single reusable buffer, so forward-only models are written in constant 
+ * memory. The output is flushed every {@link #getFlushInterval()} rows so that HTTP responses 
+ * start sending bytes immediately, and can optionally be gzipped. Random access models can 
+ * be formatted in parallel (see {@link AbstractDataModelWriter}); compression still happens 
+ * on the calling thread.
+ * <P>
+ * The underlying {@link OutputStream} is flushed but never closed.
+ *
+ * @author Tauasa Timoteo
+ * 
+ */
+public class CSVDataModelWriter extends AbstractDataModelWriter {
+
+	public static final int DEFAULT_BUFFER_SIZE = 65536;
+	public static final int DEFAULT_FLUSH_INTERVAL = 1000;
+
+	protected char separator = CSVWriter.DEFAULT_SEPARATOR;
+	protected char quoteChar = CSVWriter.DEFAULT_QUOTE_CHARACTER;
+	protected char escapeChar = CSVWriter.DEFAULT_ESCAPE_CHARACTER;
+	protected String lineEnd = CSVWriter.DEFAULT_LINE_END;
+	protected boolean quoteAll = true;
+	protected boolean header = true;
+	protected boolean gzip = false;
+	protected Charset charset = StandardCharsets.UTF_8;
+	protected int bufferSize = DEFAULT_BUFFER_SIZE;
+	protected int flushInterval = DEFAULT_FLUSH_INTERVAL;
+
+	public CSVDataModelWriter(OutputStream out) {
+		super(out);
+	}
+
+	public CSVDataModelWriter(OutputStream out, char separator) {
+		this(out);
+		this.separator=separator;
+	}
+
+	@Override
+	public void write(IDataModel data) throws DataModelException, IOException {
+
+		GZIPOutputStream zip = gzip ? new GZIPOutputStream(out, bufferSize, true) : null;
+
+		BufferedWriter buffer = new BufferedWriter(new OutputStreamWriter(zip==null ? out : zip, charset), bufferSize);
+
+		CSVWriter csv = new CSVWriter(buffer, separator, quoteChar, escapeChar, lineEnd);
+
+		String[] columns = data.getColumnNames();
+
+		if(header){
+			csv.writeNext(columns, quoteAll);
+		}
+
+		if(isParallel(data)){
+			IRandomAccessDataModel rows = (IRandomAccessDataModel)data;
+			int columnCount = columns.length;
+			//the header has to reach the stream before the first chunk
+			flush(csv);
+			writeChunks(rows.getRowCount(), (from, to) -> {
+				ByteArrayOutputStream chunk = new ByteArrayOutputStream(8192);
+				CSVWriter c = new CSVWriter(new OutputStreamWriter(chunk, charset), separator, quoteChar, escapeChar, lineEnd);
+				String[] line = new String[columnCount];
+				for(int row=from;row<to;row++){
+					for(int i=0;i<line.length;i++){
+						line[i] = rows.getString(row, i);
+					}
+					c.writeNext(line, quoteAll);
+				}
+				flush(c);
+				return chunk.toByteArray();
+			}, zip==null ? out : zip, flushInterval > 0);
+		}else{
+			//reuse the same line array for every row
+			String[] line = new String[columns.length];
+
+			int x=0;
+			while(data.next()){
+				for(int i=0;i<line.length;i++){
+					line[i] = data.getString(i);
+				}
+				csv.writeNext(line, quoteAll);
+
+				if(flushInterval > 0 && ++x % flushInterval==0){
+					flush(csv);
+				}
+			}
+		}
+
+		flush(csv);
+
+		if(zip!=null){
+			zip.finish();
+			out.flush();
+		}
+	}
+
+	/**
+	 * Flushes the CSVWriter all the way through to the OutputStream. CSVWriter writes through a 
+	 * {@link java.io.PrintWriter} which swallows IOExceptions, so check for (and report) them here.
+	 * */
+	private void flush(CSVWriter csv)throws IOException{
+		csv.flush();
+		if(csv.checkError()){
+			throw new IOException("An error occurred writing CSV data");
+		}
+	}
+
+	public char getSeparator() {
+		return separator;
+	}
+
+	public void setSeparator(char separator) {
+		this.separator = separator;
+	}
+
+	public char getQuoteChar() {
+		return quoteChar;
+	}
+
+	/**
+	 * Sets the quote character; use {@link CSVWriter#NO_QUOTE_CHARACTER} to disable quoting
+	 * */
+	public void setQuoteChar(char quoteChar) {
+		this.quoteChar = quoteChar;
+	}
+
+	public char getEscapeChar() {
+		return escapeChar;
+	}
+
+	public void setEscapeChar(char escapeChar) {
+		this.escapeChar = escapeChar;
+	}
+
+	public String getLineEnd() {
+		return lineEnd;
+	}
+
+	public void setLineEnd(String lineEnd) {
+		this.lineEnd = lineEnd;
+	}
+
+	public boolean isQuoteAll() {
+		return quoteAll;
+	}
+
+	/**
+	 * When false, values are only quoted if they contain a separator, quote or line break
+	 * */
+	public void setQuoteAll(boolean quoteAll) {
+		this.quoteAll = quoteAll;
+	}
+
+	public boolean isHeader() {
+		return header;
+	}
+
+	/**
+	 * Whether or not the column names are written as the first line
+	 * */
+	public void setHeader(boolean header) {
+		this.header = header;
+	}
+
+	public boolean isGzip() {
+		return gzip;
+	}
+
+	public void setGzip(boolean gzip) {
+		this.gzip = gzip;
+	}
+
+	public Charset getCharset() {
+		return charset;
+	}
+
+	public void setCharset(Charset charset) {
+		this.charset = charset;
+	}
+
+	public int getBufferSize() {
+		return bufferSize;
+	}
+
+	public void setBufferSize(int bufferSize) {
+		this.bufferSize = bufferSize;
+	}
+
+	public int getFlushInterval() {
+		return flushInterval;
+	}
+
+	/**
+	 * Sets the number of rows written between flushes; zero or less only flushes at the end
+	 * */
+	public void setFlushInterval(int flushInterval) {
+		this.flushInterval = flushInterval;
+	}
+
+}
@@ -0,0 +1,182 @@
+/*
+ * Copyright 2012 Tauasa Timoteo
+ * 
+ * Permission is hereby granted, free of charge, to any person 
+ * obtaining a copy of this software and associated documentation 
+ * files (the “Software”), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, 
+ * publish, distribute, sublicense, and/or sell copies of the Software,
+ * and to permit persons to whom the Software is furnished to do so, 
+ * subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be 
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, 
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES 
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NON-
+ * INFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS 
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN 
+ * AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF 
+ * OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS 
+ * IN THE SOFTWARE.
+ */
+package org.tauasa.commons.data.writer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * Buffered byte sink used by the writers in this package. Text goes through a single 
+ * reusable {@link CharsetEncoder} into a reusable byte buffer; constant markup can be 
+ * encoded once up front and written as raw bytes. Nothing reaches the underlying 
+ * {@link OutputStream} until the buffer fills up or {@link #flush()} is called.
+ *
+ * @author Tauasa Timoteo
+ * 
+ */
+final class EncodedOutput {
+
+	private static final char[] AMP = "&amp;".toCharArray();
+	private static final char[] LT = "&lt;".toCharArray();
+	private static final char[] GT = "&gt;".toCharArray();
+	private static final char[] QUOT = "&quot;".toCharArray();
+	private static final char[] APOS = "&#39;".toCharArray();
+
+	private final OutputStream out;
+	private final CharsetEncoder encoder;
+	private final CharBuffer chars;
+	private final ByteBuffer bytes;
+
+	EncodedOutput(OutputStream out, Charset charset, int bufferSize) {
+		this.out=out;
+		encoder = charset.newEncoder()
+				.onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
+		chars = CharBuffer.allocate(Math.max(bufferSize/4, 64));
+		bytes = ByteBuffer.allocate(Math.max(bufferSize, 256));
+	}
+
+	/**
+	 * Writes pre-encoded bytes
+	 * */
+	void write(byte[] b)throws IOException{
+		encodeChars();
+		if(b.length > bytes.remaining()){
+			drain();
+			if(b.length > bytes.capacity()){
+				out.write(b);
+				return;
+			}
+		}
+		bytes.put(b);
+	}
+
+	/**
+	 * Writes the specified text as-is
+	 * */
+	void write(String s)throws IOException{
+		int off = 0;
+		int len = s.length();
+		while(off < len){
+			int n = Math.min(len-off, chars.remaining());
+			if(n==0){
+				encodeChars();
+				continue;
+			}
+			int pos = chars.position();
+			s.getChars(off, off+n, chars.array(), pos);
+			chars.position(pos+n);
+			off += n;
+		}
+	}
+
+	/**
+	 * Writes the specified text escaping the HTML special characters (<code>&amp; &lt; &gt; &quot; '</code>)
+	 * */
+	void writeEscaped(String s)throws IOException{
+		char[] buf = chars.array();
+		int pos = chars.position();
+		for(int i=0, len=s.length();i<len;i++){
+			if(buf.length-pos < 6){
+				//make room for the longest entity
+				chars.position(pos);
+				encodeChars();
+				pos = chars.position();
+			}
+			char c = s.charAt(i);
+			switch (c) {
+				case '&':
+					pos = put(AMP, buf, pos);
+					break;
+				case '<':
+					pos = put(LT, buf, pos);
+					break;
+				case '>':
+					pos = put(GT, buf, pos);
+					break;
+				case '"':
+					pos = put(QUOT, buf, pos);
+					break;
+				case '\'':
+					pos = put(APOS, buf, pos);
+					break;
+				default:
+					buf[pos++] = c;
+					break;
+			}
+		}
+		chars.position(pos);
+	}
+
+	private static int put(char[] entity, char[] buf, int pos){
+		System.arraycopy(entity, 0, buf, pos, entity.length);
+		return pos+entity.length;
+	}
+
+	/**
+	 * Moves pending characters through the encoder into the byte buffer
+	 * */
+	private void encodeChars()throws IOException{
+		if(chars.position()==0){
+			return;
+		}
+		chars.flip();
+		while(true){
+			CoderResult result = encoder.encode(chars, bytes, false);
+			if(result.isOverflow()){
+				drain();
+			}else{
+				break;
+			}
+		}
+		//keeps a dangling high surrogate for the next write
+		chars.compact();
+	}
+
+	/**
+	 * Writes the buffered bytes to the underlying stream without flushing it
+	 * */
+	void drain()throws IOException{
+		if(bytes.position() > 0){
+			out.write(bytes.array(), 0, bytes.position());
+			bytes.clear();
+		}
+	}
+
+	/**
+	 * Writes everything buffered so far and flushes the underlying stream
+	 * */
+	void flush()throws IOException{
+		encodeChars();
+		drain();
+		out.flush();
+	}
+
+}
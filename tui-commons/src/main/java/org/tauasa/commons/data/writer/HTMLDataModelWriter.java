@@ -23,22 +23,51 @@
  */
 package org.tauasa.commons.data.writer;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 
 import org.tauasa.commons.data.DataModelException;
 import org.tauasa.commons.data.IDataModel;
-import org.tauasa.commons.util.Utils;
+import org.tauasa.commons.data.IRandomAccessDataModel;
 
 /**
- * Simple {@link IDataModelWriter} implementation that writes an {@link IDataModel} as an HTML table
+ * Simple {@link IDataModelWriter} implementation that writes an {@link IDataModel} as an HTML table.
+ * <P>
+ * Output is UTF-8. Constant markup is encoded once, cell values are HTML-escaped and encoded 
+ * into a reusable buffer in the same pass, and the output is flushed every 
+ * {@link #getFlushInterval()} rows (or every chunk in parallel mode, see 
+ * {@link AbstractDataModelWriter}). The title, header and sub-header are written as-is 
+ * and may therefore contain markup.
  *
  * @author Tauasa Timoteo
  * 
  */
 public class HTMLDataModelWriter extends AbstractDataModelWriter {
 
+	public static final int DEFAULT_BUFFER_SIZE = 65536;
+	public static final int DEFAULT_FLUSH_INTERVAL = 1000;
+
+	static final Charset CHARSET = StandardCharsets.UTF_8;
+
+	static final byte[] NBSP = bytes("&nbsp;");
+	static final byte[] STYLESHEET = bytes(createStyleSheet()+"\r\n");
+	static final byte[] TH_OPEN = bytes("<th class=\"default\">");
+	static final byte[] TH_CLOSE = bytes("</th>\r\n");
+	static final byte[] TR_DEFAULT = bytes("<tr class=\"default\">\r\n");
+	static final byte[] TR_ALTERNATE = bytes("<tr class=\"alternate\">\r\n");
+	static final byte[] TR_CLOSE = bytes("</tr>\r\n");
+	static final byte[] TD_OPEN = bytes("<td class=\"default\">");
+	static final byte[] TD_CLOSE = bytes("</td>\r\n");
+
+	//buffer used to encode each chunk in parallel mode
+	static final int CHUNK_BUFFER_SIZE = 8192;
+
 	protected String title, header, subHeader;
+	protected int bufferSize = DEFAULT_BUFFER_SIZE;
+	protected int flushInterval = DEFAULT_FLUSH_INTERVAL;
 
 	public HTMLDataModelWriter(OutputStream out) {
 		super(out);
@@ -49,12 +78,8 @@ public class HTMLDataModelWriter extends AbstractDataModelWriter {
 		this.title=title;
 	}
 
-	final void writeln(Object obj)throws IOException{
-		Utils.writeln(out, obj==null ? "&nbsp;" : obj);
-	}
-
-	final void write(Object obj)throws IOException{
-		Utils.write(out, obj==null ? "&nbsp;" : obj);
+	private static byte[] bytes(String s){
+		return s.getBytes(CHARSET);
 	}
 
 	static String createStyleSheet(){
@@ -81,73 +106,159 @@ public class HTMLDataModelWriter extends AbstractDataModelWriter {
 		return buffer.toString();
 	}
 
-        @Override
+	/**
+	 * Writes the specified markup (or <code>&amp;nbsp;</code> if null) followed by a CRLF
+	 * */
+	static void writeln(EncodedOutput o, String markup)throws IOException{
+		write(o, markup);
+		o.write("\r\n");
+	}
+
+	/**
+	 * Writes the specified markup (or <code>&amp;nbsp;</code> if null) without escaping it
+	 * */
+	static void write(EncodedOutput o, String markup)throws IOException{
+		if(markup==null){
+			o.write(NBSP);
+		}else{
+			o.write(markup);
+		}
+	}
+
+	/**
+	 * Writes a single table row for the current row of the specified model
+	 * */
+	static void writeRow(EncodedOutput o, IDataModel data, int rowIndex, int columnCount)throws DataModelException, IOException{
+		o.write(rowIndex%2==0 ? TR_DEFAULT : TR_ALTERNATE);
+
+		for(int i=0;i<columnCount;i++){
+			writeCell(o, data.getObject(i));
+		}
+
+		o.write(TR_CLOSE);
+	}
+
+	/**
+	 * Writes a single table row for the specified row of a random access model
+	 * */
+	static void writeRow(EncodedOutput o, IRandomAccessDataModel data, int rowIndex, int columnCount)throws IOException{
+		o.write(rowIndex%2==0 ? TR_DEFAULT : TR_ALTERNATE);
+
+		for(int i=0;i<columnCount;i++){
+			writeCell(o, data.getObject(rowIndex, i));
+		}
+
+		o.write(TR_CLOSE);
+	}
+
+	private static void writeCell(EncodedOutput o, Object value)throws IOException{
+		o.write(TD_OPEN);
+		if(value==null){
+			o.write(NBSP);
+		}else if(value instanceof Number){
+			//nothing to escape
+			o.write(value.toString());
+		}else{
+			o.writeEscaped(value.toString());
+		}
+		o.write(TD_CLOSE);
+	}
+
+	@Override
 	public void write(IDataModel data) throws DataModelException, IOException {
-		writeln("<html>");
-		writeln("<head>");
-		write("<title>");
-		write(title);
-		writeln("</title>");
+		EncodedOutput o = new EncodedOutput(out, CHARSET, bufferSize);
+
+		writeln(o, "<html>");
+		writeln(o, "<head>");
+		write(o, "<title>");
+		write(o, title);
+		writeln(o, "</title>");
 
-		writeln(createStyleSheet());
+		o.write(STYLESHEET);
 
-		writeln("</head>");
+		writeln(o, "</head>");
 
-		writeln("<body class=\"default\">");
+		writeln(o, "<body class=\"default\">");
 
 		if(header==null){
 			header = title;
 		}
 
-		write("<h1 class=\"default\">");
-		write(header);
-		writeln("</h1>");
+		write(o, "<h1 class=\"default\">");
+		write(o, header);
+		writeln(o, "</h1>");
 
 		if(subHeader!=null){
-			write(subHeader);
-			writeln("<P>");
+			write(o, subHeader);
+			writeln(o, "<P>");
 		}
 
-		write("<b>");
-		write(String.valueOf(data.size()));
-		write(" Records");
-		writeln("</b><p/>");
+		//streaming models may not know their size until every row has been read
+		int size = data.size();
+		if(size!=IDataModel.UNKNOWN_SIZE){
+			writeRecordCount(o, size);
+		}
 
-		writeln("<table border=\"1\" cellpadding=\"3\" cellspacing=\"0\" class=\"default\">");
+		writeln(o, "<table border=\"1\" cellpadding=\"3\" cellspacing=\"0\" class=\"default\">");
 
 		//write column headers
-		writeln("<tr class=\"header\">");
+		writeln(o, "<tr class=\"header\">");
 		String[] columns = data.getColumnNames();
 		for (String column : columns) {
-			write("<th class=\"default\">");
-			write(column);
-			writeln("</th>");
+			o.write(TH_OPEN);
+			if(column==null){
+				o.write(NBSP);
+			}else{
+				o.writeEscaped(column);
+			}
+			o.write(TH_CLOSE);
 		}
-		writeln("</tr>");
+		o.write(TR_CLOSE);
 
 		//write data
 		int x=0;
-		while(data.next()){
-			write("<tr class=\"");
-			write(x%2==0?"default":"alternate");
-			writeln("\">");
-
-			for(int i=0;i<columns.length;i++){
-				write("<td class=\"default\">");
-				write(data.getObject(i));
-				writeln("</td>");
+		if(isParallel(data)){
+			IRandomAccessDataModel rows = (IRandomAccessDataModel)data;
+			int columnCount = columns.length;
+			//everything so far has to reach the stream before the first chunk
+			o.flush();
+			x = writeChunks(rows.getRowCount(), (from, to) -> {
+				ByteArrayOutputStream chunk = new ByteArrayOutputStream(CHUNK_BUFFER_SIZE);
+				EncodedOutput c = new EncodedOutput(chunk, CHARSET, CHUNK_BUFFER_SIZE);
+				for(int row=from;row<to;row++){
+					writeRow(c, rows, row, columnCount);
+				}
+				c.flush();
+				return chunk.toByteArray();
+			}, out, flushInterval > 0);
+		}else{
+			while(data.next()){
+				writeRow(o, data, x, columns.length);
+				x++;
+				if(flushInterval > 0 && x % flushInterval==0){
+					o.flush();
+				}
 			}
-
-			writeln("</tr>");
-			x++;
 		}
 
-		writeln("</table>");
+		writeln(o, "</table>");
 
-		writeln("</body>");
-		writeln("</html>");
+		if(size==IDataModel.UNKNOWN_SIZE){
+			writeln(o, "<p/>");
+			writeRecordCount(o, x);
+		}
 
+		writeln(o, "</body>");
+		writeln(o, "</html>");
 
+		o.flush();
+	}
+
+	private static void writeRecordCount(EncodedOutput o, int count)throws IOException{
+		write(o, "<b>");
+		write(o, String.valueOf(count));
+		write(o, " Records");
+		writeln(o, "</b><p/>");
 	}
 
 	public String getHeader() {
@@ -174,4 +285,23 @@ public class HTMLDataModelWriter extends AbstractDataModelWriter {
 		this.title = title;
 	}
 
+	public int getBufferSize() {
+		return bufferSize;
+	}
+
+	public void setBufferSize(int bufferSize) {
+		this.bufferSize = bufferSize;
+	}
+
+	public int getFlushInterval() {
+		return flushInterval;
+	}
+
+	/**
+	 * Sets the number of rows written between flushes; zero or less only flushes at the end
+	 * */
+	public void setFlushInterval(int flushInterval) {
+		this.flushInterval = flushInterval;
+	}
+
 }
@@ -0,0 +1,263 @@
+/*
+ * Copyright 2012 Tauasa Timoteo
+ * 
+ * Permission is hereby granted, free of charge, to any person 
+ * obtaining a copy of this software and associated documentation 
+ * files (the “Software”), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, 
+ * publish, distribute, sublicense, and/or sell copies of the Software,
+ * and to permit persons to whom the Software is furnished to do so, 
+ * subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be 
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, 
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES 
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NON-
+ * INFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS 
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN 
+ * AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF 
+ * OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS 
+ * IN THE SOFTWARE.
+ */
+package org.tauasa.commons.data.writer;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Date;
+
+import org.tauasa.commons.data.ColumnType;
+import org.tauasa.commons.data.ColumnarDataModel;
+import org.tauasa.commons.data.DataModelException;
+import org.tauasa.commons.data.IDataModel;
+
+import com.google.gson.stream.JsonWriter;
+
+/**
+ * {@link IDataModelWriter} implementation that streams an {@link IDataModel} as JSON through 
+ * gson's {@link JsonWriter}, without building an intermediate object tree. Two layouts are supported:
+ * <ul>
+ * <li>{@link Layout#ROWS}: an array with one object per row, e.g. <code>[{"ID":1,"NAME":"a"},...]</code></li>
+ * <li>{@link Layout#COLUMNAR}: the column names once followed by one array per row, e.g. 
+ * <code>{"columns":["ID","NAME"],"rows":[[1,"a"],...]}</code></li>
+ * </ul>
+ * Numeric and date columns (see {@link IDataModel#getColumnType(int)}) are written through the 
+ * primitive getters so typed models such as {@link ColumnarDataModel} don't box them. Dates are 
+ * written as epoch milliseconds or ISO-8601 strings, see {@link #setDateFormat(DateFormat)}.
+ * <P>
+ * Output is UTF-8 and is flushed every {@link #getFlushInterval()} rows. The underlying 
+ * {@link OutputStream} is flushed but never closed.
+ *
+ * @author Tauasa Timoteo
+ * 
+ */
+public class JSONDataModelWriter extends AbstractDataModelWriter {
+
+	public static final int DEFAULT_BUFFER_SIZE = 65536;
+	public static final int DEFAULT_FLUSH_INTERVAL = 1000;
+
+	public enum Layout {
+		ROWS,
+		COLUMNAR
+	}
+
+	public enum DateFormat {
+		EPOCH_MILLIS,
+		ISO_8601
+	}
+
+	protected Layout layout = Layout.ROWS;
+	protected DateFormat dateFormat = DateFormat.EPOCH_MILLIS;
+	protected int bufferSize = DEFAULT_BUFFER_SIZE;
+	protected int flushInterval = DEFAULT_FLUSH_INTERVAL;
+
+	public JSONDataModelWriter(OutputStream out) {
+		super(out);
+	}
+
+	public JSONDataModelWriter(OutputStream out, Layout layout) {
+		this(out);
+		this.layout=layout;
+	}
+
+	@Override
+	public void write(IDataModel data) throws DataModelException, IOException {
+
+		JsonWriter json = new JsonWriter(new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), bufferSize));
+
+		String[] columns = data.getColumnNames();
+
+		//resolve the column types once
+		ColumnType[] types = new ColumnType[columns.length];
+		for(int i=0;i<types.length;i++){
+			types[i] = data.getColumnType(i);
+		}
+
+		boolean columnar = layout==Layout.COLUMNAR;
+
+		if(columnar){
+			json.beginObject();
+			json.name("columns");
+			json.beginArray();
+			for (String column : columns) {
+				json.value(column);
+			}
+			json.endArray();
+			json.name("rows");
+		}
+
+		json.beginArray();
+
+		int x=0;
+		while(data.next()){
+			if(columnar){
+				json.beginArray();
+			}else{
+				json.beginObject();
+			}
+
+			for(int i=0;i<columns.length;i++){
+				if(!columnar){
+					json.name(columns[i]);
+				}
+				writeValue(json, data, i, types[i]);
+			}
+
+			if(columnar){
+				json.endArray();
+			}else{
+				json.endObject();
+			}
+
+			if(flushInterval > 0 && ++x % flushInterval==0){
+				json.flush();
+			}
+		}
+
+		json.endArray();
+
+		if(columnar){
+			json.endObject();
+		}
+
+		json.flush();
+	}
+
+	/**
+	 * Writes the value of the specified column of the current row. Values are read with the 
+	 * typed getter first; a primitive getter returns 0 for null, so {@link IDataModel#isNull(int)} 
+	 * is only consulted for zeros.
+	 * */
+	protected void writeValue(JsonWriter json, IDataModel data, int column, ColumnType type)throws DataModelException, IOException{
+		switch (type) {
+			case INT:
+			case LONG:
+				long l = data.getLong(column);
+				if(l==0 && data.isNull(column)){
+					json.nullValue();
+				}else{
+					json.value(l);
+				}
+				break;
+			case DOUBLE:
+				double d = data.getDouble(column);
+				if(d==0 && data.isNull(column)){
+					json.nullValue();
+				}else{
+					writeDouble(json, d);
+				}
+				break;
+			case STRING:
+				json.value(data.getString(column));
+				break;
+			case DATE:
+				//typed models return DATE columns as epoch millis, there's no need to create a Date
+				long millis = data.getLong(column);
+				if(millis==0 && data.isNull(column)){
+					json.nullValue();
+				}else{
+					writeDate(json, millis);
+				}
+				break;
+			default:
+				writeObject(json, data.getObject(column));
+				break;
+		}
+	}
+
+	protected void writeObject(JsonWriter json, Object value)throws IOException{
+		if(value==null){
+			json.nullValue();
+		}else if(value instanceof Double || value instanceof Float){
+			writeDouble(json, ((Number)value).doubleValue());
+		}else if(value instanceof Number){
+			json.value((Number)value);
+		}else if(value instanceof Boolean){
+			json.value(((Boolean)value).booleanValue());
+		}else if(value instanceof Date){
+			writeDate(json, ((Date)value).getTime());
+		}else{
+			json.value(value.toString());
+		}
+	}
+
+	/**
+	 * JSON has no representation for NaN or infinity, so those are written as null
+	 * */
+	private static void writeDouble(JsonWriter json, double value)throws IOException{
+		if(Double.isNaN(value) || Double.isInfinite(value)){
+			json.nullValue();
+		}else{
+			json.value(value);
+		}
+	}
+
+	private void writeDate(JsonWriter json, long millis)throws IOException{
+		if(dateFormat==DateFormat.ISO_8601){
+			json.value(Instant.ofEpochMilli(millis).toString());
+		}else{
+			json.value(millis);
+		}
+	}
+
+	public Layout getLayout() {
+		return layout;
+	}
+
+	public void setLayout(Layout layout) {
+		this.layout = layout;
+	}
+
+	public DateFormat getDateFormat() {
+		return dateFormat;
+	}
+
+	public void setDateFormat(DateFormat dateFormat) {
+		this.dateFormat = dateFormat;
+	}
+
+	public int getBufferSize() {
+		return bufferSize;
+	}
+
+	public void setBufferSize(int bufferSize) {
+		this.bufferSize = bufferSize;
+	}
+
+	public int getFlushInterval() {
+		return flushInterval;
+	}
+
+	/**
+	 * Sets the number of rows written between flushes; zero or less only flushes at the end
+	 * */
+	public void setFlushInterval(int flushInterval) {
+		this.flushInterval = flushInterval;
+	}
+
+}
@@ -0,0 +1,663 @@
+/*
+ * Copyright 2012 Tauasa Timoteo
+ * 
+ * Permission is hereby granted, free of charge, to any person 
+ * obtaining a copy of this software and associated documentation 
+ * files (the “Software”), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, 
+ * publish, distribute, sublicense, and/or sell copies of the Software,
+ * and to permit persons to whom the Software is furnished to do so, 
+ * subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be 
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, 
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES 
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NON-
+ * INFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS 
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN 
+ * AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF 
+ * OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS 
+ * IN THE SOFTWARE.
+ */
+package org.tauasa.commons.jdbc;
+
+import org.tauasa.commons.util.Utils;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.function.ToIntFunction;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * Base DAO implementation that runs queries and updates against the {@link JDBCResources} 
+ * returned by {@link #getResources()}, and holds the settings used to create them.
+ * <p>
+ * {@link #openSession()} returns a {@link DaoSession}, a unit of work that borrows a 
+ * connection from the {@link IConnectionFactory} the first time it's used and returns it 
+ * when the session is closed. Sessions aren't bound to a thread, so they can be passed 
+ * between tasks and work the same with virtual threads; {@link ThreadLocalDAO} binds 
+ * resources to the current thread instead.
+ * <pre>
+ * try(DaoSession session = dao.openSession()){
+ *     List&lt;Order&gt; orders = session.executeQuery(sql, args, creator);
+ * }
+ * </pre>
+ *
+ * @author Tauasa Timoteo
+ * 
+ */
+public abstract class AbstractDAO {
+
+	private static final Logger logger = LoggerFactory.getLogger(AbstractDAO.class);
+
+	protected IConnectionFactory connectionFactory;
+
+	protected int resultSetType = ResultSet.TYPE_FORWARD_ONLY;
+	protected int resultSetConcurrency = ResultSet.CONCUR_READ_ONLY;
+
+	protected int queryTimeout = -1;
+
+	public static final int DEFAULT_FETCH_SIZE = 1000;
+
+	protected int fetchSize = DEFAULT_FETCH_SIZE;
+
+	protected int statementCacheSize = JDBCResources.DEFAULT_STATEMENT_CACHE_SIZE;
+
+	protected IStatementListener statementListener;
+
+	protected AbstractDAO(IConnectionFactory connectionFactory) {
+		this.connectionFactory=connectionFactory;
+	}
+
+	public IConnectionFactory getConnectionFactory(){
+		return connectionFactory;
+	}
+
+	/**
+	 * Returns the resources that statements are run against, borrowing a connection 
+	 * if necessary
+	 * */
+	protected abstract JDBCResources getResources()throws SQLException;
+
+	/**
+	 * Borrows a connection from the connection factory and wraps it in a new {@link JDBCResources}
+	 * */
+	protected JDBCResources createResources()throws SQLException{
+		if(connectionFactory==null){
+			throw new NullPointerException("ConnectionFactory is null");
+		}
+		if(logger.isDebugEnabled()){
+			logger.debug("Creating JDBCResources");
+		}
+		JDBCResources resources = new JDBCResources(connectionFactory.getConnection());
+		resources.setStatementCacheSize(statementCacheSize);
+		return resources;
+	}
+
+	/**
+	 * Opens a new session with the settings of this DAO. The session borrows its own 
+	 * connection when it's first used and returns it when it's closed.
+	 * */
+	public DaoSession openSession(){
+		return new DaoSession(this);
+	}
+
+	/**
+	 * Runs the specified work in a new session, closing the session afterwards
+	 * */
+	public <T> T inSession(ISessionWork<T> work)throws SQLException{
+		try(DaoSession session = openSession()){
+			return work.execute(session);
+		}
+	}
+
+	public final Connection getConnection()throws SQLException{
+		Connection conn = getResources().getConnection();
+		if(conn==null){
+			throw new SQLException("Could not open connection");
+		}
+		return conn;
+	}
+
+	/**
+	 * A statement execution that's reported to the statement listener
+	 * */
+	private interface Execution<R> {
+		R execute()throws SQLException;
+	}
+
+	/**
+	 * Runs the specified execution, timing it and reporting it to the statement listener if there is one
+	 * */
+	private <R> R listen(String sql, Object[] args, Execution<R> execution, ToIntFunction<R> rowCount)throws SQLException{
+		IStatementListener listener = statementListener;
+		if(listener==null){
+			return execution.execute();
+		}
+		IStatementListener.Cache cache = getResources().hasStatement(sql) ? IStatementListener.Cache.HIT : IStatementListener.Cache.MISS;
+		long start = System.nanoTime();
+		R result;
+		try{
+			result = execution.execute();
+		}catch(SQLException e){
+			listener.statementExecuted(sql, args, System.nanoTime()-start, -1, cache, e);
+			throw e;
+		}
+		listener.statementExecuted(sql, args, System.nanoTime()-start, rowCount.applyAsInt(result), cache, null);
+		return result;
+	}
+
+	/**
+	 * Executes the specified query and returns a list of objects of type <code>T</code>
+	 * created by the specified {@link IObjectCreator}
+	 * */
+	public <T> List<T> executeQuery(String sqlQuery, IObjectCreator<T> creator)throws SQLException{
+		return listen(sqlQuery, null, () -> {
+			ResultSet rs = query(sqlQuery);
+			try{
+				ArrayList<T> list = null;
+				while(rs.next()){
+					if(list==null){
+						list = new ArrayList<>();
+					}
+					list.add(creator.createObject(rs));
+				}
+				return list;
+			}finally{
+				//the rows have been mapped, close the cursor so the statement can be evicted
+				getResources().closeResultSet(sqlQuery);
+			}
+		}, list -> list==null ? 0 : list.size());
+	}
+
+	/**
+	 * Executes the specified query using the specified arguments and returns a list of
+	 * objects of type <code>T</code> created by the specified {@link IObjectCreator}. Use 
+	 * {@link #stream(String, Object[], IObjectCreator)} for large results.
+	 * */
+	public <T> List<T> executeQuery(String sqlQuery, Object[] args, IObjectCreator<T> creator)throws SQLException{
+		return listen(sqlQuery, args, () -> {
+			ResultSet rs = query(sqlQuery, args);
+			try{
+				ArrayList<T> list = null;
+				while(rs.next()){
+					if(list==null){
+						list = new ArrayList<>();
+					}
+					list.add(creator.createObject(rs));
+				}
+				return list;
+			}finally{
+				//the rows have been mapped, close the cursor so the statement can be evicted
+				getResources().closeResultSet(sqlQuery);
+			}
+		}, list -> list==null ? 0 : list.size());
+	}
+
+	/**
+	 * Executes the specified query and returns a {@link Stream} of objects of type <code>T</code> 
+	 * created by the specified {@link IObjectCreator} as the stream is consumed, so a result 
+	 * of any size is processed in constant memory. Rows are fetched from the database 
+	 * {@link #getFetchSize()} at a time.
+	 * <p>
+	 * The query runs on its own statement, which isn't cached, and the statement and its 
+	 * result set are closed when the last row has been read or when the stream is closed. 
+	 * The stream should be used in a try-with-resources block. A {@link SQLException} 
+	 * thrown while reading rows is rethrown as an {@link UncheckedSQLException}.
+	 * <p>
+	 * Some drivers only stream results inside a transaction (PostgreSQL) or with a 
+	 * driver-specific fetch size (MySQL's <code>Integer.MIN_VALUE</code>).
+	 * <pre>
+	 * try(Stream&lt;Order&gt; orders = dao.stream(sql, args, creator)){
+	 *     orders.forEach(this::process);
+	 * }
+	 * </pre>
+	 * */
+	public <T> Stream<T> stream(String sqlQuery, Object[] args, IObjectCreator<T> creator)throws SQLException{
+
+		if(logger.isDebugEnabled()){
+			logger.debug(String.format("stream(\"%s\", [%s])", sqlQuery, args!=null?Utils.join(args, ", "):"null"));
+		}
+
+		long start = System.nanoTime();
+		PreparedStatement stmt = getConnection().prepareStatement(sqlQuery, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+		ResultSet rs;
+		try{
+			if(queryTimeout > 0){
+				stmt.setQueryTimeout(queryTimeout);
+			}
+			if(fetchSize!=0){
+				stmt.setFetchSize(fetchSize);
+			}
+			JDBCUtils.bind(stmt, args);
+			rs = stmt.executeQuery();
+		}catch(SQLException e){
+			JDBCUtils.closeIgnoringException(stmt);
+			if(statementListener!=null){
+				statementListener.statementExecuted(sqlQuery, args, System.nanoTime()-start, -1, IStatementListener.Cache.UNCACHED, e);
+			}
+			throw e;
+		}catch(RuntimeException e){
+			JDBCUtils.closeIgnoringException(stmt);
+			throw e;
+		}
+
+		ResultSetSpliterator<T> spliterator = new ResultSetSpliterator<>(stmt, rs, creator, statementListener, sqlQuery, args, start);
+		return StreamSupport.stream(spliterator, false).onClose(spliterator::close);
+	}
+
+	/**
+	 * Executes the specified query and returns a {@link Stream} of objects of type <code>T</code>
+	 * 
+	 * @see #stream(String, Object[], IObjectCreator)
+	 * */
+	public <T> Stream<T> stream(String sqlQuery, IObjectCreator<T> creator)throws SQLException{
+		return stream(sqlQuery, null, creator);
+	}
+
+	/**
+	 * Reads the rows of a result set as they are requested, closing the result set and 
+	 * its statement after the last row and then reporting the whole stream to the listener
+	 * */
+	private static final class ResultSetSpliterator<T> extends Spliterators.AbstractSpliterator<T> {
+
+		private final Statement stmt;
+		private final ResultSet rs;
+		private final IObjectCreator<T> creator;
+		private final IStatementListener listener;
+		private final String sql;
+		private final Object[] args;
+		private final long start;
+		private int rows = 0;
+		private boolean closed = false;
+
+		ResultSetSpliterator(Statement stmt, ResultSet rs, IObjectCreator<T> creator, IStatementListener listener, String sql, Object[] args, long start) {
+			super(Long.MAX_VALUE, Spliterator.ORDERED);
+			this.stmt=stmt;
+			this.rs=rs;
+			this.creator=creator;
+			this.listener=listener;
+			this.sql=sql;
+			this.args=args;
+			this.start=start;
+		}
+
+		@Override
+		public boolean tryAdvance(Consumer<? super T> action) {
+			if(closed){
+				return false;
+			}
+			T obj;
+			try{
+				if(!rs.next()){
+					close();
+					return false;
+				}
+				obj = creator.createObject(rs);
+			}catch(SQLException e){
+				close(e);
+				throw new UncheckedSQLException(e);
+			}
+			rows++;
+			action.accept(obj);
+			return true;
+		}
+
+		void close(){
+			close(null);
+		}
+
+		private void close(SQLException error){
+			if(closed){
+				return;
+			}
+			closed = true;
+			JDBCUtils.closeIgnoringException(rs);
+			JDBCUtils.closeIgnoringException(stmt);
+			if(listener!=null){
+				listener.statementExecuted(sql, args, System.nanoTime()-start, error==null ? rows : -1, IStatementListener.Cache.UNCACHED, error);
+			}
+		}
+
+	}
+
+	/**
+	 * Executes the specified query on a cached statement and returns its result set, which 
+	 * stays open until it's closed, the same query is executed again or the resources are 
+	 * closed. While it's open its statement is not evicted from the statement cache; close 
+	 * result sets when done with them so the cache can stay within its size.
+	 * */
+	public ResultSet executeQuery(String sqlQuery)throws SQLException{
+		return listen(sqlQuery, null, () -> query(sqlQuery), rs -> -1);
+	}
+
+	private ResultSet query(String sqlQuery)throws SQLException{
+
+		if(logger.isDebugEnabled()){
+			logger.debug(String.format("executeQuery(\"%s\")", sqlQuery));
+		}
+
+		//get or create statement
+		Statement stmt = getResources().getStatement(sqlQuery);
+		if(stmt==null){
+			stmt = getConnection().createStatement(resultSetType, resultSetConcurrency);
+			if(queryTimeout > 0){
+				stmt.setQueryTimeout(queryTimeout);
+			}
+			getResources().setStatement(sqlQuery, stmt);
+		}
+
+		ResultSet rs = stmt.executeQuery(sqlQuery);
+
+		getResources().setResultSet(sqlQuery, rs);
+
+		return rs;
+	}
+
+	/**
+	 * Executes the specified query with the specified arguments, see {@link #executeQuery(String)}
+	 * */
+	public ResultSet executeQuery(String sqlQuery, Object[] args) throws SQLException{
+		return listen(sqlQuery, args, () -> query(sqlQuery, args), rs -> -1);
+	}
+
+	private ResultSet query(String sqlQuery, Object[] args) throws SQLException{
+
+		if(logger.isDebugEnabled()){
+			logger.debug(String.format("executeQuery(\"%s\", [%s])", sqlQuery, args!=null?Utils.join(args, ", "):"null"));
+		}
+
+		//get or prepare statement
+		PreparedStatement stmt = (PreparedStatement)getResources().getStatement(sqlQuery);
+		if(stmt==null){
+			stmt = getConnection().prepareStatement(sqlQuery, resultSetType, resultSetConcurrency);
+			getResources().setStatement(sqlQuery, stmt);
+		}else{
+			//clear existing parameters
+			stmt.clearParameters();
+		}
+
+		//set parameters
+		JDBCUtils.bind(stmt, args);
+
+		ResultSet rs = stmt.executeQuery();
+
+		getResources().setResultSet(sqlQuery, rs);
+
+		return rs;
+	}
+	
+	public int executeCountQuery(String sqlQuery)throws SQLException{
+		if(logger.isDebugEnabled()){
+			logger.debug(String.format("executeCountQuery(\"%s\")", sqlQuery));
+		}
+		return listen(sqlQuery, null, () -> {
+			ResultSet rs = query(sqlQuery);
+			try{
+				rs.next();
+				return rs.getInt(1);
+			}finally{
+				getResources().closeResultSet(sqlQuery);
+			}
+		}, count -> 1);
+	}
+	
+	public int executeCountQuery(String sqlQuery, Object[] args)throws SQLException{
+		return listen(sqlQuery, args, () -> {
+			ResultSet rs = query(sqlQuery, args);
+			try{
+				rs.next();
+				return rs.getInt(1);
+			}finally{
+				getResources().closeResultSet(sqlQuery);
+			}
+		}, count -> 1);
+	}
+
+	public int executeUpdate(String sqlUpdate) throws SQLException{
+		return listen(sqlUpdate, null, () -> update(sqlUpdate), count -> count);
+	}
+
+	private int update(String sqlUpdate) throws SQLException{
+
+		if(logger.isDebugEnabled()){
+			logger.debug(String.format("executeUpdate(\"%s\")", sqlUpdate));
+		}
+
+		//get or create statement
+		Statement stmt = getResources().getStatement(sqlUpdate);
+		if(stmt==null){
+			stmt = getConnection().createStatement(resultSetType, resultSetConcurrency);
+			if(queryTimeout > 0){
+				stmt.setQueryTimeout(queryTimeout);
+			}
+			getResources().setStatement(sqlUpdate, stmt);
+		}
+
+		return stmt.executeUpdate(sqlUpdate);
+	}
+
+	public int executeUpdate(String sqlUpdate, Object[] args) throws SQLException{
+		return listen(sqlUpdate, args, () -> update(sqlUpdate, args), count -> count);
+	}
+
+	private int update(String sqlUpdate, Object[] args) throws SQLException{
+
+		if(logger.isDebugEnabled()){
+			logger.debug(String.format("executeUpdate(\"%s\", [%s])", sqlUpdate, args!=null?Utils.join(args, ", "):"null"));
+		}
+
+		//prepare a statement
+		PreparedStatement stmt = (PreparedStatement)getResources().getStatement(sqlUpdate);
+		if(stmt==null){
+			stmt = getConnection().prepareStatement(sqlUpdate, resultSetType, resultSetConcurrency);
+			getResources().setStatement(sqlUpdate, stmt);
+		}else{
+			//clear existing parameters
+			stmt.clearParameters();
+		}
+
+		//set parameters
+		JDBCUtils.bind(stmt, args);
+
+		return stmt.executeUpdate();
+	}
+
+	/**
+	 * Executes the specified statement once for each row of arguments using JDBC batches of 
+	 * at most <code>batchSize</code> rows
+	 * 
+	 * @return the update counts of each batch
+	 * */
+	public int[][] executeBatch(String sqlUpdate, Iterable<Object[]> rows, int batchSize)throws SQLException{
+		return executeBatch(sqlUpdate, rows, batchSize, false);
+	}
+
+	/**
+	 * Executes the specified statement once for each row of arguments using JDBC batches of 
+	 * at most <code>batchSize</code> rows, committing after each batch if <code>commit</code> 
+	 * is true and the connection is not in auto-commit mode
+	 * 
+	 * @return the update counts of each batch
+	 * */
+	public int[][] executeBatch(String sqlUpdate, Iterable<Object[]> rows, int batchSize, boolean commit)throws SQLException{
+		return executeBatch(sqlUpdate, rows, JDBCUtils::bind, batchSize, commit);
+	}
+
+	/**
+	 * Executes the specified statement once for each object, bound by the specified 
+	 * {@link IObjectBinder}, using JDBC batches of at most <code>batchSize</code> rows
+	 * 
+	 * @return the update counts of each batch
+	 * */
+	public <T> int[][] executeBatch(String sqlUpdate, Iterable<T> objects, IObjectBinder<T> binder, int batchSize)throws SQLException{
+		return executeBatch(sqlUpdate, objects, binder, batchSize, false);
+	}
+
+	/**
+	 * Executes the specified statement once for each object, bound by the specified 
+	 * {@link IObjectBinder}, using JDBC batches of at most <code>batchSize</code> rows and 
+	 * committing after each batch if <code>commit</code> is true and the connection is not 
+	 * in auto-commit mode
+	 * 
+	 * @return the update counts of each batch
+	 * */
+	public <T> int[][] executeBatch(String sqlUpdate, Iterable<T> objects, IObjectBinder<T> binder, int batchSize, boolean commit)throws SQLException{
+		return listen(sqlUpdate, null, () -> batch(sqlUpdate, objects, binder, batchSize, commit), counts -> {
+			int rows = 0;
+			for (int[] batch : counts) {
+				for (int count : batch) {
+					if(count > 0){
+						rows += count;
+					}
+				}
+			}
+			return rows;
+		});
+	}
+
+	private <T> int[][] batch(String sqlUpdate, Iterable<T> objects, IObjectBinder<T> binder, int batchSize, boolean commit)throws SQLException{
+
+		if(logger.isDebugEnabled()){
+			logger.debug(String.format("executeBatch(\"%s\", %d)", sqlUpdate, batchSize));
+		}
+		if(batchSize < 1){
+			throw new IllegalArgumentException("Invalid batch size: "+batchSize);
+		}
+
+		//prepare a statement
+		PreparedStatement stmt = (PreparedStatement)getResources().getStatement(sqlUpdate);
+		if(stmt==null){
+			stmt = getConnection().prepareStatement(sqlUpdate, resultSetType, resultSetConcurrency);
+			getResources().setStatement(sqlUpdate, stmt);
+		}else{
+			//clear existing parameters
+			stmt.clearParameters();
+		}
+		boolean commitBatches = commit && !getConnection().getAutoCommit();
+
+		List<int[]> counts = new ArrayList<>();
+		int pending = 0;
+		try{
+			for (T obj : objects) {
+				binder.bind(stmt, obj);
+				stmt.addBatch();
+				if(++pending==batchSize){
+					counts.add(executeBatch(stmt, commitBatches));
+					pending = 0;
+				}
+			}
+			if(pending > 0){
+				counts.add(executeBatch(stmt, commitBatches));
+				pending = 0;
+			}
+		}finally{
+			if(pending > 0){
+				//a bind failed, don't leave rows in the cached statement's batch
+				stmt.clearBatch();
+			}
+		}
+		return counts.toArray(new int[counts.size()][]);
+	}
+
+	private int[] executeBatch(PreparedStatement stmt, boolean commit)throws SQLException{
+		int[] counts = stmt.executeBatch();
+		if(commit){
+			getConnection().commit();
+		}
+		if(logger.isDebugEnabled()){
+			logger.debug("executed batch of "+counts.length+(commit?", committed":""));
+		}
+		return counts;
+	}
+
+	public void commit()throws SQLException{
+		if(logger.isDebugEnabled()){
+			logger.debug("commit");
+		}
+		getResources().getConnection().commit();
+	}
+
+	public void rollback()throws SQLException{
+		if(logger.isDebugEnabled()){
+			logger.debug("rollback");
+		}
+		getResources().getConnection().rollback();
+	}
+
+	public int getResultSetConcurrency() {
+		return resultSetConcurrency;
+	}
+
+	public int getResultSetType() {
+		return resultSetType;
+	}
+
+	public void setResultSetConcurrency(int i) {
+		resultSetConcurrency = i;
+	}
+
+	public void setResultSetType(int i) {
+		resultSetType = i;
+	}
+
+	public int getQueryTimeout() {
+		return queryTimeout;
+	}
+
+	public void setQueryTimeout(int queryTimeout) {
+		this.queryTimeout = queryTimeout;
+	}
+
+	public int getFetchSize() {
+		return fetchSize;
+	}
+
+	/**
+	 * Sets the number of rows fetched at a time by {@link #stream(String, Object[], IObjectCreator)}, 
+	 * 0 for the driver's default
+	 * */
+	public void setFetchSize(int fetchSize) {
+		this.fetchSize = fetchSize;
+	}
+
+	public IStatementListener getStatementListener() {
+		return statementListener;
+	}
+
+	/**
+	 * Sets the listener notified after each statement is executed, null for none
+	 * */
+	public void setStatementListener(IStatementListener statementListener) {
+		this.statementListener = statementListener;
+	}
+
+	public int getStatementCacheSize() {
+		return statementCacheSize;
+	}
+
+	/**
+	 * Sets the maximum number of statements cached per connection. Statements whose result 
+	 * set is still open are not evicted, so the cache can grow past this size while callers 
+	 * hold more open result sets than that.
+	 * */
+	public void setStatementCacheSize(int statementCacheSize) {
+		this.statementCacheSize = statementCacheSize;
+	}
+
+}
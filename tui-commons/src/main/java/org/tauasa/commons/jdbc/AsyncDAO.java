@@ -0,0 +1,273 @@
+/*
+ * Copyright 2012 Tauasa Timoteo
+ * 
+ * Permission is hereby granted, free of charge, to any person 
+ * obtaining a copy of this software and associated documentation 
+ * files (the “Software”), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, 
+ * publish, distribute, sublicense, and/or sell copies of the Software,
+ * and to permit persons to whom the Software is furnished to do so, 
+ * subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be 
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, 
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES 
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NON-
+ * INFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS 
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN 
+ * AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF 
+ * OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS 
+ * IN THE SOFTWARE.
+ */
+package org.tauasa.commons.jdbc;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Asynchronous facade over an {@link AbstractDAO} whose methods return {@link CompletableFuture}s, 
+ * so independent queries can run at the same time:
+ * <pre>
+ * CompletableFuture&lt;List&lt;Order&gt;&gt; orders = async.executeQuery(ordersSql, args, orderCreator);
+ * CompletableFuture&lt;Integer&gt; count = async.executeCountQuery(countSql, args);
+ * CompletableFuture.allOf(orders, count).join();
+ * </pre>
+ * Each call runs in its own {@link DaoSession} on the executor, so its connection is 
+ * borrowed only while the query runs. At most {@link #getMaxConcurrency()} calls run at 
+ * once, which defaults to the size of a {@link PooledConnectionFactory} (also when it's 
+ * wrapped in an {@link InstrumentedConnectionFactory}) so calls queue here rather than 
+ * for a connection. Without an executor a fixed pool of that many 
+ * daemon threads is created; any {@link Executor} can be supplied instead, for example 
+ * a virtual thread per task executor on Java 21.
+ * <p>
+ * A failed call completes its future exceptionally with a {@link CompletionException} 
+ * caused by the {@link SQLException}.
+ *
+ * @author Tauasa Timoteo
+ * 
+ */
+public class AsyncDAO implements AutoCloseable {
+
+	private static final Logger logger = LoggerFactory.getLogger(AsyncDAO.class);
+
+	public static final int DEFAULT_MAX_CONCURRENCY = 10;
+
+	protected final AbstractDAO dao;
+	protected final Executor executor;
+	protected final int maxConcurrency;
+	private final Semaphore permits;
+	private final boolean ownExecutor;
+
+	public AsyncDAO(IConnectionFactory connectionFactory) {
+		this(new ThreadLocalDAO(connectionFactory));
+	}
+
+	/**
+	 * Runs sessions with the settings of the specified DAO on a new fixed pool of threads
+	 * */
+	public AsyncDAO(AbstractDAO dao) {
+		this(dao, null, maxConcurrency(dao.getConnectionFactory()));
+	}
+
+	/**
+	 * Runs sessions with the settings of the specified DAO on the specified executor, 
+	 * or a new fixed pool of threads if it's null, at most <code>maxConcurrency</code> 
+	 * at a time
+	 * */
+	public AsyncDAO(AbstractDAO dao, Executor executor, int maxConcurrency) {
+		if(maxConcurrency < 1){
+			throw new IllegalArgumentException("Invalid max concurrency: "+maxConcurrency);
+		}
+		this.dao=dao;
+		this.maxConcurrency=maxConcurrency;
+		this.permits = new Semaphore(maxConcurrency, true);
+		this.ownExecutor = executor==null;
+		if(executor==null){
+			AtomicInteger count = new AtomicInteger();
+			executor = Executors.newFixedThreadPool(maxConcurrency, r -> {
+				Thread thread = new Thread(r, "AsyncDAO-"+count.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+		this.executor=executor;
+	}
+
+	private static int maxConcurrency(IConnectionFactory connectionFactory){
+		//look through decorators for the pool
+		while(connectionFactory instanceof InstrumentedConnectionFactory){
+			connectionFactory = ((InstrumentedConnectionFactory)connectionFactory).getConnectionFactory();
+		}
+		if(connectionFactory instanceof PooledConnectionFactory){
+			return ((PooledConnectionFactory)connectionFactory).getMaxConnections();
+		}
+		return DEFAULT_MAX_CONCURRENCY;
+	}
+
+	/**
+	 * Runs the specified work in its own session on the executor
+	 * */
+	public <T> CompletableFuture<T> submit(ISessionWork<T> work){
+		return CompletableFuture.supplyAsync(() -> {
+			try{
+				permits.acquire();
+			}catch(InterruptedException e){
+				Thread.currentThread().interrupt();
+				throw new CompletionException(e);
+			}
+			try{
+				return dao.inSession(work);
+			}catch(SQLException e){
+				if(logger.isDebugEnabled()){
+					logger.debug("Asynchronous call failed", e);
+				}
+				throw new CompletionException(e);
+			}finally{
+				permits.release();
+			}
+		}, executor);
+	}
+
+	/**
+	 * Asynchronously executes the specified query and returns a list of objects of type 
+	 * <code>T</code> created by the specified {@link IObjectCreator}
+	 * 
+	 * @see AbstractDAO#executeQuery(String, Object[], IObjectCreator)
+	 * */
+	public <T> CompletableFuture<List<T>> executeQuery(String sqlQuery, Object[] args, IObjectCreator<T> creator){
+		return submit(session -> session.executeQuery(sqlQuery, args, creator));
+	}
+
+	/**
+	 * Asynchronously executes the specified query and returns a list of objects of type 
+	 * <code>T</code> created by the specified {@link IObjectCreator}
+	 * 
+	 * @see AbstractDAO#executeQuery(String, IObjectCreator)
+	 * */
+	public <T> CompletableFuture<List<T>> executeQuery(String sqlQuery, IObjectCreator<T> creator){
+		return submit(session -> session.executeQuery(sqlQuery, creator));
+	}
+
+	/**
+	 * Asynchronously executes the specified count query
+	 * 
+	 * @see AbstractDAO#executeCountQuery(String, Object[])
+	 * */
+	public CompletableFuture<Integer> executeCountQuery(String sqlQuery, Object[] args){
+		return submit(session -> session.executeCountQuery(sqlQuery, args));
+	}
+
+	/**
+	 * Asynchronously executes the specified count query
+	 * 
+	 * @see AbstractDAO#executeCountQuery(String)
+	 * */
+	public CompletableFuture<Integer> executeCountQuery(String sqlQuery){
+		return submit(session -> session.executeCountQuery(sqlQuery));
+	}
+
+	/**
+	 * Asynchronously executes the specified update. The session's connection is committed 
+	 * if it's not in auto-commit mode.
+	 * 
+	 * @see AbstractDAO#executeUpdate(String, Object[])
+	 * */
+	public CompletableFuture<Integer> executeUpdate(String sqlUpdate, Object[] args){
+		return submit(session -> {
+			int count = session.executeUpdate(sqlUpdate, args);
+			if(!session.getConnection().getAutoCommit()){
+				session.commit();
+			}
+			return count;
+		});
+	}
+
+	/**
+	 * Asynchronously executes the specified update. The session's connection is committed 
+	 * if it's not in auto-commit mode.
+	 * 
+	 * @see AbstractDAO#executeUpdate(String)
+	 * */
+	public CompletableFuture<Integer> executeUpdate(String sqlUpdate){
+		return executeUpdate(sqlUpdate, null);
+	}
+
+	/**
+	 * Returns a future that completes with the results of all of the specified futures, in 
+	 * order, or exceptionally as soon as one of them fails
+	 * */
+	@SafeVarargs
+	public static <T> CompletableFuture<List<T>> all(CompletableFuture<? extends T>... futures){
+		List<CompletableFuture<? extends T>> list = new ArrayList<>(futures.length);
+		for (CompletableFuture<? extends T> future : futures) {
+			list.add(future);
+		}
+		return all(list);
+	}
+
+	/**
+	 * Returns a future that completes with the results of all of the specified futures, in 
+	 * order, or exceptionally as soon as one of them fails
+	 * */
+	public static <T> CompletableFuture<List<T>> all(List<? extends CompletableFuture<? extends T>> futures){
+		CompletableFuture<List<T>> all = new CompletableFuture<>();
+		AtomicInteger remaining = new AtomicInteger(futures.size());
+		if(futures.isEmpty()){
+			all.complete(new ArrayList<>());
+			return all;
+		}
+		for (CompletableFuture<? extends T> future : futures) {
+			future.whenComplete((result, e) -> {
+				if(e!=null){
+					all.completeExceptionally(e);
+				}else if(remaining.decrementAndGet()==0){
+					List<T> results = new ArrayList<>(futures.size());
+					for (CompletableFuture<? extends T> f : futures) {
+						results.add(f.join());
+					}
+					all.complete(results);
+				}
+			});
+		}
+		return all;
+	}
+
+	public AbstractDAO getDAO(){
+		return dao;
+	}
+
+	public Executor getExecutor(){
+		return executor;
+	}
+
+	/**
+	 * Returns the maximum number of calls that run at the same time
+	 * */
+	public int getMaxConcurrency(){
+		return maxConcurrency;
+	}
+
+	/**
+	 * Shuts down the executor if it was created by this object, letting queued calls finish
+	 * */
+	@Override
+	public void close(){
+		if(ownExecutor){
+			((ExecutorService)executor).shutdown();
+		}
+	}
+
+}
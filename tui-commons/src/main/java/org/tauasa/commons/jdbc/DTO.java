@@ -105,7 +105,7 @@ public class DTO extends HashMap<String, Object> {
 	 * previous value (which may be null)
 	 * */
 	public Object setProperty(String name, Object value){
-		return super.put(name, value);
+		return put(name, value);
 	}
 
 	/**
@@ -113,7 +113,7 @@ public class DTO extends HashMap<String, Object> {
 	 * not exist.
 	 * */
 	public Object getProperty(String name){
-		return super.get(name);
+		return get(name);
 	}
 
 	/**
@@ -128,7 +128,7 @@ public class DTO extends HashMap<String, Object> {
 	 * */
 	public String[] getPropertyNames(){
 		String[] names = new String[size()];
-		Iterator<String> it = super.keySet().iterator();
+		Iterator<String> it = keySet().iterator();
 		int i=0;
 		while(it.hasNext()){
 			names[i] = it.next();
@@ -142,7 +142,7 @@ public class DTO extends HashMap<String, Object> {
 	 * Returns a java.util.Collection of all property objects
 	 * */
 	public Collection<Object> getProperties(){
-		return super.values();
+		return values();
 	}
 
 
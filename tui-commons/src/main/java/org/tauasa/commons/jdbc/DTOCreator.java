@@ -23,8 +23,10 @@
  */
 package org.tauasa.commons.jdbc;
 
+import org.tauasa.commons.data.ColumnIndex;
 import org.tauasa.commons.util.Utils;
 
+import java.lang.ref.WeakReference;
 import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
@@ -36,7 +38,11 @@ import org.slf4j.LoggerFactory;
 /**
  * {@link IObjectCreator} impl for creating {@link DTO} objects from a {@link ResultSet}.
  * Column names available in the {@link ResultSetMetaData} are mapped to the {@link DTO} property names. If column
- * names are unavailable the column index is used instead (starting at 1)
+ * names are unavailable the column index is used instead (starting at 1). {@link BeanCreator} maps rows 
+ * onto typed classes or records without a map per row.
+ * <p>
+ * By default the rows are {@link SchemaDTO}s that share the creator's {@link ColumnIndex}; 
+ * <code>new DTOCreator(false)</code> creates {@link java.util.HashMap} based DTOs instead.
  *
  * @author Tauasa Timoteo
  * 
@@ -45,43 +51,79 @@ public class DTOCreator implements IObjectCreator<DTO> {
 
 	private static final Logger logger = LoggerFactory.getLogger(DTOCreator.class);
 
-	private String[] columnNames;
+	private final boolean compact;
+	private ColumnIndex columns;
+	//the schema index written by each column, the last of duplicate names wins
+	private int[] slots;
+	//weak so a long-lived creator doesn't pin the last ResultSet (and its buffers) in memory
+	private WeakReference<ResultSet> boundTo = new WeakReference<>(null);
 
 	public DTOCreator(){
+		this(true);
+	}
 
+	/**
+	 * @param compact true to create {@link SchemaDTO}s, false for plain {@link DTO}s
+	 * */
+	public DTOCreator(boolean compact){
+		this.compact=compact;
 	}
 
-	private void loadColumnNames(ResultSetMetaData metadata)throws SQLException{
+	/**
+	 * Resolves the column names of the specified ResultSet once. The creator rebinds 
+	 * itself when it is handed a different ResultSet so an instance can be reused 
+	 * across queries.
+	 * */
+	private void bind(ResultSet rs)throws SQLException{
 		if(logger.isDebugEnabled()){
-			logger.debug("loadColumnNames");
+			logger.debug("bind");
 		}
-		columnNames = new String[metadata.getColumnCount()];
+		ResultSetMetaData metadata = rs.getMetaData();
+		String[] columnNames = new String[metadata.getColumnCount()];
 		for(int i=0;i<columnNames.length;i++){
 			columnNames[i] = metadata.getColumnName(i+1);
 		}
+		columns = new ColumnIndex(columnNames);
+		slots = new int[columnNames.length];
+		for(int i=0;i<slots.length;i++){
+			slots[i] = columns.indexOf(columnNames[i]);
+		}
+		boundTo = new WeakReference<>(rs);
+		if(logger.isDebugEnabled()){
+			logger.debug("columnNames: "+Utils.join(columnNames, ", "));
+		}
+	}
+
+	/**
+	 * Returns the columns resolved from the last bound ResultSet or null if no row has been created yet
+	 * */
+	public ColumnIndex getColumns(){
+		return columns;
 	}
 
         @Override
 	public DTO createObject(ResultSet rs) throws SQLException {
 
-		if(columnNames==null){
-			//load the column names
-			loadColumnNames(rs.getMetaData());
-			if(logger.isDebugEnabled()){
-				logger.debug("columnNames: "+Utils.join(columnNames, ", "));
+		if(rs!=boundTo.get()){
+			bind(rs);
+		}
+
+		if(compact){
+			Object[] values = new Object[slots.length];
+			for(int i=0;i<slots.length;i++){
+				values[slots[i]] = rs.getObject(i+1);
 			}
+			return new SchemaDTO(columns, values);
 		}
 
 		DTO dto = new DTO();
 
 		//load the DTO
-		for(int i=0;i<columnNames.length;i++){
-			dto.setProperty(columnNames[i], rs.getObject(i+1));
+		for(int i=0;i<columns.size();i++){
+			dto.setProperty(columns.getName(i), rs.getObject(i+1));
 		}
 
 		return dto;
 	}
 
-
-
 }
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2012 Tauasa Timoteo
+ * 
+ * Permission is hereby granted, free of charge, to any person 
+ * obtaining a copy of this software and associated documentation 
+ * files (the “Software”), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, 
+ * publish, distribute, sublicense, and/or sell copies of the Software,
+ * and to permit persons to whom the Software is furnished to do so, 
+ * subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be 
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, 
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES 
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NON-
+ * INFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS 
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN 
+ * AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF 
+ * OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS 
+ * IN THE SOFTWARE.
+ */
+package org.tauasa.commons.jdbc;
+
+import java.sql.SQLException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A unit of work against the database, obtained from {@link AbstractDAO#openSession()}. 
+ * The session borrows a connection from the DAO's {@link IConnectionFactory} the first time 
+ * a statement is run and returns it, along with its cached statements, when it's closed, 
+ * so a connection is held only while there's work to do.
+ * <p>
+ * A session isn't tied to a thread, but it isn't thread-safe either: it should be used by 
+ * one task at a time, and closed by the task that opened it, typically in a 
+ * try-with-resources block. Streams returned by the session must be consumed before 
+ * it's closed.
+ *
+ * @author Tauasa Timoteo
+ * 
+ */
+public class DaoSession extends AbstractDAO implements AutoCloseable {
+
+	private static final Logger logger = LoggerFactory.getLogger(DaoSession.class);
+
+	private JDBCResources resources;
+	private boolean closed = false;
+
+	protected DaoSession(AbstractDAO dao) {
+		super(dao.getConnectionFactory());
+		this.resultSetType = dao.resultSetType;
+		this.resultSetConcurrency = dao.resultSetConcurrency;
+		this.queryTimeout = dao.queryTimeout;
+		this.fetchSize = dao.fetchSize;
+		this.statementCacheSize = dao.statementCacheSize;
+		this.statementListener = dao.statementListener;
+	}
+
+	@Override
+	protected JDBCResources getResources()throws SQLException{
+		if(closed){
+			throw new SQLException("Session is closed");
+		}
+		if(resources==null){
+			resources = createResources();
+		}
+		return resources;
+	}
+
+	/**
+	 * Returns true if the session currently holds a connection
+	 * */
+	public boolean isConnected(){
+		return resources!=null;
+	}
+
+	public boolean isClosed(){
+		return closed;
+	}
+
+	/**
+	 * Closes the session's statements and returns its connection to the connection factory
+	 * */
+	@Override
+	public void close()throws SQLException{
+		if(closed){
+			return;
+		}
+		closed = true;
+		if(resources!=null){
+			if(logger.isDebugEnabled()){
+				logger.debug("Closing session");
+			}
+			JDBCResources r = resources;
+			resources = null;
+			r.close();
+		}
+	}
+
+}
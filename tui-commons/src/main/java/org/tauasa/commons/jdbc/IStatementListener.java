@@ -0,0 +1,80 @@
+/*
+ * Copyright 2012 Tauasa Timoteo
+ * 
+ * Permission is hereby granted, free of charge, to any person 
+ * obtaining a copy of this software and associated documentation 
+ * files (the “Software”), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, 
+ * publish, distribute, sublicense, and/or sell copies of the Software,
+ * and to permit persons to whom the Software is furnished to do so, 
+ * subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be 
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, 
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES 
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NON-
+ * INFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS 
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN 
+ * AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF 
+ * OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS 
+ * IN THE SOFTWARE.
+ */
+package org.tauasa.commons.jdbc;
+
+import java.sql.SQLException;
+
+/**
+ * Receives a callback for every statement executed by an {@link AbstractDAO}, see 
+ * {@link AbstractDAO#setStatementListener(IStatementListener)}. Callbacks run on the 
+ * thread that executed the statement, so implementations should be fast and thread-safe.
+ *
+ * @author Tauasa Timoteo
+ *
+ */
+public interface IStatementListener {
+
+	/**
+	 * Called after a statement has been executed
+	 * 
+	 * @param sql the SQL of the statement
+	 * @param args the bound arguments, or null
+	 * @param elapsedNanos the time spent executing the statement, including reading and 
+	 * mapping the rows when the DAO did that
+	 * @param rowCount the number of rows read or updated, or -1 if the rows were left to the caller
+	 * @param cache whether the statement came from the statement cache, see {@link Cache}
+	 * @param error the exception thrown by the statement, or null if it succeeded
+	 * */
+	public void statementExecuted(String sql, Object[] args, long elapsedNanos, int rowCount, Cache cache, SQLException error);
+
+	/**
+	 * Returns a listener that calls each of the specified listeners in turn, e.g. to 
+	 * collect {@link JDBCMetrics} and keep a {@link SlowQueryLog} for the same DAO
+	 * */
+	public static IStatementListener all(IStatementListener... listeners){
+		IStatementListener[] copy = listeners.clone();
+		return (sql, args, elapsedNanos, rowCount, cache, error) -> {
+			for (IStatementListener listener : copy) {
+				listener.statementExecuted(sql, args, elapsedNanos, rowCount, cache, error);
+			}
+		};
+	}
+
+	/**
+	 * How a statement used the statement cache
+	 * */
+	public static enum Cache {
+
+		/** the statement came from the cache */
+		HIT,
+
+		/** the statement was created and added to the cache */
+		MISS,
+
+		/** the statement doesn't use the cache, e.g. the statement of a stream */
+		UNCACHED
+
+	}
+
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright 2012 Tauasa Timoteo
+ * 
+ * Permission is hereby granted, free of charge, to any person 
+ * obtaining a copy of this software and associated documentation 
+ * files (the “Software”), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, 
+ * publish, distribute, sublicense, and/or sell copies of the Software,
+ * and to permit persons to whom the Software is furnished to do so, 
+ * subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be 
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, 
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES 
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NON-
+ * INFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS 
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN 
+ * AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF 
+ * OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS 
+ * IN THE SOFTWARE.
+ */
+package org.tauasa.commons.jdbc;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * {@link IConnectionFactory} decorator that reports how long it takes to obtain each 
+ * connection to a {@link JDBCMetrics}, along with the state of the pool if the 
+ * decorated factory is a {@link PooledConnectionFactory}
+ *
+ * @author Tauasa Timoteo
+ * 
+ */
+public class InstrumentedConnectionFactory implements IConnectionFactory {
+
+	private final IConnectionFactory connectionFactory;
+	private final JDBCMetrics metrics;
+
+	public InstrumentedConnectionFactory(IConnectionFactory connectionFactory, JDBCMetrics metrics) {
+		this.connectionFactory=connectionFactory;
+		this.metrics=metrics;
+		if(connectionFactory instanceof PooledConnectionFactory){
+			metrics.monitor((PooledConnectionFactory)connectionFactory);
+		}
+	}
+
+	public IConnectionFactory getConnectionFactory(){
+		return connectionFactory;
+	}
+
+	@Override
+	public Connection getConnection() throws SQLException {
+		long start = System.nanoTime();
+		try{
+			Connection conn = connectionFactory.getConnection();
+			metrics.connectionAcquired(System.nanoTime()-start, null);
+			return conn;
+		}catch(SQLException e){
+			metrics.connectionAcquired(System.nanoTime()-start, e);
+			throw e;
+		}
+	}
+
+	@Override
+	public void release() throws SQLException {
+		connectionFactory.release();
+	}
+
+}
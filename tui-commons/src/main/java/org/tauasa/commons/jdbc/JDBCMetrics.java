@@ -0,0 +1,550 @@
+/*
+ * Copyright 2012 Tauasa Timoteo
+ * 
+ * Permission is hereby granted, free of charge, to any person 
+ * obtaining a copy of this software and associated documentation 
+ * files (the “Software”), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, 
+ * publish, distribute, sublicense, and/or sell copies of the Software,
+ * and to permit persons to whom the Software is furnished to do so, 
+ * subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be 
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, 
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES 
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NON-
+ * INFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS 
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN 
+ * AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF 
+ * OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS 
+ * IN THE SOFTWARE.
+ */
+package org.tauasa.commons.jdbc;
+
+import java.io.Closeable;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.timgroup.statsd.StatsDClient;
+
+/**
+ * Collects JDBC metrics and periodically flushes them to statsd: latency histograms, row 
+ * counts and errors per SQL fingerprint, statement cache hits and misses, connection 
+ * acquire time and the state of monitored connection pools.
+ * <pre>
+ * JDBCMetrics metrics = new JDBCMetrics(new NonBlockingStatsDClient("app", host, 8125), "jdbc", 10000);
+ * ThreadLocalDAO dao = new ThreadLocalDAO(new InstrumentedConnectionFactory(pool, metrics));
+ * dao.setStatementListener(metrics);
+ * </pre>
+ * The fingerprint of a statement is its SQL with literals replaced by <code>?</code>, so 
+ * statements that only differ by inlined values share their metrics. Recording only 
+ * looks up the statement's SQL in a fixed-size cache and bumps {@link LongAdder}s; SQL 
+ * that isn't in the cache is queued and fingerprinted by a background thread, which then 
+ * caches it, so the regular expressions don't run on the thread that executed the statement 
+ * (without a statsd client there is no such thread, and recording threads take turns to 
+ * fingerprint the queue in batches). 
+ * The statsd packets are built and sent by that thread every flush interval, as counters of 
+ * what happened since the last flush and gauges of the interval's latency percentiles:
+ * <pre>
+ * jdbc.statement.select.orders.1a2b3c4d.count|rows|errors   counters
+ * jdbc.statement.select.orders.1a2b3c4d.p50|p95|p99|max     gauges (ms)
+ * jdbc.connection.acquire.count|errors, .p50|p99|max        
+ * jdbc.statement.cache.hits|misses                          counters
+ * jdbc.statement.dropped                                    counter
+ * jdbc.pool.active|total|waiting                            gauges
+ * </pre>
+ *
+ * @author Tauasa Timoteo
+ * 
+ */
+public class JDBCMetrics implements IStatementListener, Closeable {
+
+	private static final Logger logger = LoggerFactory.getLogger(JDBCMetrics.class);
+
+	//raw SQL strings remembered with their statistics, a power of two
+	private static final int SQL_CACHE_SIZE = 4096;
+
+	//executions of SQL that isn't cached yet waiting to be fingerprinted, more are dropped
+	private static final int MAX_PENDING = 100000;
+
+	//how often the flush thread fingerprints pending executions
+	private static final long RESOLVE_INTERVAL = 100;
+
+	//without a flush thread, the recording thread fingerprints the pending executions once there are this many
+	private static final int RESOLVE_BATCH = 1024;
+
+	//fingerprints kept, the least recently executed tenth is dropped when there are more
+	private static final int MAX_FINGERPRINTS = 2000;
+
+	private static final Pattern STRING_LITERAL = Pattern.compile("'(?:[^']|'')*'");
+	private static final Pattern NUMBER_LITERAL = Pattern.compile("(?<![\\w.])-?\\d+(?:\\.\\d+)?(?:[eE][-+]?\\d+)?\\b");
+	private static final Pattern IN_LIST = Pattern.compile("\\(\\s*\\?(?:\\s*,\\s*\\?)+\\s*\\)");
+	private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+	private static final Pattern TABLE = Pattern.compile("\\b(?:from|into|update|join)\\s+([\\w.\"`\\[\\]]+)");
+	private static final Pattern UNSAFE_NAME = Pattern.compile("[^A-Za-z0-9_.]");
+
+	protected final StatsDClient statsd;
+	protected final String prefix;
+
+	//direct-mapped by hash code, a colliding statement replaces the one in its slot
+	private final AtomicReferenceArray<CachedSql> sqlCache = new AtomicReferenceArray<>(SQL_CACHE_SIZE);
+	private final ConcurrentLinkedQueue<Execution> pending = new ConcurrentLinkedQueue<>();
+	private final AtomicInteger pendingCount = new AtomicInteger();
+	private final LongAdder dropped = new LongAdder();
+	private final ConcurrentHashMap<String, StatementStats> byFingerprint = new ConcurrentHashMap<>();
+	private final LongAdder cacheHits = new LongAdder();
+	private final LongAdder cacheMisses = new LongAdder();
+	private final Stats connections = new Stats("connection.acquire");
+	private final List<PooledConnectionFactory> pools = new CopyOnWriteArrayList<>();
+	private final ScheduledExecutorService flusher;
+
+	//guards resolving, evicting and flushing
+	private final ReentrantLock lock = new ReentrantLock();
+	private long flushedHits;
+	private long flushedMisses;
+	private long flushedDropped;
+
+	/**
+	 * Collects metrics without sending them anywhere, to be read with {@link #getStatementStats()}
+	 * */
+	public JDBCMetrics() {
+		this(null, null, 0);
+	}
+
+	/**
+	 * Collects metrics and sends them to the specified client every <code>flushInterval</code> 
+	 * milliseconds, with names starting with the specified prefix
+	 * */
+	public JDBCMetrics(StatsDClient statsd, String prefix, long flushInterval) {
+		this.statsd=statsd;
+		this.prefix = prefix==null || prefix.isEmpty() ? "" : prefix+".";
+		if(statsd!=null && flushInterval > 0){
+			flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+				Thread thread = new Thread(r, "JDBCMetrics-flush");
+				thread.setDaemon(true);
+				return thread;
+			});
+			flusher.scheduleWithFixedDelay(this::flushQuietly, flushInterval, flushInterval, TimeUnit.MILLISECONDS);
+			flusher.scheduleWithFixedDelay(this::resolveQuietly, RESOLVE_INTERVAL, RESOLVE_INTERVAL, TimeUnit.MILLISECONDS);
+		}else{
+			flusher = null;
+		}
+	}
+
+	@Override
+	public void statementExecuted(String sql, Object[] args, long elapsedNanos, int rowCount, Cache cache, SQLException error) {
+		CachedSql cached = sqlCache.get(sql.hashCode() & (SQL_CACHE_SIZE-1));
+		if(cached!=null && cached.sql.equals(sql)){
+			cached.stats.record(elapsedNanos, rowCount, error);
+		}else if(pendingCount.incrementAndGet() <= MAX_PENDING){
+			pending.offer(new Execution(sql, elapsedNanos, rowCount, error));
+			if(flusher==null && pendingCount.get() >= RESOLVE_BATCH && lock.tryLock()){
+				//nothing else drains the queue
+				try{
+					resolve();
+				}finally{
+					lock.unlock();
+				}
+			}
+		}else{
+			pendingCount.decrementAndGet();
+			dropped.increment();
+		}
+		if(cache==Cache.HIT){
+			cacheHits.increment();
+		}else if(cache==Cache.MISS){
+			cacheMisses.increment();
+		}
+	}
+
+	/**
+	 * Records the time taken to obtain a connection
+	 * */
+	public void connectionAcquired(long elapsedNanos, SQLException error){
+		connections.record(elapsedNanos, -1, error);
+	}
+
+	/**
+	 * Reports the state of the specified pool on every flush
+	 * */
+	public void monitor(PooledConnectionFactory pool){
+		if(!pools.contains(pool)){
+			pools.add(pool);
+		}
+	}
+
+	/**
+	 * Fingerprints the pending executions, records them and caches their SQL. Called with the lock held.
+	 * */
+	private void resolve(){
+		Execution execution;
+		while((execution = pending.poll())!=null){
+			pendingCount.decrementAndGet();
+			int slot = execution.sql.hashCode() & (SQL_CACHE_SIZE-1);
+			CachedSql cached = sqlCache.get(slot);
+			if(cached==null || !cached.sql.equals(execution.sql)){
+				String fingerprint = fingerprint(execution.sql);
+				StatementStats stats = byFingerprint.get(fingerprint);
+				if(stats==null){
+					if(byFingerprint.size() >= MAX_FINGERPRINTS){
+						evict();
+					}
+					stats = new StatementStats(fingerprint);
+					byFingerprint.put(fingerprint, stats);
+				}
+				cached = new CachedSql(execution.sql, stats);
+				sqlCache.set(slot, cached);
+			}
+			cached.stats.record(execution.elapsedNanos, execution.rowCount, execution.error);
+		}
+	}
+
+	/**
+	 * Drops the tenth of the fingerprints executed least recently, along with the cached SQL 
+	 * pointing at them. Called with the lock held.
+	 * */
+	private void evict(){
+		long now = System.currentTimeMillis();
+		List<StatementStats> all = new ArrayList<>(byFingerprint.values());
+		for (StatementStats stats : all) {
+			stats.observe(now);
+		}
+		all.sort(Comparator.comparingLong(stats -> stats.lastActive));
+		Set<StatementStats> evicted = Collections.newSetFromMap(new IdentityHashMap<>());
+		for(int i=0;i<all.size()/10+1;i++){
+			StatementStats stats = all.get(i);
+			byFingerprint.remove(stats.fingerprint, stats);
+			evicted.add(stats);
+		}
+		for(int i=0;i<SQL_CACHE_SIZE;i++){
+			CachedSql cached = sqlCache.get(i);
+			if(cached!=null && evicted.contains(cached.stats)){
+				sqlCache.compareAndSet(i, cached, null);
+			}
+		}
+		if(logger.isDebugEnabled()){
+			logger.debug("evicted "+evicted.size()+" idle statement fingerprints");
+		}
+	}
+
+	private void resolveQuietly(){
+		lock.lock();
+		try{
+			resolve();
+		}catch(RuntimeException e){
+			logger.warn("Unable to fingerprint statements", e);
+		}finally{
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Returns the specified SQL with string and number literals replaced by <code>?</code>, 
+	 * lists of parameters collapsed, whitespace normalized and in lower case
+	 * */
+	public static String fingerprint(String sql){
+		String s = STRING_LITERAL.matcher(sql).replaceAll("?");
+		s = NUMBER_LITERAL.matcher(s).replaceAll("?");
+		s = IN_LIST.matcher(s).replaceAll("(?+)");
+		return WHITESPACE.matcher(s).replaceAll(" ").trim().toLowerCase(Locale.ROOT);
+	}
+
+	/**
+	 * Returns the statistics of each statement fingerprint, including executions still 
+	 * waiting to be fingerprinted. At most {@value #MAX_FINGERPRINTS} fingerprints are kept; 
+	 * the ones executed least recently are dropped to make room for new ones.
+	 * */
+	public Collection<StatementStats> getStatementStats(){
+		lock.lock();
+		try{
+			resolve();
+			return new ArrayList<>(byFingerprint.values());
+		}finally{
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Returns the number of executions that weren't recorded because too many were waiting 
+	 * to be fingerprinted
+	 * */
+	public long getDropped(){
+		return dropped.sum();
+	}
+
+	/**
+	 * Returns the statistics of connection acquisition
+	 * */
+	public Stats getConnectionStats(){
+		return connections;
+	}
+
+	public long getCacheHits(){
+		return cacheHits.sum();
+	}
+
+	public long getCacheMisses(){
+		return cacheMisses.sum();
+	}
+
+	/**
+	 * Returns the fraction of the statements using the statement cache that came from it
+	 * */
+	public double getCacheHitRate(){
+		long hits = cacheHits.sum();
+		long total = hits + cacheMisses.sum();
+		return total==0 ? 0 : hits / (double)total;
+	}
+
+	private void flushQuietly(){
+		try{
+			flush();
+		}catch(RuntimeException e){
+			logger.warn("Unable to flush JDBC metrics", e);
+		}
+	}
+
+	/**
+	 * Sends what has been recorded since the last flush to statsd. Statements and counters 
+	 * with nothing new since the last flush are skipped.
+	 * */
+	public void flush(){
+		if(statsd==null){
+			return;
+		}
+		lock.lock();
+		try{
+			resolve();
+			long now = System.currentTimeMillis();
+			for (StatementStats stats : byFingerprint.values()) {
+				stats.observe(now);
+				stats.flush(statsd, prefix+"statement.");
+			}
+			connections.flush(statsd, prefix);
+			flushCounters();
+		}finally{
+			lock.unlock();
+		}
+	}
+
+	private void flushCounters(){
+		long hits = cacheHits.sum();
+		long misses = cacheMisses.sum();
+		if(hits!=flushedHits){
+			statsd.count(prefix+"statement.cache.hits", hits-flushedHits);
+			flushedHits = hits;
+		}
+		if(misses!=flushedMisses){
+			statsd.count(prefix+"statement.cache.misses", misses-flushedMisses);
+			flushedMisses = misses;
+		}
+
+		long drops = dropped.sum();
+		if(drops!=flushedDropped){
+			statsd.count(prefix+"statement.dropped", drops-flushedDropped);
+			flushedDropped = drops;
+		}
+
+		for (PooledConnectionFactory pool : pools) {
+			statsd.recordGaugeValue(prefix+"pool.active", pool.getActiveConnections());
+			statsd.recordGaugeValue(prefix+"pool.total", pool.getTotalConnections());
+			statsd.recordGaugeValue(prefix+"pool.waiting", pool.getWaitingThreads());
+		}
+		if(logger.isDebugEnabled()){
+			logger.debug("flushed metrics for "+byFingerprint.size()+" statements");
+		}
+	}
+
+	/**
+	 * Stops flushing, sending what's left first
+	 * */
+	@Override
+	public void close(){
+		if(flusher!=null){
+			flusher.shutdownNow();
+			flushQuietly();
+		}
+	}
+
+	private static final class CachedSql {
+
+		final String sql;
+		final StatementStats stats;
+
+		CachedSql(String sql, StatementStats stats) {
+			this.sql=sql;
+			this.stats=stats;
+		}
+
+	}
+
+	/**
+	 * An execution of a statement whose SQL wasn't cached
+	 * */
+	private static final class Execution {
+
+		final String sql;
+		final long elapsedNanos;
+		final int rowCount;
+		final SQLException error;
+
+		Execution(String sql, long elapsedNanos, int rowCount, SQLException error) {
+			this.sql=sql;
+			this.elapsedNanos=elapsedNanos;
+			this.rowCount=rowCount;
+			this.error=error;
+		}
+
+	}
+
+	/**
+	 * Latency, rows and errors of one kind of operation
+	 * */
+	public static class Stats {
+
+		protected final String name;
+		protected final LatencyHistogram latency = new LatencyHistogram();
+		protected final LongAdder rows = new LongAdder();
+		protected final LongAdder errors = new LongAdder();
+
+		//last flushed values and when executions were last seen, only used with the lock held
+		private long[] flushedBuckets;
+		private long flushedRows;
+		private long flushedErrors;
+		private long observedCount;
+		long lastActive = System.currentTimeMillis();
+
+		Stats(String name) {
+			this.name=name;
+		}
+
+		void record(long elapsedNanos, int rowCount, SQLException error){
+			latency.record(elapsedNanos);
+			if(rowCount > 0){
+				rows.add(rowCount);
+			}
+			if(error!=null){
+				errors.increment();
+			}
+		}
+
+		/**
+		 * Notes the specified time as the last activity if there have been executions since the last call
+		 * */
+		void observe(long now){
+			long count = latency.getCount();
+			if(count!=observedCount){
+				observedCount = count;
+				lastActive = now;
+			}
+		}
+
+		void flush(StatsDClient statsd, String prefix){
+			long[] buckets = latency.getBuckets();
+			long[] delta = buckets.clone();
+			long count = 0;
+			for(int i=0;i<delta.length;i++){
+				if(flushedBuckets!=null){
+					delta[i] -= flushedBuckets[i];
+				}
+				count += delta[i];
+			}
+			flushedBuckets = buckets;
+			if(count==0){
+				//idle since the last flush, rows and errors are only recorded with an execution
+				return;
+			}
+			long r = rows.sum();
+			long e = errors.sum();
+			String aspect = prefix+name;
+			statsd.count(aspect+".count", count);
+			statsd.count(aspect+".rows", r-flushedRows);
+			statsd.count(aspect+".errors", e-flushedErrors);
+			flushedRows = r;
+			flushedErrors = e;
+			statsd.recordGaugeValue(aspect+".p50", LatencyHistogram.percentileMillis(delta, 50));
+			statsd.recordGaugeValue(aspect+".p95", LatencyHistogram.percentileMillis(delta, 95));
+			statsd.recordGaugeValue(aspect+".p99", LatencyHistogram.percentileMillis(delta, 99));
+			statsd.recordGaugeValue(aspect+".max", LatencyHistogram.percentileMillis(delta, 100));
+		}
+
+		/**
+		 * Returns the metric name
+		 * */
+		public String getName(){
+			return name;
+		}
+
+		public LatencyHistogram getLatency(){
+			return latency;
+		}
+
+		public long getCount(){
+			return latency.getCount();
+		}
+
+		public long getRows(){
+			return rows.sum();
+		}
+
+		public long getErrors(){
+			return errors.sum();
+		}
+
+	}
+
+	/**
+	 * Statistics of the statements with one fingerprint
+	 * */
+	public static class StatementStats extends Stats {
+
+		protected final String fingerprint;
+
+		StatementStats(String fingerprint) {
+			super(name(fingerprint));
+			this.fingerprint=fingerprint;
+		}
+
+		/**
+		 * Returns a statsd-safe name for the specified fingerprint: the statement type, 
+		 * the first table and a hash that tells apart statements with the same type and table
+		 * */
+		private static String name(String fingerprint){
+			int space = fingerprint.indexOf(' ');
+			String verb = space < 0 ? fingerprint : fingerprint.substring(0, space);
+			Matcher table = TABLE.matcher(fingerprint);
+			String name = verb + "." + (table.find() ? table.group(1) : "none");
+			return UNSAFE_NAME.matcher(name).replaceAll("_") + "." + String.format("%08x", fingerprint.hashCode());
+		}
+
+		public String getFingerprint(){
+			return fingerprint;
+		}
+
+	}
+
+}
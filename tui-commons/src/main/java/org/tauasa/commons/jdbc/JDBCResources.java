@@ -29,20 +29,51 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  * A named wrapper class for a {@link Connection} and its associated resources (i.e.
  * {@link Statement}, {@link PreparedStatement}, {@link ResultSet}).
+ * <p>
+ * Statements are cached by key in a least-recently-used cache of at most 
+ * {@link #getStatementCacheSize()} entries; an evicted statement is closed along with 
+ * its result set. Statements whose result set is still open are never evicted, so a 
+ * caller can keep reading a cursor while running any number of other statements; the 
+ * cache grows past its size while every statement has an open result set. Setting a new 
+ * result set for a key closes the one it replaces.
  *
  * @author Tauasa Timoteo
  * 
  */
 public final class JDBCResources {
 
+	private static final Logger logger = LoggerFactory.getLogger(JDBCResources.class);
+
+	public static final int DEFAULT_STATEMENT_CACHE_SIZE = 256;
+
 	protected String name;
 	protected Connection conn;
-	protected HashMap<String, Statement> statements = new HashMap<>();
+	protected int statementCacheSize = DEFAULT_STATEMENT_CACHE_SIZE;
+	protected HashMap<String, Statement> statements = new LinkedHashMap<String, Statement>(16, 0.75f, true){
+		private static final long serialVersionUID = 1L;
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, Statement> eldest) {
+			if(size() > statementCacheSize){
+				//removes the entry itself, it may not be the eldest, and never the one just added
+				evictEldestIdle(size()-1);
+			}
+			return false;
+		}
+	};
 	protected HashMap<String, ResultSet> resultSets = new HashMap<>();
+	protected long hits;
+	protected long misses;
+	protected long evictions;
 	private boolean closed = false;
 
 	public JDBCResources(Connection conn){
@@ -84,15 +115,148 @@ public final class JDBCResources {
 	}
 
 	public void setStatement(String key, Statement stmt){
-		statements.put(key, stmt);
+		Statement previous = statements.put(key, stmt);
+		if(previous!=null && previous!=stmt){
+			closeStatement(key, previous);
+		}
 	}
 
+	/**
+	 * Sets the result set for the specified key, closing the one it replaces
+	 * */
 	public void setResultSet(String key, ResultSet rs){
-		resultSets.put(key, rs);
+		ResultSet previous = resultSets.put(key, rs);
+		if(previous!=null && previous!=rs){
+			JDBCUtils.closeIgnoringException(previous);
+		}
+	}
+
+	/**
+	 * Closes the result set for the specified key and forgets it, keeping its statement cached
+	 * */
+	public void closeResultSet(String key){
+		ResultSet rs = resultSets.remove(key);
+		if(rs!=null){
+			JDBCUtils.closeIgnoringException(rs);
+		}
 	}
 
+	/**
+	 * Returns the cached statement for the specified key or null, counting a hit or a miss
+	 * */
 	public Statement getStatement(String key){
-		return statements.get(key);
+		Statement stmt = statements.get(key);
+		if(stmt==null){
+			misses++;
+		}else{
+			hits++;
+		}
+		return stmt;
+	}
+
+	/**
+	 * Returns true if a statement is cached for the specified key, without counting a hit or a miss
+	 * */
+	public boolean hasStatement(String key){
+		return statements.containsKey(key);
+	}
+
+	/**
+	 * Removes the statement for the specified key from the cache and closes it along with 
+	 * its result set
+	 * */
+	public void removeStatement(String key){
+		Statement stmt = statements.remove(key);
+		if(stmt!=null){
+			closeStatement(key, stmt);
+		}
+	}
+
+	/**
+	 * Evicts the least recently used of the <code>limit</code> eldest statements that has no 
+	 * open result set, returns false if they all have one
+	 * */
+	private boolean evictEldestIdle(int limit){
+		Iterator<Map.Entry<String, Statement>> i = statements.entrySet().iterator();
+		for(int n=0;n<limit && i.hasNext();n++){
+			Map.Entry<String, Statement> entry = i.next();
+			if(!isOpen(resultSets.get(entry.getKey()))){
+				i.remove();
+				evict(entry.getKey(), entry.getValue());
+				return true;
+			}
+		}
+		if(logger.isDebugEnabled()){
+			logger.debug("All "+statements.size()+" cached statements have open result sets, none evicted");
+		}
+		return false;
+	}
+
+	private static boolean isOpen(ResultSet rs){
+		try{
+			return rs!=null && !rs.isClosed();
+		}catch(SQLException e){
+			return false;
+		}
+	}
+
+	private void evict(String key, Statement stmt){
+		evictions++;
+		if(logger.isDebugEnabled()){
+			logger.debug("Evicting statement \""+key+"\"");
+		}
+		closeStatement(key, stmt);
+	}
+
+	private void closeStatement(String key, Statement stmt){
+		ResultSet rs = resultSets.remove(key);
+		if(rs!=null){
+			JDBCUtils.closeIgnoringException(rs);
+		}
+		JDBCUtils.closeIgnoringException(stmt);
+	}
+
+	/**
+	 * Returns the number of statements in the cache
+	 * */
+	public int getStatementCount(){
+		return statements.size();
+	}
+
+	public int getStatementCacheSize() {
+		return statementCacheSize;
+	}
+
+	/**
+	 * Sets the maximum number of cached statements, evicting the least recently used 
+	 * statements without an open result set if there are more
+	 * */
+	public void setStatementCacheSize(int statementCacheSize) {
+		this.statementCacheSize = Math.max(1, statementCacheSize);
+		while(statements.size() > this.statementCacheSize && evictEldestIdle(statements.size())){
+			//evicted one
+		}
+	}
+
+	/**
+	 * Returns the number of statement cache hits
+	 * */
+	public long getHits() {
+		return hits;
+	}
+
+	/**
+	 * Returns the number of statement cache misses
+	 * */
+	public long getMisses() {
+		return misses;
+	}
+
+	/**
+	 * Returns the number of statements closed because the cache was full
+	 * */
+	public long getEvictions() {
+		return evictions;
 	}
 
 	public ResultSet getResultSet(String key){
@@ -0,0 +1,153 @@
+/*
+ * Copyright 2012 Tauasa Timoteo
+ * 
+ * Permission is hereby granted, free of charge, to any person 
+ * obtaining a copy of this software and associated documentation 
+ * files (the “Software”), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, 
+ * publish, distribute, sublicense, and/or sell copies of the Software,
+ * and to permit persons to whom the Software is furnished to do so, 
+ * subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be 
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, 
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES 
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NON-
+ * INFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS 
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN 
+ * AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF 
+ * OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS 
+ * IN THE SOFTWARE.
+ */
+package org.tauasa.commons.jdbc;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free latency histogram with four buckets per power of two of microseconds (a 
+ * relative error of at most 25%), backed by striped {@link LongAdder}s so concurrent 
+ * threads recording values don't contend. A bucket's adder is only created when the 
+ * first value falls into it, so a histogram is cheap to create.
+ *
+ * @author Tauasa Timoteo
+ * 
+ */
+public class LatencyHistogram {
+
+	//2^36 microseconds is about 19 hours
+	private static final int MAX_EXPONENT = 36;
+	private static final int BUCKETS = 4 + (MAX_EXPONENT-1)*4;
+
+	private final AtomicReferenceArray<LongAdder> buckets = new AtomicReferenceArray<>(BUCKETS);
+	private final LongAdder count = new LongAdder();
+	private final LongAdder totalNanos = new LongAdder();
+	private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+
+	public LatencyHistogram() {
+	}
+
+	/**
+	 * Records the specified latency
+	 * */
+	public void record(long nanos){
+		int bucket = bucket(TimeUnit.NANOSECONDS.toMicros(nanos));
+		LongAdder adder = buckets.get(bucket);
+		if(adder==null){
+			buckets.compareAndSet(bucket, null, new LongAdder());
+			adder = buckets.get(bucket);
+		}
+		adder.increment();
+		count.increment();
+		totalNanos.add(nanos);
+		maxNanos.accumulate(nanos);
+	}
+
+	static int bucket(long micros){
+		if(micros < 4){
+			return (int)Math.max(0, micros);
+		}
+		int exponent = 63 - Long.numberOfLeadingZeros(micros);
+		if(exponent > MAX_EXPONENT){
+			return BUCKETS-1;
+		}
+		int sub = (int)(micros >>> (exponent-2)) & 3;
+		return 4 + (exponent-2)*4 + sub;
+	}
+
+	/**
+	 * Returns the largest latency in microseconds that falls in the specified bucket
+	 * */
+	static long upperBound(int bucket){
+		if(bucket < 4){
+			return bucket;
+		}
+		int exponent = (bucket-4)/4 + 2;
+		int sub = (bucket-4)%4;
+		return ((4L+sub+1) << (exponent-2)) - 1;
+	}
+
+	/**
+	 * Returns the number of values recorded in each bucket
+	 * */
+	public long[] getBuckets(){
+		long[] counts = new long[BUCKETS];
+		for(int i=0;i<BUCKETS;i++){
+			LongAdder adder = buckets.get(i);
+			counts[i] = adder==null ? 0 : adder.sum();
+		}
+		return counts;
+	}
+
+	public long getCount(){
+		return count.sum();
+	}
+
+	public long getTotalNanos(){
+		return totalNanos.sum();
+	}
+
+	public double getMeanMillis(){
+		long n = count.sum();
+		return n==0 ? 0 : totalNanos.sum() / (double)n / 1000000d;
+	}
+
+	public double getMaxMillis(){
+		return maxNanos.get() / 1000000d;
+	}
+
+	/**
+	 * Returns the specified percentile (0 to 100) of the recorded latencies in milliseconds
+	 * */
+	public double getPercentileMillis(double percentile){
+		return percentileMillis(getBuckets(), percentile);
+	}
+
+	/**
+	 * Returns the specified percentile (0 to 100) in milliseconds of the values counted 
+	 * in the specified buckets
+	 * */
+	static double percentileMillis(long[] counts, double percentile){
+		long total = 0;
+		for (long c : counts) {
+			total += c;
+		}
+		if(total==0){
+			return 0;
+		}
+		long rank = (long)Math.ceil(total * Math.min(100, Math.max(0, percentile)) / 100d);
+		long seen = 0;
+		for(int i=0;i<counts.length;i++){
+			seen += counts[i];
+			if(seen >= rank && counts[i] > 0){
+				return upperBound(i) / 1000d;
+			}
+		}
+		return upperBound(counts.length-1) / 1000d;
+	}
+
+}
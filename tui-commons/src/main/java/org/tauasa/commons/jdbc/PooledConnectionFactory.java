@@ -0,0 +1,537 @@
+/*
+ * Copyright 2012 Tauasa Timoteo
+ * 
+ * Permission is hereby granted, free of charge, to any person 
+ * obtaining a copy of this software and associated documentation 
+ * files (the “Software”), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, 
+ * publish, distribute, sublicense, and/or sell copies of the Software,
+ * and to permit persons to whom the Software is furnished to do so, 
+ * subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be 
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, 
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES 
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NON-
+ * INFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS 
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN 
+ * AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF 
+ * OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS 
+ * IN THE SOFTWARE.
+ */
+package org.tauasa.commons.jdbc;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * {@link IConnectionFactory} implementation that keeps a pool of open {@link Connection} 
+ * objects, configured by the {@link JDBCProperties#INIT}, {@link JDBCProperties#MAX} and 
+ * {@link JDBCProperties#TIMEOUT} (seconds) properties.
+ * <p>
+ * Idle connections are kept on a lock-free stack so the most recently used (and most 
+ * likely still valid) connection is handed out first, and a {@link Semaphore} bounds 
+ * the number of borrowed connections so callers wait at most <code>jdbc.timeout</code> 
+ * seconds for one. The connections returned by {@link #getConnection()} are proxies 
+ * whose <code>close()</code> returns the physical connection to the pool; open 
+ * transactions are rolled back and auto-commit is reset when that happens.
+ * <p>
+ * A connection that has been idle longer than {@link #getValidationInterval()} is 
+ * checked with {@link Connection#isValid(int)} before it's handed out, connections 
+ * older than {@link #getMaxLifetime()} are retired, and a background thread closes 
+ * expired idle connections, keeps <code>jdbc.init</code> connections open and logs 
+ * connections that have been borrowed longer than {@link #getLeakThreshold()}.
+ * {@link #release()} closes the pool.
+ *
+ * @author Tauasa Timoteo
+ * 
+ */
+public class PooledConnectionFactory implements IConnectionFactory {
+
+	private static final Logger logger = LoggerFactory.getLogger(PooledConnectionFactory.class);
+
+	public static final int DEFAULT_MAX_CONNECTIONS = 10;
+	public static final int DEFAULT_TIMEOUT = 30;
+
+	private static final int IDLE = 0;
+	private static final int IN_USE = 1;
+	private static final int REMOVED = 2;
+
+	protected final JDBCProperties props;
+	protected final int maxConnections;
+	protected final int initConnections;
+	protected final long timeout;
+
+	protected long maxLifetime = TimeUnit.MINUTES.toMillis(30);
+	protected long validationInterval = TimeUnit.SECONDS.toMillis(5);
+	protected int validationTimeout = 5;
+	protected long leakThreshold = 0;
+	protected long housekeepingInterval = TimeUnit.SECONDS.toMillis(30);
+
+	private final AtomicReference<Node> idle = new AtomicReference<>();
+	private final AtomicInteger total = new AtomicInteger();
+	private final Semaphore permits;
+	private final Set<PooledConnection> borrowed = ConcurrentHashMap.newKeySet();
+	private final ScheduledExecutorService housekeeper;
+	private volatile boolean closed = false;
+
+	public PooledConnectionFactory(String url, String userName, String password, boolean autoCommit)throws SQLException{
+		this(properties(url, userName, password, autoCommit));
+	}
+
+	public PooledConnectionFactory(JDBCProperties props)throws SQLException{
+		this.props=props;
+		this.maxConnections = props.getMaxConnections() > 0 ? props.getMaxConnections() : DEFAULT_MAX_CONNECTIONS;
+		this.initConnections = Math.min(props.getInitConnections(), maxConnections);
+		this.timeout = TimeUnit.SECONDS.toMillis(props.getTimeout() > 0 ? props.getTimeout() : DEFAULT_TIMEOUT);
+		this.permits = new Semaphore(maxConnections, true);
+
+		if(props.getDriver()!=null){
+			try{
+				Class.forName(props.getDriver());
+			}catch(ClassNotFoundException e){
+				throw new SQLException("JDBC driver not found: "+props.getDriver(), e);
+			}
+		}
+
+		fill();
+
+		housekeeper = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread thread = new Thread(r, "PooledConnectionFactory-housekeeper");
+			thread.setDaemon(true);
+			return thread;
+		});
+		housekeeper.scheduleWithFixedDelay(this::housekeep, housekeepingInterval, housekeepingInterval, TimeUnit.MILLISECONDS);
+	}
+
+	private static JDBCProperties properties(String url, String userName, String password, boolean autoCommit){
+		JDBCProperties props = new JDBCProperties();
+		props.setUrl(url);
+		props.setUser(userName);
+		props.setPassword(password);
+		props.setAutoCommit(autoCommit);
+		return props;
+	}
+
+	@Override
+	public Connection getConnection() throws SQLException {
+		if(closed){
+			throw new SQLException("Connection pool is closed");
+		}
+		long start = System.currentTimeMillis();
+		try{
+			if(!permits.tryAcquire(timeout, TimeUnit.MILLISECONDS)){
+				throw new SQLTransientConnectionException("Timed out after "+timeout+"ms waiting for a connection ("+
+						borrowed.size()+" in use, "+permits.getQueueLength()+" waiting)");
+			}
+		}catch(InterruptedException e){
+			Thread.currentThread().interrupt();
+			throw new SQLException("Interrupted waiting for a connection", e);
+		}
+
+		try{
+			PooledConnection pooled = borrow();
+			if(logger.isDebugEnabled()){
+				logger.debug("getConnection() in "+(System.currentTimeMillis()-start)+"ms");
+			}
+			return pooled.open();
+		}catch(SQLException | RuntimeException e){
+			permits.release();
+			throw e;
+		}
+	}
+
+	/**
+	 * Pops a usable idle connection, or opens a new one if there are none. The caller 
+	 * holds a permit, so a connection is either idle or about to be returned when the 
+	 * pool is full.
+	 * */
+	private PooledConnection borrow()throws SQLException{
+		while(true){
+			PooledConnection pooled = pop();
+			if(pooled!=null){
+				if(!pooled.state.compareAndSet(IDLE, IN_USE)){
+					//already removed by the housekeeper
+					continue;
+				}
+				if(isExpired(pooled) || !validate(pooled)){
+					discard(pooled);
+					continue;
+				}
+				return pooled;
+			}
+			int count = total.get();
+			if(count < maxConnections){
+				if(total.compareAndSet(count, count+1)){
+					try{
+						pooled = new PooledConnection(connect());
+					}catch(SQLException | RuntimeException e){
+						total.decrementAndGet();
+						throw e;
+					}
+					pooled.state.set(IN_USE);
+					return pooled;
+				}
+			}else{
+				Thread.yield();
+			}
+		}
+	}
+
+	/**
+	 * Opens a new physical connection
+	 * */
+	protected Connection connect()throws SQLException{
+		if(logger.isDebugEnabled()){
+			logger.debug("Opening connection to "+props.getUrl());
+		}
+		Connection conn = DriverManager.getConnection(props.getUrl(), props.getUser(), props.getPassword());
+		conn.setAutoCommit(props.isAutoCommit());
+		return conn;
+	}
+
+	/**
+	 * Checks a connection that has been idle longer than the validation interval
+	 * */
+	private boolean validate(PooledConnection pooled){
+		if(System.currentTimeMillis() - pooled.lastUsed < validationInterval){
+			return true;
+		}
+		try{
+			return pooled.conn.isValid(validationTimeout);
+		}catch(SQLException e){
+			logger.warn("Connection validation failed", e);
+			return false;
+		}
+	}
+
+	private boolean isExpired(PooledConnection pooled){
+		return maxLifetime > 0 && System.currentTimeMillis() - pooled.created > maxLifetime;
+	}
+
+	/**
+	 * Returns a borrowed connection to the pool, called when its proxy is closed
+	 * */
+	private void giveBack(PooledConnection pooled){
+		borrowed.remove(pooled);
+		try{
+			boolean reusable = !closed && !pooled.broken && !isExpired(pooled);
+			if(reusable){
+				try{
+					if(!pooled.conn.getAutoCommit()){
+						pooled.conn.rollback();
+					}
+					if(pooled.conn.getAutoCommit()!=props.isAutoCommit()){
+						pooled.conn.setAutoCommit(props.isAutoCommit());
+					}
+					pooled.conn.clearWarnings();
+				}catch(SQLException e){
+					logger.warn("Unable to reset connection, discarding it", e);
+					reusable = false;
+				}
+			}
+			if(reusable){
+				pooled.lastUsed = System.currentTimeMillis();
+				pooled.state.set(IDLE);
+				push(pooled);
+				//release() may have drained the stack between the closed check and the push
+				if(closed){
+					closeIdle();
+				}
+			}else{
+				discard(pooled);
+			}
+		}finally{
+			permits.release();
+		}
+	}
+
+	/**
+	 * Closes a physical connection that is not on the idle stack
+	 * */
+	private void discard(PooledConnection pooled){
+		pooled.state.set(REMOVED);
+		total.decrementAndGet();
+		JDBCUtils.closeIgnoringException(pooled.conn);
+	}
+
+	private void push(PooledConnection pooled){
+		Node node = new Node(pooled);
+		do{
+			node.next = idle.get();
+		}while(!idle.compareAndSet(node.next, node));
+	}
+
+	private PooledConnection pop(){
+		Node head;
+		do{
+			head = idle.get();
+			if(head==null){
+				return null;
+			}
+		}while(!idle.compareAndSet(head, head.next));
+		return head.conn;
+	}
+
+	/**
+	 * Opens idle connections until there are <code>jdbc.init</code> connections
+	 * */
+	private void fill()throws SQLException{
+		while(!closed){
+			int count = total.get();
+			if(count >= initConnections){
+				return;
+			}
+			if(total.compareAndSet(count, count+1)){
+				try{
+					push(new PooledConnection(connect()));
+				}catch(SQLException | RuntimeException e){
+					total.decrementAndGet();
+					throw e;
+				}
+				if(closed){
+					closeIdle();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Retires expired idle connections, tops the pool up and reports leaks
+	 * */
+	private void housekeep(){
+		try{
+			long now = System.currentTimeMillis();
+			for(Node node = idle.get(); node!=null; node = node.next){
+				PooledConnection pooled = node.conn;
+				if(isExpired(pooled) && pooled.state.compareAndSet(IDLE, REMOVED)){
+					//left on the stack, borrowers skip removed connections
+					total.decrementAndGet();
+					JDBCUtils.closeIgnoringException(pooled.conn);
+				}
+			}
+			if(leakThreshold > 0){
+				for (PooledConnection pooled : borrowed) {
+					if(!pooled.leakReported && now - pooled.borrowedAt > leakThreshold){
+						pooled.leakReported = true;
+						logger.warn("Connection borrowed "+(now - pooled.borrowedAt)+"ms ago has not been closed, possible leak", pooled.borrowStack);
+					}
+				}
+			}
+			fill();
+		}catch(SQLException | RuntimeException e){
+			logger.warn("Connection pool housekeeping failed", e);
+		}
+	}
+
+	/**
+	 * Closes the pool and its idle connections. Borrowed connections are closed when 
+	 * they are returned.
+	 * */
+	@Override
+	public void release() throws SQLException {
+		if(closed){
+			return;
+		}
+		closed = true;
+		housekeeper.shutdownNow();
+		closeIdle();
+		if(logger.isDebugEnabled()){
+			logger.debug("Connection pool closed, "+borrowed.size()+" connections still in use");
+		}
+	}
+
+	/**
+	 * Closes the connections on the idle stack. Called after <code>closed</code> is set, 
+	 * by {@link #release()} and by anything that pushed a connection concurrently with it, 
+	 * so no connection is left on the stack once the pool is closed.
+	 * */
+	private void closeIdle(){
+		PooledConnection pooled;
+		while((pooled = pop())!=null){
+			if(pooled.state.compareAndSet(IDLE, REMOVED)){
+				total.decrementAndGet();
+				JDBCUtils.closeIgnoringException(pooled.conn);
+			}
+		}
+	}
+
+	public boolean isClosed(){
+		return closed;
+	}
+
+	/**
+	 * Returns the number of open physical connections
+	 * */
+	public int getTotalConnections(){
+		return total.get();
+	}
+
+	/**
+	 * Returns the number of borrowed connections
+	 * */
+	public int getActiveConnections(){
+		return borrowed.size();
+	}
+
+	/**
+	 * Returns the number of threads waiting for a connection
+	 * */
+	public int getWaitingThreads(){
+		return permits.getQueueLength();
+	}
+
+	public int getMaxConnections(){
+		return maxConnections;
+	}
+
+	public long getMaxLifetime() {
+		return maxLifetime;
+	}
+
+	/**
+	 * Sets the age in milliseconds after which connections are closed, 0 to keep them forever
+	 * */
+	public void setMaxLifetime(long maxLifetime) {
+		this.maxLifetime = maxLifetime;
+	}
+
+	public long getValidationInterval() {
+		return validationInterval;
+	}
+
+	/**
+	 * Sets how long in milliseconds a connection can be idle before it's validated on borrow
+	 * */
+	public void setValidationInterval(long validationInterval) {
+		this.validationInterval = validationInterval;
+	}
+
+	public int getValidationTimeout() {
+		return validationTimeout;
+	}
+
+	/**
+	 * Sets the timeout in seconds passed to {@link Connection#isValid(int)}
+	 * */
+	public void setValidationTimeout(int validationTimeout) {
+		this.validationTimeout = validationTimeout;
+	}
+
+	public long getLeakThreshold() {
+		return leakThreshold;
+	}
+
+	/**
+	 * Sets how long in milliseconds a connection can be borrowed before a possible leak 
+	 * is logged along with the stack trace of the borrower, 0 to disable
+	 * */
+	public void setLeakThreshold(long leakThreshold) {
+		this.leakThreshold = leakThreshold;
+	}
+
+	/**
+	 * A physical connection and its pool bookkeeping
+	 * */
+	private final class PooledConnection implements InvocationHandler {
+
+		final Connection conn;
+		final long created = System.currentTimeMillis();
+		final AtomicInteger state = new AtomicInteger(IDLE);
+		volatile long lastUsed = created;
+		volatile long borrowedAt;
+		volatile Exception borrowStack;
+		volatile boolean leakReported;
+		volatile boolean broken;
+		private final AtomicReference<Connection> proxy = new AtomicReference<>();
+
+		PooledConnection(Connection conn) {
+			this.conn=conn;
+		}
+
+		/**
+		 * Returns a new proxy for a borrower; a proxy that has been closed stays closed
+		 * */
+		Connection open(){
+			borrowedAt = System.currentTimeMillis();
+			leakReported = false;
+			borrowStack = leakThreshold > 0 ? new Exception("Connection borrowed here") : null;
+			broken = false;
+			Connection c = (Connection)Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[]{Connection.class}, this);
+			proxy.set(c);
+			borrowed.add(this);
+			return c;
+		}
+
+		@Override
+		public Object invoke(Object p, Method method, Object[] args) throws Throwable {
+			String name = method.getName();
+			boolean current = p==proxy.get();
+			switch(name){
+			case "close":
+				//only one of several threads closing the same proxy gives the connection back
+				if(proxy.compareAndSet((Connection)p, null)){
+					giveBack(this);
+				}
+				return null;
+			case "isClosed":
+				return !current || conn.isClosed();
+			case "equals":
+				return p==args[0];
+			case "hashCode":
+				return System.identityHashCode(p);
+			case "toString":
+				return "Pooled"+conn;
+			default:
+				if(!current){
+					throw new SQLException("Connection is closed");
+				}
+			}
+			try{
+				return method.invoke(conn, args);
+			}catch(InvocationTargetException e){
+				Throwable cause = e.getCause();
+				if(cause instanceof SQLException){
+					String state = ((SQLException)cause).getSQLState();
+					//08xxx: connection exceptions
+					if(state!=null && state.startsWith("08")){
+						broken = true;
+					}
+				}
+				throw cause;
+			}
+		}
+
+	}
+
+	private static final class Node {
+
+		final PooledConnection conn;
+		Node next;
+
+		Node(PooledConnection conn) {
+			this.conn=conn;
+		}
+
+	}
+
+}
@@ -0,0 +1,460 @@
+/*
+ * Copyright 2012 Tauasa Timoteo
+ * 
+ * Permission is hereby granted, free of charge, to any person 
+ * obtaining a copy of this software and associated documentation 
+ * files (the “Software”), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, 
+ * publish, distribute, sublicense, and/or sell copies of the Software,
+ * and to permit persons to whom the Software is furnished to do so, 
+ * subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be 
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, 
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES 
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NON-
+ * INFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS 
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN 
+ * AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF 
+ * OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS 
+ * IN THE SOFTWARE.
+ */
+package org.tauasa.commons.jdbc;
+
+import org.tauasa.commons.data.ColumnIndex;
+
+import java.util.AbstractCollection;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * Compact {@link DTO} whose properties are stored in an <code>Object[]</code> indexed by a 
+ * {@link ColumnIndex} that is shared by every row of a query, so a row costs one array 
+ * instead of a hash table with an entry per property. Properties that aren't in the schema 
+ * are still accepted and kept in the inherited {@link java.util.HashMap}, so a SchemaDTO 
+ * behaves like any other DTO. It's serialized as a plain DTO.
+ *
+ * @author Tauasa Timoteo
+ * 
+ */
+public class SchemaDTO extends DTO {
+
+	private static final long serialVersionUID = 1L;
+
+	//marks schema properties that have been removed
+	private static final Object ABSENT = new Object();
+
+	protected final transient ColumnIndex schema;
+	protected final transient Object[] values;
+
+	/**
+	 * Creates a DTO with a null value for each property of the specified schema
+	 * */
+	public SchemaDTO(ColumnIndex schema) {
+		this(schema, new Object[schema.size()]);
+	}
+
+	/**
+	 * Creates a DTO backed by the specified values, one for each property of the specified schema
+	 * */
+	public SchemaDTO(ColumnIndex schema, Object[] values) {
+		if(values.length != schema.size()){
+			throw new IllegalArgumentException("values array length ("+values.length+") does not match schema size ("+schema.size()+")");
+		}
+		this.schema=schema;
+		this.values=values;
+	}
+
+	public ColumnIndex getSchema(){
+		return schema;
+	}
+
+	/**
+	 * Returns the value of the property at the specified schema index
+	 * */
+	public Object getValue(int index){
+		Object value = values[index];
+		return value==ABSENT ? null : value;
+	}
+
+	/**
+	 * Sets the value of the property at the specified schema index
+	 * */
+	public void setValue(int index, Object value){
+		values[index] = value;
+	}
+
+	/**
+	 * Returns the schema index of the specified key or -1
+	 * */
+	private int slot(Object key){
+		return key instanceof String ? schema.indexOf((String)key) : -1;
+	}
+
+	/**
+	 * Returns true if the specified index holds a property: the first occurrence of its 
+	 * name, and not removed
+	 * */
+	private boolean isPresent(int index){
+		return values[index]!=ABSENT && schema.indexOf(schema.getName(index))==index;
+	}
+
+	@Override
+	public Object get(Object key){
+		int i = slot(key);
+		if(i < 0){
+			return super.get(key);
+		}
+		Object value = values[i];
+		return value==ABSENT ? null : value;
+	}
+
+	@Override
+	public Object getOrDefault(Object key, Object defaultValue){
+		int i = slot(key);
+		if(i < 0){
+			return super.getOrDefault(key, defaultValue);
+		}
+		Object value = values[i];
+		return value==ABSENT ? defaultValue : value;
+	}
+
+	@Override
+	public boolean containsKey(Object key){
+		int i = slot(key);
+		return i < 0 ? super.containsKey(key) : values[i]!=ABSENT;
+	}
+
+	@Override
+	public boolean containsValue(Object value){
+		for(int i=0;i<values.length;i++){
+			if(isPresent(i) && Objects.equals(values[i], value)){
+				return true;
+			}
+		}
+		return super.containsValue(value);
+	}
+
+	@Override
+	public Object put(String key, Object value){
+		int i = slot(key);
+		if(i < 0){
+			return super.put(key, value);
+		}
+		Object previous = values[i];
+		values[i] = value;
+		return previous==ABSENT ? null : previous;
+	}
+
+	@Override
+	public void putAll(Map<? extends String, ? extends Object> map){
+		for (Map.Entry<? extends String, ? extends Object> e : map.entrySet()) {
+			put(e.getKey(), e.getValue());
+		}
+	}
+
+	@Override
+	public Object putIfAbsent(String key, Object value){
+		Object current = get(key);
+		return current==null ? put(key, value) : current;
+	}
+
+	@Override
+	public Object remove(Object key){
+		int i = slot(key);
+		if(i < 0){
+			return super.remove(key);
+		}
+		Object previous = values[i];
+		values[i] = ABSENT;
+		return previous==ABSENT ? null : previous;
+	}
+
+	@Override
+	public boolean remove(Object key, Object value){
+		if(containsKey(key) && Objects.equals(get(key), value)){
+			remove(key);
+			return true;
+		}
+		return false;
+	}
+
+	@Override
+	public boolean replace(String key, Object oldValue, Object newValue){
+		if(containsKey(key) && Objects.equals(get(key), oldValue)){
+			put(key, newValue);
+			return true;
+		}
+		return false;
+	}
+
+	@Override
+	public Object replace(String key, Object value){
+		return containsKey(key) ? put(key, value) : null;
+	}
+
+	@Override
+	public Object computeIfAbsent(String key, Function<? super String, ? extends Object> function){
+		Object value = get(key);
+		if(value==null && (value = function.apply(key))!=null){
+			put(key, value);
+		}
+		return value;
+	}
+
+	@Override
+	public Object computeIfPresent(String key, BiFunction<? super String, ? super Object, ? extends Object> function){
+		Object value = get(key);
+		if(value==null){
+			return null;
+		}
+		value = function.apply(key, value);
+		if(value==null){
+			remove(key);
+		}else{
+			put(key, value);
+		}
+		return value;
+	}
+
+	@Override
+	public Object compute(String key, BiFunction<? super String, ? super Object, ? extends Object> function){
+		Object value = function.apply(key, get(key));
+		if(value==null){
+			remove(key);
+		}else{
+			put(key, value);
+		}
+		return value;
+	}
+
+	@Override
+	public Object merge(String key, Object value, BiFunction<? super Object, ? super Object, ? extends Object> function){
+		Object current = get(key);
+		Object merged = current==null ? value : function.apply(current, value);
+		if(merged==null){
+			remove(key);
+		}else{
+			put(key, merged);
+		}
+		return merged;
+	}
+
+	@Override
+	public void forEach(BiConsumer<? super String, ? super Object> action){
+		for(int i=0;i<values.length;i++){
+			if(isPresent(i)){
+				action.accept(schema.getName(i), values[i]);
+			}
+		}
+		super.forEach(action);
+	}
+
+	@Override
+	public void replaceAll(BiFunction<? super String, ? super Object, ? extends Object> function){
+		for(int i=0;i<values.length;i++){
+			if(isPresent(i)){
+				values[i] = function.apply(schema.getName(i), values[i]);
+			}
+		}
+		super.replaceAll(function);
+	}
+
+	@Override
+	public int size(){
+		int size = super.size();
+		for(int i=0;i<values.length;i++){
+			if(isPresent(i)){
+				size++;
+			}
+		}
+		return size;
+	}
+
+	@Override
+	public boolean isEmpty(){
+		return size()==0;
+	}
+
+	@Override
+	public void clear(){
+		for(int i=0;i<values.length;i++){
+			values[i] = ABSENT;
+		}
+		super.clear();
+	}
+
+	@Override
+	public Set<String> keySet(){
+		return new AbstractSet<String>(){
+			@Override
+			public Iterator<String> iterator() {
+				Iterator<Map.Entry<String, Object>> it = entrySet().iterator();
+				return new Iterator<String>(){
+					@Override
+					public boolean hasNext() {
+						return it.hasNext();
+					}
+					@Override
+					public String next() {
+						return it.next().getKey();
+					}
+					@Override
+					public void remove() {
+						it.remove();
+					}
+				};
+			}
+			@Override
+			public int size() {
+				return SchemaDTO.this.size();
+			}
+			@Override
+			public boolean contains(Object o) {
+				return containsKey(o);
+			}
+		};
+	}
+
+	@Override
+	public Collection<Object> values(){
+		return new AbstractCollection<Object>(){
+			@Override
+			public Iterator<Object> iterator() {
+				Iterator<Map.Entry<String, Object>> it = entrySet().iterator();
+				return new Iterator<Object>(){
+					@Override
+					public boolean hasNext() {
+						return it.hasNext();
+					}
+					@Override
+					public Object next() {
+						return it.next().getValue();
+					}
+					@Override
+					public void remove() {
+						it.remove();
+					}
+				};
+			}
+			@Override
+			public int size() {
+				return SchemaDTO.this.size();
+			}
+		};
+	}
+
+	/**
+	 * Returns the schema properties in schema order followed by any other properties
+	 * */
+	@Override
+	public Set<Map.Entry<String, Object>> entrySet(){
+		return new AbstractSet<Map.Entry<String, Object>>(){
+			@Override
+			public Iterator<Map.Entry<String, Object>> iterator() {
+				return new EntryIterator();
+			}
+			@Override
+			public int size() {
+				return SchemaDTO.this.size();
+			}
+		};
+	}
+
+	private final class EntryIterator implements Iterator<Map.Entry<String, Object>> {
+
+		private int next = advance(0);
+		private int last = -1;
+		private Iterator<Map.Entry<String, Object>> others;
+
+		private int advance(int from){
+			while(from < values.length && !isPresent(from)){
+				from++;
+			}
+			return from;
+		}
+
+		@Override
+		public boolean hasNext() {
+			if(next < values.length){
+				return true;
+			}
+			if(others==null){
+				others = SchemaDTO.super.entrySet().iterator();
+			}
+			return others.hasNext();
+		}
+
+		@Override
+		public Map.Entry<String, Object> next() {
+			if(next < values.length){
+				int i = last = next;
+				next = advance(next+1);
+				return new AbstractMap.SimpleEntry<String, Object>(schema.getName(i), values[i]){
+					private static final long serialVersionUID = 1L;
+					@Override
+					public Object setValue(Object value) {
+						values[i] = value;
+						return super.setValue(value);
+					}
+				};
+			}
+			if(!hasNext()){
+				throw new NoSuchElementException();
+			}
+			last = -1;
+			return others.next();
+		}
+
+		@Override
+		public void remove() {
+			if(last >= 0){
+				values[last] = ABSENT;
+				last = -1;
+			}else if(others!=null){
+				others.remove();
+			}else{
+				throw new IllegalStateException();
+			}
+		}
+
+	}
+
+	@Override
+	public Object clone(){
+		SchemaDTO dto = new SchemaDTO(schema, values.clone());
+		dto.putOthers(this);
+		return dto;
+	}
+
+	private void putOthers(SchemaDTO dto){
+		for (Map.Entry<String, Object> e : dto.superEntries()) {
+			super.put(e.getKey(), e.getValue());
+		}
+	}
+
+	private Set<Map.Entry<String, Object>> superEntries(){
+		return super.entrySet();
+	}
+
+	/**
+	 * Serializes the properties as a plain {@link DTO}
+	 * */
+	protected Object writeReplace(){
+		DTO dto = new DTO();
+		dto.putAll(this);
+		return dto;
+	}
+
+}
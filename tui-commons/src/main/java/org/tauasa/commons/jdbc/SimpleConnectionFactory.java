@@ -33,7 +33,8 @@ import org.slf4j.LoggerFactory;
 /**
  * Simple {@link IConnectionFactory} implementation that opens {@link Connection}
  * objects using a specified URL, username and password. <strong>This class is only suitable
- * for rapid prototyping and should not be used in a production environment.</strong>
+ * for rapid prototyping and should not be used in a production environment, use
+ * {@link PooledConnectionFactory} instead.</strong>
  *
  * @author Tauasa Timoteo
  * 
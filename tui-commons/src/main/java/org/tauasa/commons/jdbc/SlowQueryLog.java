@@ -0,0 +1,401 @@
+/*
+ * Copyright 2012 Tauasa Timoteo
+ * 
+ * Permission is hereby granted, free of charge, to any person 
+ * obtaining a copy of this software and associated documentation 
+ * files (the “Software”), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, 
+ * publish, distribute, sublicense, and/or sell copies of the Software,
+ * and to permit persons to whom the Software is furnished to do so, 
+ * subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be 
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, 
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES 
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NON-
+ * INFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS 
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN 
+ * AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF 
+ * OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS 
+ * IN THE SOFTWARE.
+ */
+package org.tauasa.commons.jdbc;
+
+import java.io.Closeable;
+import java.io.Serializable;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * {@link IStatementListener} that keeps the most recent statements slower than a threshold 
+ * in a fixed-size ring buffer, with their bind values, row counts and elapsed time. 
+ * Statements under the threshold cost one comparison.
+ * <pre>
+ * SlowQueryLog slowQueries = new SlowQueryLog("orders");
+ * slowQueries.setThreshold(250);
+ * slowQueries.setExplainConnectionFactory(explainFactory);
+ * slowQueries.setExplainSampleRate(0.1);
+ * dao.setStatementListener(slowQueries);
+ * </pre>
+ * When an explain connection factory is set, a sample of the slow statements is run again 
+ * as <code>EXPLAIN</code> (see {@link #setExplainPrefix(String)}) on a background thread, 
+ * using that factory's connections rather than the DAO's, and the plan is attached to the 
+ * entry. Plans that can't keep up with the slow statements are skipped.
+ * <p>
+ * Logs are registered by name so they can be inspected from elsewhere in the application, 
+ * for instance by the <code>SlowQuerySmoketest</code>.
+ *
+ * @author Tauasa Timoteo
+ * 
+ */
+public class SlowQueryLog implements IStatementListener, Closeable {
+
+	private static final Logger logger = LoggerFactory.getLogger(SlowQueryLog.class);
+
+	public static final long DEFAULT_THRESHOLD = 1000;
+	public static final int DEFAULT_CAPACITY = 100;
+	public static final String DEFAULT_EXPLAIN_PREFIX = "EXPLAIN ";
+
+	//plans waiting for the explain thread, more are dropped
+	private static final int EXPLAIN_QUEUE_SIZE = 16;
+
+	private static final Map<String, SlowQueryLog> logs = new ConcurrentHashMap<>();
+
+	protected final String name;
+	protected volatile long thresholdNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_THRESHOLD);
+	protected volatile double explainSampleRate = 1;
+	protected volatile String explainPrefix = DEFAULT_EXPLAIN_PREFIX;
+	protected volatile IConnectionFactory explainConnectionFactory;
+
+	private final AtomicReferenceArray<Entry> entries;
+	private final AtomicLong sequence = new AtomicLong();
+	private ThreadPoolExecutor explainer;
+
+	/**
+	 * Creates a log of the last {@value #DEFAULT_CAPACITY} slow statements registered under 
+	 * the specified name
+	 * */
+	public SlowQueryLog(String name) {
+		this(name, DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Creates a log of the last <code>capacity</code> slow statements registered under the 
+	 * specified name, replacing any log previously registered under that name
+	 * */
+	public SlowQueryLog(String name, int capacity) {
+		if(capacity < 1){
+			throw new IllegalArgumentException("capacity must be positive");
+		}
+		this.name=name;
+		this.entries = new AtomicReferenceArray<>(capacity);
+		SlowQueryLog previous = logs.put(name, this);
+		if(previous!=null){
+			previous.close();
+		}
+	}
+
+	/**
+	 * Returns the log registered under the specified name or null if there is none
+	 * */
+	public static SlowQueryLog getLog(String name){
+		return logs.get(name);
+	}
+
+	/**
+	 * Returns all the registered logs
+	 * */
+	public static Collection<SlowQueryLog> getLogs(){
+		return new ArrayList<>(logs.values());
+	}
+
+	@Override
+	public void statementExecuted(String sql, Object[] args, long elapsedNanos, int rowCount, Cache cache, SQLException error) {
+		if(elapsedNanos < thresholdNanos){
+			return;
+		}
+		Entry entry = new Entry(sql, format(args), elapsedNanos, rowCount, error);
+		long seq = sequence.getAndIncrement();
+		entries.set((int)(seq % entries.length()), entry);
+
+		if(logger.isDebugEnabled()){
+			logger.debug("slow statement ({} ms, {} rows): {} [{}]", entry.getElapsedMillis(), rowCount, sql, entry.binds);
+		}
+		if(explainConnectionFactory!=null && error==null && sample()){
+			explain(entry, args);
+		}
+	}
+
+	private boolean sample(){
+		double rate = explainSampleRate;
+		return rate >= 1 || (rate > 0 && ThreadLocalRandom.current().nextDouble() < rate);
+	}
+
+	/**
+	 * Formats bind values the way {@link XArg#toString()} does
+	 * */
+	private static String format(Object[] args){
+		if(args==null || args.length==0){
+			return "";
+		}
+		StringBuilder b = new StringBuilder();
+		for (int i=0;i<args.length;i++) {
+			if(i > 0){
+				b.append(", ");
+			}
+			Object arg = args[i];
+			if(arg instanceof XArg){
+				b.append(arg);
+			}else{
+				b.append(new XArg(arg, Types.OTHER));
+			}
+		}
+		return b.toString();
+	}
+
+	private synchronized void explain(Entry entry, Object[] args){
+		if(args==null && entry.sql.indexOf('?') >= 0){
+			return;//a batch, the binds weren't reported
+		}
+		if(explainer==null){
+			explainer = new ThreadPoolExecutor(1, 1, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<>(EXPLAIN_QUEUE_SIZE), r -> {
+				Thread thread = new Thread(r, "SlowQueryLog-explain-"+name);
+				thread.setDaemon(true);
+				return thread;
+			}, new ThreadPoolExecutor.DiscardPolicy());
+			explainer.allowCoreThreadTimeOut(true);
+		}
+		explainer.execute(() -> {
+			try{
+				entry.plan = explain(entry.sql, args);
+			}catch(SQLException e){
+				logger.warn("Unable to explain "+entry.sql, e);
+				entry.plan = "EXPLAIN failed: "+e.getMessage();
+			}
+		});
+	}
+
+	/**
+	 * Runs the specified statement prefixed by the explain prefix on a connection from the 
+	 * explain connection factory and returns the resulting rows, one per line
+	 * */
+	protected String explain(String sql, Object[] args)throws SQLException{
+		Connection conn = explainConnectionFactory.getConnection();
+		PreparedStatement stmt = null;
+		ResultSet rs = null;
+		try{
+			stmt = conn.prepareStatement(explainPrefix+sql);
+			JDBCUtils.bind(stmt, args);
+			rs = stmt.executeQuery();
+			int numCols = rs.getMetaData().getColumnCount();
+			StringBuilder b = new StringBuilder();
+			while(rs.next()){
+				for(int i=1;i<=numCols;i++){
+					if(i > 1){
+						b.append(" | ");
+					}
+					b.append(rs.getString(i));
+				}
+				b.append("\r\n");
+			}
+			return b.toString();
+		}finally{
+			JDBCUtils.closeIgnoringException(rs);
+			JDBCUtils.closeIgnoringException(stmt);
+			JDBCUtils.closeIgnoringException(conn);
+		}
+	}
+
+	/**
+	 * Returns the recorded statements, most recent first
+	 * */
+	public List<Entry> getEntries(){
+		int capacity = entries.length();
+		long last = sequence.get();
+		long first = Math.max(0, last - capacity);
+		List<Entry> list = new ArrayList<>((int)(last - first));
+		for(long seq=last-1;seq>=first;seq--){
+			Entry entry = entries.get((int)(seq % capacity));
+			if(entry!=null){
+				list.add(entry);
+			}
+		}
+		return list;
+	}
+
+	/**
+	 * Returns the number of slow statements recorded since this log was created or cleared, 
+	 * including the ones no longer held
+	 * */
+	public long getSlowCount(){
+		return sequence.get();
+	}
+
+	/**
+	 * Discards the recorded statements
+	 * */
+	public void clear(){
+		for(int i=0;i<entries.length();i++){
+			entries.set(i, null);
+		}
+		sequence.set(0);
+	}
+
+	/**
+	 * Stops explaining statements and unregisters this log
+	 * */
+	@Override
+	public synchronized void close(){
+		logs.remove(name, this);
+		if(explainer!=null){
+			explainer.shutdownNow();
+			explainer = null;
+		}
+	}
+
+	public String getName(){
+		return name;
+	}
+
+	public int getCapacity(){
+		return entries.length();
+	}
+
+	/**
+	 * Returns the minimum elapsed time, in milliseconds, of the statements recorded
+	 * */
+	public long getThreshold(){
+		return TimeUnit.NANOSECONDS.toMillis(thresholdNanos);
+	}
+
+	/**
+	 * Sets the minimum elapsed time, in milliseconds, of the statements recorded
+	 * */
+	public void setThreshold(long threshold){
+		this.thresholdNanos = TimeUnit.MILLISECONDS.toNanos(threshold);
+	}
+
+	public double getExplainSampleRate(){
+		return explainSampleRate;
+	}
+
+	/**
+	 * Sets the fraction, between 0 and 1, of slow statements that are explained when an 
+	 * explain connection factory is set
+	 * */
+	public void setExplainSampleRate(double explainSampleRate){
+		this.explainSampleRate = explainSampleRate;
+	}
+
+	public String getExplainPrefix(){
+		return explainPrefix;
+	}
+
+	/**
+	 * Sets what's prepended to a statement to get its plan, <code>EXPLAIN </code> by default
+	 * */
+	public void setExplainPrefix(String explainPrefix){
+		this.explainPrefix = explainPrefix;
+	}
+
+	public IConnectionFactory getExplainConnectionFactory(){
+		return explainConnectionFactory;
+	}
+
+	/**
+	 * Sets the factory of the connections slow statements are explained on or null not to 
+	 * explain them
+	 * */
+	public void setExplainConnectionFactory(IConnectionFactory explainConnectionFactory){
+		this.explainConnectionFactory = explainConnectionFactory;
+	}
+
+	/**
+	 * A slow statement
+	 * */
+	public static class Entry implements Serializable {
+
+		private static final long serialVersionUID = 1L;
+
+		protected final Date time = new Date();
+		protected final String sql;
+		protected final String binds;
+		protected final long elapsedNanos;
+		protected final int rowCount;
+		protected final String error;
+		protected volatile String plan;
+
+		Entry(String sql, String binds, long elapsedNanos, int rowCount, SQLException error) {
+			this.sql=sql;
+			this.binds=binds;
+			this.elapsedNanos=elapsedNanos;
+			this.rowCount=rowCount;
+			this.error = error==null ? null : error.getMessage();
+		}
+
+		/**
+		 * Returns when the statement completed
+		 * */
+		public Date getTime(){
+			return time;
+		}
+
+		public String getSql(){
+			return sql;
+		}
+
+		/**
+		 * Returns the bind values formatted as {@link XArg}s
+		 * */
+		public String getBinds(){
+			return binds;
+		}
+
+		public double getElapsedMillis(){
+			return elapsedNanos / 1e6;
+		}
+
+		/**
+		 * Returns the rows returned or updated, or -1 if unknown
+		 * */
+		public int getRowCount(){
+			return rowCount;
+		}
+
+		/**
+		 * Returns the message of the exception the statement failed with or null
+		 * */
+		public String getError(){
+			return error;
+		}
+
+		/**
+		 * Returns the execution plan or null if the statement wasn't (or hasn't yet been) explained
+		 * */
+		public String getPlan(){
+			return plan;
+		}
+
+	}
+
+}
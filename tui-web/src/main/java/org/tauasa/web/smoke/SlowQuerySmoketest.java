@@ -0,0 +1,137 @@
+/*
+ * Copyright 2012 Tauasa Timoteo
+ * 
+ * Permission is hereby granted, free of charge, to any person 
+ * obtaining a copy of this software and associated documentation 
+ * files (the “Software”), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, 
+ * publish, distribute, sublicense, and/or sell copies of the Software,
+ * and to permit persons to whom the Software is furnished to do so, 
+ * subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be 
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, 
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES 
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NON-
+ * INFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS 
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN 
+ * AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF 
+ * OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS 
+ * IN THE SOFTWARE.
+ */
+package org.tauasa.web.smoke;
+
+import org.tauasa.commons.data.TableDataModel;
+import org.tauasa.commons.jdbc.SlowQueryLog;
+import org.tauasa.commons.util.Utils;
+import org.tauasa.web.ServletHelper;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Properties;
+
+import org.apache.commons.lang.StringEscapeUtils;
+
+/**
+ * Displays the statements recorded by one or more {@link SlowQueryLog}s. The names of the 
+ * logs are read from the <code>SlowQuerySmoketest.names</code> property; all registered 
+ * logs are displayed if it isn't set. This smoketest only fails if a named log isn't 
+ * registered, slow statements are reported as warnings.
+ *
+ * @author Tauasa Timoteo
+ * 
+ */
+public class SlowQuerySmoketest extends AbstractSmoketest {
+
+	public static final String NAMES_KEY = "names";
+	public static final String NAMES_DELIMITER_KEY = "names.delimiter";
+	private static final String DEFAULT_DELIMITER = ",";
+
+	private static final String[] COLUMNS = {"Time", "Elapsed (ms)", "Rows", "SQL", "Binds", "Error", "Plan"};
+
+	protected String[] names;
+
+	public SlowQuerySmoketest() {
+	}
+
+	@Override
+	public String getDescription() {
+		if(description!=null){//default to value defined in smoketest.properties
+			return description;
+		}
+		return "Displays the slowest recent SQL statements.";
+	}
+
+	@Override
+	public void init(Properties smoketestProperties)throws SmoketestConfigException{
+		super.init(smoketestProperties);
+
+		names = getArrayProperty(smoketestProperties,
+				NAMES_KEY,
+				getProperty(smoketestProperties, NAMES_DELIMITER_KEY, DEFAULT_DELIMITER),
+				null);
+
+		getLogger().info("Slow query logs: {}", names==null ? "all" : Utils.join(names, ", "));
+	}
+
+	@Override
+	public void doExecute(ServletHelper helper) throws Exception {
+		Collection<SlowQueryLog> logs;
+		if(Utils.isEmpty(names)){
+			logs = SlowQueryLog.getLogs();
+		}else{
+			logs = new ArrayList<>();
+			for (String name : names) {
+				SlowQueryLog log = SlowQueryLog.getLog(name.trim());
+				if(log==null){
+					addErrorMessage("No slow query log named "+name);
+				}else{
+					logs.add(log);
+				}
+			}
+		}
+		if(logs.isEmpty()){
+			addInfoMessage("No slow query logs are registered");
+		}
+
+		for (SlowQueryLog log : logs) {
+			List<SlowQueryLog.Entry> entries = log.getEntries();
+			String title = log.getName()+": "+log.getSlowCount()+" statement(s) over "+log.getThreshold()+" ms";
+			if(entries.isEmpty()){
+				addInfoMessage(title);
+				continue;
+			}
+			addWarningMessage(title);
+
+			Object[][] rows = new Object[entries.size()][];
+			for(int i=0;i<rows.length;i++){
+				SlowQueryLog.Entry entry = entries.get(i);
+				rows[i] = new Object[]{
+						entry.getTime(),
+						String.format("%.1f", entry.getElapsedMillis()),
+						entry.getRowCount() < 0 ? "" : entry.getRowCount(),
+						escape(entry.getSql()),
+						escape(entry.getBinds()),
+						escape(entry.getError()),
+						entry.getPlan()==null ? "" : "<pre>"+escape(entry.getPlan())+"</pre>"};
+			}
+			result.add(new SmoketestMessage(new TableDataModel(COLUMNS, rows), new SmoketestMessage.DataModelFormatter(log.getName())));
+		}
+
+		if(result.hasErrorMessage()){
+			throw new Exception("One or more slow query logs are not registered");
+		}
+	}
+
+	private static String escape(String s){
+		return s==null ? "" : StringEscapeUtils.escapeHtml(s);
+	}
+
+	public String[] getNames() {
+		return names;
+	}
+
+}